@@ -0,0 +1,82 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Building the dashboard rows: turning a harvested job list into the
+ * {@link JobStore}, and merging each job's builds into the build cache and
+ * the 30 day metric, as a report run does for every job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordBuildingBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int jobCount;
+
+	@Param({ "1", "20" })
+	public int buildsPerJob;
+
+	private JsonNode page;
+	private List<JobSummary> summaries;
+	private List<List<BuildRecord>> builds;
+	private File cacheFile;
+
+	@Setup
+	public void setUp() {
+		page = SyntheticJobs.harvestPage(jobCount);
+		summaries = SyntheticJobs.summaries(jobCount);
+		builds = new ArrayList<List<BuildRecord>>(jobCount);
+		for (JobSummary summary : summaries) {
+			builds.add(SyntheticJobs.builds(summary, buildsPerJob));
+		}
+		// never written: the cache only has to start out empty
+		cacheFile = new File(System.getProperty("java.io.tmpdir"), "benchmark-builds-" + System.nanoTime() + ".tsv");
+	}
+
+	@Benchmark
+	public JobStore populateJobStore() {
+		JobStore store = new JobStore(jobCount);
+		for (JsonNode job : page.path("jobs")) {
+			store.add(BulkJobHarvester.toSummary(job));
+		}
+		return store;
+	}
+
+	@Benchmark
+	public JobStore updateRows() throws IOException {
+		JobStore store = new JobStore(jobCount);
+		BuildCache cache = BuildCache.load(cacheFile);
+		RollingWindowMetrics metrics = new RollingWindowMetrics(RollingWindowMetrics.epochDay(SyntheticJobs.NOW));
+		for (int i = 0; i < jobCount; i++) {
+			int row = store.add(summaries.get(i));
+			String name = store.getName(row);
+			cache.merge(name, builds.get(i));
+			metrics.update(name, cache);
+			store.setMetric(row, metrics.describe(name));
+		}
+		return store;
+	}
+}
@@ -0,0 +1,81 @@
+package com.mgic.qa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Deterministic jobs and builds for the benchmarks, shaped like what a Jenkins
+ * <code>tree=</code> query returns, so no live controller is needed.
+ */
+final class SyntheticJobs {
+	/** A fixed "now", so every run formats and windows the same timestamps. */
+	static final long NOW = 1554076800000L;
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final String[] RESULTS = { "SUCCESS", "SUCCESS", "SUCCESS", "UNSTABLE", "FAILURE" };
+
+	private SyntheticJobs() {
+	}
+
+	/**
+	 * @return one page of a bulk harvest with <code>jobCount</code> jobs
+	 */
+	static JsonNode harvestPage(int jobCount) {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode page = mapper.createObjectNode();
+		ArrayNode jobs = page.putArray("jobs");
+		Random random = new Random(jobCount);
+		for (int i = 0; i < jobCount; i++) {
+			ObjectNode job = jobs.addObject();
+			job.put("name", "job-" + i);
+			job.put("fullName", "team-" + i % 20 + "/job-" + i);
+			job.put("url", "https://ci.example.com/job/team-" + i % 20 + "/job/job-" + i + "/");
+			job.put("_class", "hudson.model.FreeStyleProject");
+			ObjectNode lastBuild = job.putObject("lastBuild");
+			int number = 1 + random.nextInt(5000);
+			lastBuild.put("number", number);
+			lastBuild.put("duration", random.nextInt(3600000));
+			lastBuild.put("timestamp", NOW - random.nextInt(30) * DAY - random.nextInt((int) DAY));
+			lastBuild.put("result", RESULTS[random.nextInt(RESULTS.length)]);
+			lastBuild.put("building", false);
+			ObjectNode testResults = lastBuild.putArray("actions").addObject();
+			int total = random.nextInt(2000);
+			testResults.put("totalCount", total);
+			testResults.put("failCount", random.nextInt(1 + total / 20));
+			testResults.put("skipCount", random.nextInt(1 + total / 50));
+			job.putObject("lastSuccessfulBuild").put("number", number - random.nextInt(3));
+		}
+		return page;
+	}
+
+	static List<JobSummary> summaries(int jobCount) {
+		List<JobSummary> summaries = new ArrayList<JobSummary>(jobCount);
+		for (JsonNode job : harvestPage(jobCount).path("jobs")) {
+			summaries.add(BulkJobHarvester.toSummary(job));
+		}
+		return summaries;
+	}
+
+	/**
+	 * @return the newest <code>buildsPerJob</code> builds of one job, oldest
+	 *         first, one every few hours back from its last build
+	 */
+	static List<BuildRecord> builds(JobSummary job, int buildsPerJob) {
+		List<BuildRecord> builds = new ArrayList<BuildRecord>(buildsPerJob);
+		Random random = new Random(job.getLastBuildNumber());
+		int first = job.getLastBuildNumber() - buildsPerJob + 1;
+		for (int i = 0; i < buildsPerJob; i++) {
+			long timestamp = job.getLastBuildTimestamp() - (buildsPerJob - 1 - i) * DAY / 4;
+			int total = job.getTotalCount();
+			builds.add(new BuildRecord(first + i, timestamp, random.nextInt(3600000),
+					RESULTS[random.nextInt(RESULTS.length)], false, total, random.nextInt(1 + total / 20), 0));
+		}
+		return builds;
+	}
+}
@@ -0,0 +1,74 @@
+package com.mgic.qa;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The Started, Ended and Time Since Last Run formatters of
+ * {@link DashboardColumns}, applied to every build of every job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeFormattingBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int jobCount;
+
+	@Param({ "1", "20" })
+	public int buildsPerJob;
+
+	private long[] timestamps;
+	private long[] durations;
+
+	@Setup
+	public void setUp() {
+		timestamps = new long[jobCount * buildsPerJob];
+		durations = new long[timestamps.length];
+		int i = 0;
+		for (JobSummary summary : SyntheticJobs.summaries(jobCount)) {
+			List<BuildRecord> builds = SyntheticJobs.builds(summary, buildsPerJob);
+			for (BuildRecord build : builds) {
+				timestamps[i] = build.getTimestamp();
+				durations[i++] = build.getDuration();
+			}
+		}
+	}
+
+	@Benchmark
+	public void checkTimeWhenJobRunStarted(Blackhole blackhole) {
+		for (long timestamp : timestamps) {
+			blackhole.consume(DashboardColumns.checkTimeWhenJobRunStarted(timestamp));
+		}
+	}
+
+	@Benchmark
+	public void checkTimeWhenJobRunEnded(Blackhole blackhole) {
+		for (int i = 0; i < timestamps.length; i++) {
+			blackhole.consume(DashboardColumns.checkTimeWhenJobRunEnded(timestamps[i], durations[i]));
+		}
+	}
+
+	@Benchmark
+	public void checkTimeSinceLastRun(Blackhole blackhole) {
+		for (long timestamp : timestamps) {
+			blackhole.consume(DashboardColumns.checkTimeSinceLastRun(timestamp));
+		}
+	}
+}
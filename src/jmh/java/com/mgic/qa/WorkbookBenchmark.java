@@ -0,0 +1,133 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Rendering the streaming .xlsx workbook: writing every row and job block and
+ * sizing the columns, and separately saving a filled workbook. Workbooks are
+ * written to a null stream, so disk speed does not count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WorkbookBenchmark {
+	private static final OutputStream NOWHERE = ByteStreams.nullOutputStream();
+	private static final ControllerEndpoint CONTROLLER = new ControllerEndpoint("", "https://ci.example.com/", "", "",
+			1);
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int jobCount;
+
+	@Param({ "1", "20" })
+	public int buildsPerJob;
+
+	private JobStore store;
+
+	@Setup
+	public void setUp() {
+		store = new JobStore(jobCount);
+		RollingWindowMetrics metrics = new RollingWindowMetrics(RollingWindowMetrics.epochDay(SyntheticJobs.NOW));
+		for (JobSummary summary : SyntheticJobs.summaries(jobCount)) {
+			int row = store.add(summary);
+			List<BuildRecord> builds = SyntheticJobs.builds(summary, buildsPerJob);
+			for (BuildRecord build : builds) {
+				metrics.record(summary.getName(), build);
+			}
+			store.setMetric(row, metrics.describe(summary.getName()));
+			store.setTestCounts(row, summary.getTotalCount() - summary.getFailCount() - summary.getSkipCount(),
+					summary.getFailCount(), summary.getSkipCount());
+		}
+	}
+
+	@Benchmark
+	public ExcelSink writeToExcelAndCleanup(OpenSink open) {
+		ExcelSink sink = open.sink;
+		sink.beginController(CONTROLLER);
+		for (int row = 0; row < store.size(); row++) {
+			sink.writeRow(store, row);
+		}
+		sink.cleanup();
+		return sink;
+	}
+
+	@Benchmark
+	public boolean saveToExcel(FilledWorkbook filled) throws IOException {
+		return filled.excel.saveToExcel(NOWHERE);
+	}
+
+	/**
+	 * A fresh sink for every invocation, saved and disposed of afterwards.
+	 */
+	@State(Scope.Thread)
+	public static class OpenSink {
+		ExcelSink sink;
+
+		@Setup(Level.Invocation)
+		public void open() {
+			sink = ExcelSink.streaming(NOWHERE, ExcelSink.DEFAULT_ROW_WINDOW);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() throws IOException {
+			sink.close();
+		}
+	}
+
+	/**
+	 * A workbook holding the same dashboard and job details sheets an
+	 * {@link ExcelSink} writes, ready to be saved.
+	 */
+	@State(Scope.Thread)
+	public static class FilledWorkbook {
+		ExcelPOI excel;
+
+		@Setup(Level.Invocation)
+		public void fill(WorkbookBenchmark benchmark) {
+			JobStore store = benchmark.store;
+			excel = new ExcelPOI();
+			excel.createStreamingExcel(ExcelSink.DEFAULT_ROW_WINDOW);
+			Sheet dashboard = excel.createSheet("Dashboard");
+			Row header = excel.makeRowInSheet(0, dashboard);
+			for (int cellNum = 0; cellNum < DashboardColumns.HEADERS.length; cellNum++) {
+				excel.makeCellInRow(cellNum, header, DashboardColumns.HEADERS[cellNum]);
+			}
+			Sheet details = excel.createSheet("Job Details");
+			excel.makeCellInRow(0, excel.makeRowInSheet(0, details), "Back to Dashboard");
+			for (int row = 0; row < store.size(); row++) {
+				Row cells = excel.makeRowInSheet(row + 1, dashboard);
+				String[] values = DashboardColumns.values(store, row);
+				for (int cellNum = 0; cellNum < values.length; cellNum++) {
+					if (values[cellNum] != null) {
+						excel.makeCellInRow(cellNum, cells, values[cellNum]);
+					}
+				}
+				excel.makeCellInRow(0, excel.makeRowInSheet(2 * row + 2, details), store.getName(row));
+			}
+			excel.sizeColumns(ExcelSink.NUM_COLUMNS_TO_AUTOSIZE);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Futures;
+import com.mgic.qa.utilities.APIUtilities;
+
+/**
+ * Downloads build artifacts (JUnit XML, coverage reports) straight to disk,
+ * several at a time on the shared request pool. Each body is streamed into a
+ * <code>.part</code> file with {@link MGICFileUtils#transferToFile}, so an
+ * artifact is never held in memory, and hashed on the way through. A transfer
+ * that breaks off is resumed with a <code>Range</code> request from the bytes
+ * already on disk, in this run or the next.
+ * <p>
+ * Artifacts archived with fingerprinting carry an MD5 in the build's API;
+ * those are checked before the <code>.part</code> file is renamed into place,
+ * and downloaded again from the start if they do not match. Fingerprints only
+ * name the file, so an artifact whose file name appears more than once in
+ * the build is downloaded unchecked.
+ */
+public class ArtifactFetcher {
+	public static final int DEFAULT_ATTEMPTS = 3;
+	static final String PART_SUFFIX = ".part";
+	private static final String BUILD_FIELDS = "artifacts[relativePath],fingerprint[fileName,hash]";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private final String username;
+	private final String password;
+	private final ExecutorService executor;
+	private final int attempts;
+
+	public ArtifactFetcher(String username, String password, ExecutorService executor) {
+		this(username, password, executor, DEFAULT_ATTEMPTS);
+	}
+
+	/**
+	 * @param attempts
+	 *            how many times a download is tried, resuming where the last
+	 *            try stopped, before it fails
+	 */
+	public ArtifactFetcher(String username, String password, ExecutorService executor, int attempts) {
+		this.username = username;
+		this.password = password;
+		this.executor = executor;
+		this.attempts = Math.max(1, attempts);
+	}
+
+	/**
+	 * Lists the artifacts of the build at <code>buildUrl</code> whose relative
+	 * path matches <code>filter</code>'s include rules, in one request.
+	 *
+	 * @throws IOException
+	 *             if the build could not be fetched or parsed
+	 */
+	public List<Artifact> list(String buildUrl, JobFilter filter) throws IOException {
+		buildUrl = MGICFileUtils.addTrailingSlash(buildUrl);
+		String body = new APIUtilities(buildUrl + "api/json?tree=" + URLEncoder.encode(BUILD_FIELDS, "UTF-8"),
+				username, password).returnResponseFromJenkinsAsString();
+		return body != null ? parseArtifacts(buildUrl, MAPPER.readTree(body), filter) : new ArrayList<Artifact>();
+	}
+
+	static List<Artifact> parseArtifacts(String buildUrl, JsonNode build, JobFilter filter) {
+		// fingerprints are listed by file name only, so a name shared by several
+		// artifacts or fingerprints cannot tell whose hash it is
+		Map<String, String> md5s = new HashMap<String, String>();
+		for (JsonNode fingerprint : build.path("fingerprint")) {
+			String fileName = fingerprint.path("fileName").asText();
+			md5s.put(fileName, md5s.containsKey(fileName) ? null : fingerprint.path("hash").asText(null));
+		}
+		Map<String, Integer> fileNames = new HashMap<String, Integer>();
+		for (JsonNode artifact : build.path("artifacts")) {
+			fileNames.merge(fileName(artifact.path("relativePath").asText()), 1, Integer::sum);
+		}
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+		for (JsonNode artifact : build.path("artifacts")) {
+			String relativePath = artifact.path("relativePath").asText();
+			if (!isContained(relativePath)) {
+				System.out.println("Skipping artifact outside the build's archive: " + relativePath);
+			} else if (filter.isIncluded(relativePath) && !filter.isExcluded(relativePath)) {
+				String fileName = fileName(relativePath);
+				artifacts.add(new Artifact(buildUrl, relativePath,
+						fileNames.get(fileName) == 1 ? md5s.get(fileName) : null));
+			}
+		}
+		return artifacts;
+	}
+
+	private static String fileName(String relativePath) {
+		return relativePath.substring(relativePath.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * @return whether <code>relativePath</code> stays below the directory it
+	 *         is resolved against: it is relative and has no <code>..</code>
+	 *         segment
+	 */
+	static boolean isContained(String relativePath) {
+		if (relativePath.isEmpty() || relativePath.startsWith("/") || new File(relativePath).isAbsolute()) {
+			return false;
+		}
+		for (String segment : relativePath.split("[/\\\\]")) {
+			if (segment.equals("..")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Downloads every artifact concurrently into <code>directory</code>, each
+	 * under its relative path, and waits for all of them. Artifacts already
+	 * there are not downloaded again.
+	 *
+	 * @return the downloaded files, in the same order as <code>artifacts</code>
+	 * @throws IOException
+	 *             if any artifact could not be downloaded or failed its
+	 *             checksum on every attempt
+	 */
+	public List<File> fetchAll(List<Artifact> artifacts, final File directory) throws IOException {
+		List<Future<File>> pending = new ArrayList<Future<File>>();
+		for (final Artifact artifact : artifacts) {
+			if (!isContained(artifact.getRelativePath())) {
+				throw new IOException("Artifact path leaves " + directory + ": " + artifact.getRelativePath());
+			}
+		}
+		for (final Artifact artifact : artifacts) {
+			pending.add(executor.submit(new Callable<File>() {
+
+				@Override
+				public File call() throws IOException {
+					return fetch(artifact, new File(directory, artifact.getRelativePath()));
+				}
+			}));
+		}
+		List<File> files = new ArrayList<File>(pending.size());
+		for (Future<File> future : pending) {
+			files.add(Futures.getChecked(future, IOException.class));
+		}
+		return files;
+	}
+
+	/**
+	 * Downloads one artifact to <code>target</code>, resuming from a
+	 * <code>.part</code> file left by an earlier attempt.
+	 */
+	public File fetch(Artifact artifact, File target) throws IOException {
+		if (target.isFile()) {
+			// artifacts of a finished build do not change
+			return target;
+		}
+		MGICFileUtils.makeDirectory(target.getAbsoluteFile().getParent());
+		final File part = new File(target.getPath() + PART_SUFFIX);
+		IOException failure = null;
+		for (int attempt = 1; attempt <= attempts; attempt++) {
+			try {
+				final long firstByte = part.length();
+				String md5 = new APIUtilities(artifact.getUrl(), username, password)
+						.returnResponseFromJenkins(firstByte, response -> transfer(response, part, firstByte));
+				if (artifact.getMd5() != null && !artifact.getMd5().equalsIgnoreCase(md5)) {
+					Files.delete(part.toPath());
+					throw new IOException("Checksum mismatch for " + artifact.getUrl() + ": expected "
+							+ artifact.getMd5() + ", got " + md5);
+				}
+				Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return target;
+			} catch (IOException e) {
+				failure = e;
+				System.out.println("Artifact download attempt " + attempt + " of " + attempts + " failed: " + e);
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Writes a response body into <code>part</code>, appending at
+	 * <code>firstByte</code> if the server honoured the range and from the
+	 * start otherwise.
+	 *
+	 * @return the MD5 of the whole file, hex encoded
+	 */
+	static String transfer(HttpResponse response, File part, long firstByte) throws IOException {
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		MessageDigest md5 = DigestUtils.getMd5Digest();
+		if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && firstByte > 0) {
+			// nothing past what is on disk: the last attempt got every byte
+			EntityUtils.consume(entity);
+			return Hex.encodeHexString(DigestUtils.updateDigest(md5, part).digest());
+		}
+		if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT || entity == null) {
+			EntityUtils.consume(entity);
+			throw new ClientProtocolException("Unexpected response status: " + status);
+		}
+		long position = 0;
+		if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+			Header range = response.getFirstHeader("Content-Range");
+			if (range == null || !range.getValue().trim().startsWith("bytes " + firstByte + "-")) {
+				// the next attempt starts over instead of splicing in the wrong bytes
+				EntityUtils.consume(entity);
+				Files.deleteIfExists(part.toPath());
+				throw new ClientProtocolException("Unexpected Content-Range: " + range);
+			}
+			// the bytes kept from the last attempt count towards the checksum too
+			DigestUtils.updateDigest(md5, part);
+			position = firstByte;
+		}
+		MGICFileUtils.transferToFile(new DigestInputStream(entity.getContent(), md5), part, position);
+		return Hex.encodeHexString(md5.digest());
+	}
+
+	/**
+	 * One archived file of a build.
+	 */
+	public static class Artifact {
+		private final String buildUrl;
+		private final String relativePath;
+		private final String md5;
+
+		public Artifact(String buildUrl, String relativePath, String md5) {
+			this.buildUrl = MGICFileUtils.addTrailingSlash(buildUrl);
+			this.relativePath = relativePath;
+			this.md5 = md5;
+		}
+
+		public String getUrl() {
+			StringBuilder url = new StringBuilder(buildUrl).append("artifact");
+			for (String segment : relativePath.split("/")) {
+				try {
+					url.append('/').append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20"));
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return url.toString();
+		}
+
+		public String getRelativePath() {
+			return relativePath;
+		}
+
+		/**
+		 * @return the MD5 Jenkins fingerprinted the file with, hex encoded, or
+		 *         null if it was archived without a fingerprint
+		 */
+		public String getMd5() {
+			return md5;
+		}
+	}
+}
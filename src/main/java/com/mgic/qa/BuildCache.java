@@ -0,0 +1,209 @@
+package com.mgic.qa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local on-disk cache of build metadata, keyed by job name and build number.
+ * Finished builds are immutable in Jenkins, so once a build is cached it only
+ * has to be fetched again while it is still running.
+ * <p>
+ * The cache is a tab separated file with one build per line. Builds that are
+ * neither among a job's newest <code>historyWindow</code> nor inside the
+ * last <code>horizonDays</code> are dropped as the cache is merged and saved,
+ * so the file stays the size of what the report can still use.
+ */
+public class BuildCache {
+	private static final String SEPARATOR = "\t";
+	private static final int FIELDS = 9;
+	private final File file;
+	private final int historyWindow;
+	private final int horizonDays;
+	private final Map<String, NavigableMap<Integer, BuildRecord>> builds = new HashMap<String, NavigableMap<Integer, BuildRecord>>();
+
+	private BuildCache(File file, int historyWindow, int horizonDays) {
+		this.file = file;
+		this.historyWindow = Math.max(historyWindow, 1);
+		this.horizonDays = horizonDays;
+	}
+
+	/**
+	 * Loads the cache from <code>file</code>, or starts an empty one if the
+	 * file does not exist yet. No build is ever dropped.
+	 */
+	public static BuildCache load(File file) throws IOException {
+		return load(file, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Loads the cache from <code>file</code>, keeping of each job only its
+	 * newest <code>historyWindow</code> builds and those that started in the
+	 * last <code>horizonDays</code>.
+	 */
+	public static BuildCache load(File file, int historyWindow, int horizonDays) throws IOException {
+		BuildCache cache = new BuildCache(file, historyWindow, horizonDays);
+		if (!file.isFile()) {
+			return cache;
+		}
+		BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR, -1);
+				if (fields.length != FIELDS) {
+					continue;
+				}
+				cache.put(fields[0], new BuildRecord(Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+						Long.parseLong(fields[3]), fields[4].isEmpty() ? null : fields[4],
+						Boolean.parseBoolean(fields[5]), Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+						Integer.parseInt(fields[8])));
+			}
+		} finally {
+			MGICFileUtils.close(reader);
+		}
+		return cache;
+	}
+
+	/**
+	 * Writes the cache back to disk, replacing the previous file only once
+	 * the new one is complete.
+	 */
+	public synchronized void save() throws IOException {
+		MGICFileUtils.makeDirectory(file.getAbsoluteFile().getParent());
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8);
+		try {
+			for (Map.Entry<String, NavigableMap<Integer, BuildRecord>> job : builds.entrySet()) {
+				prune(job.getValue());
+				for (BuildRecord build : job.getValue().values()) {
+					writer.write(job.getKey() + SEPARATOR + build.getNumber() + SEPARATOR + build.getTimestamp()
+							+ SEPARATOR + build.getDuration() + SEPARATOR
+							+ (build.getResult() == null ? "" : build.getResult()) + SEPARATOR + build.isBuilding()
+							+ SEPARATOR + build.getTotalCount() + SEPARATOR + build.getFailCount() + SEPARATOR
+							+ build.getSkipCount());
+					writer.newLine();
+				}
+			}
+		} finally {
+			MGICFileUtils.close(writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns the build number at or below which every cached build of
+	 * <code>jobName</code> is finished, i.e. the highest cached build number
+	 * unless an older cached build was still running.
+	 *
+	 * @return the high-water mark, or {@link JobSummary#NO_BUILD} if nothing
+	 *         is cached for the job
+	 */
+	public synchronized int getHighWaterMark(String jobName) {
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds == null || jobBuilds.isEmpty()) {
+			return JobSummary.NO_BUILD;
+		}
+		for (BuildRecord build : jobBuilds.values()) {
+			if (build.isBuilding()) {
+				return build.getNumber() - 1;
+			}
+		}
+		return jobBuilds.lastKey();
+	}
+
+	/**
+	 * Whether the cache already holds every build up to
+	 * <code>lastBuildNumber</code> in its final state. A last build below the
+	 * newest cached one means the job was recreated and its numbers started
+	 * over, so its cached builds are dropped and it is not up to date.
+	 */
+	public synchronized boolean isUpToDate(String jobName, int lastBuildNumber) {
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds != null && !jobBuilds.isEmpty() && lastBuildNumber < jobBuilds.lastKey()) {
+			builds.remove(jobName);
+			return false;
+		}
+		return lastBuildNumber <= getHighWaterMark(jobName);
+	}
+
+	/**
+	 * Adds <code>newBuilds</code> to the builds of <code>jobName</code>,
+	 * replacing any cached under the same numbers, and drops the job's builds
+	 * that fell out of the window.
+	 */
+	public synchronized void merge(String jobName, List<BuildRecord> newBuilds) {
+		for (BuildRecord build : newBuilds) {
+			put(jobName, build);
+		}
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds != null) {
+			prune(jobBuilds);
+		}
+	}
+
+	/**
+	 * @return the cached builds of <code>jobName</code>, newest first
+	 */
+	public synchronized List<BuildRecord> getBuilds(String jobName) {
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<BuildRecord>(jobBuilds.descendingMap().values());
+	}
+
+	/**
+	 * @return the cached builds of <code>jobName</code> numbered above
+	 *         <code>after</code> and up to <code>upTo</code>, oldest first
+	 */
+	public synchronized List<BuildRecord> getBuildsBetween(String jobName, int after, int upTo) {
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds == null || upTo <= after) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<BuildRecord>(jobBuilds.subMap(after, false, upTo, true).values());
+	}
+
+	/**
+	 * Drops the finished builds older than both the newest
+	 * <code>historyWindow</code> and the horizon.
+	 */
+	private void prune(NavigableMap<Integer, BuildRecord> jobBuilds) {
+		if (jobBuilds.size() <= historyWindow) {
+			return;
+		}
+		long horizon = horizonDays == Integer.MAX_VALUE ? Long.MIN_VALUE
+				: System.currentTimeMillis() - TimeUnit.DAYS.toMillis(horizonDays);
+		int kept = 0;
+		for (Iterator<BuildRecord> newestFirst = jobBuilds.descendingMap().values().iterator(); newestFirst
+				.hasNext();) {
+			BuildRecord build = newestFirst.next();
+			if (++kept > historyWindow && build.getTimestamp() < horizon && !build.isBuilding()) {
+				newestFirst.remove();
+			}
+		}
+	}
+
+	private void put(String jobName, BuildRecord build) {
+		NavigableMap<Integer, BuildRecord> jobBuilds = builds.get(jobName);
+		if (jobBuilds == null) {
+			jobBuilds = new TreeMap<Integer, BuildRecord>();
+			builds.put(jobName, jobBuilds);
+		}
+		jobBuilds.put(build.getNumber(), build);
+	}
+}
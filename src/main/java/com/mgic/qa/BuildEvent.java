@@ -0,0 +1,208 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * One build notification as posted by the Jenkins Notification plugin, e.g.
+ * <code>{"name":"job","url":"job/folder/job/job/","build":{"full_url":...,
+ * "number":5,"phase":"COMPLETED","status":"SUCCESS","timestamp":...,
+ * "duration":...}}</code>. Fields the plugin version does not send are left
+ * at their defaults.
+ */
+public class BuildEvent {
+	public static final String STARTED = "STARTED";
+	public static final String COMPLETED = "COMPLETED";
+	public static final String FINALIZED = "FINALIZED";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private final String jobName;
+	private final String buildUrl;
+	private final String phase;
+	private final int number;
+	private final String status;
+	private final long timestamp;
+	private final long duration;
+	private final int passCount;
+	private final int failCount;
+	private final int skipCount;
+
+	public BuildEvent(String jobName, String buildUrl, String phase, int number, String status, long timestamp,
+			long duration, int passCount, int failCount, int skipCount) {
+		this.jobName = jobName;
+		this.buildUrl = buildUrl;
+		this.phase = phase;
+		this.number = number;
+		this.status = status;
+		this.timestamp = timestamp;
+		this.duration = duration;
+		this.passCount = passCount;
+		this.failCount = failCount;
+		this.skipCount = skipCount;
+	}
+
+	/**
+	 * Reads a notification body. A missing <code>timestamp</code> becomes
+	 * <code>receivedAt</code> for a started build; a missing
+	 * <code>duration</code> is measured up to <code>receivedAt</code> for a
+	 * finished one.
+	 *
+	 * @throws IOException
+	 *             if the body is not JSON or names no job or build number
+	 */
+	public static BuildEvent parse(InputStream body, long receivedAt) throws IOException {
+		JsonNode root = MAPPER.readTree(body);
+		if (root == null) {
+			throw new IOException("Empty notification");
+		}
+		JsonNode build = root.path("build");
+		String jobName = jobNameFromUrl(root.path("url").asText(""));
+		if (jobName.isEmpty()) {
+			jobName = root.path("name").asText("");
+		}
+		int number = build.path("number").asInt(JobSummary.NO_BUILD);
+		if (jobName.isEmpty() || number == JobSummary.NO_BUILD) {
+			throw new IOException("Notification names no job or build number");
+		}
+		String phase = build.path("phase").asText("");
+		boolean finished = COMPLETED.equals(phase) || FINALIZED.equals(phase);
+		long timestamp = build.path("timestamp").asLong(0);
+		long duration = build.path("duration").asLong(0);
+		if (timestamp <= 0) {
+			timestamp = finished && duration > 0 ? receivedAt - duration : receivedAt;
+		}
+		if (finished && duration <= 0) {
+			duration = Math.max(receivedAt - timestamp, 0);
+		}
+		JsonNode tests = build.path("testSummary");
+		int failed = tests.isObject() ? tests.path("failed").asInt(-1) : -1;
+		int passed = failed < 0 ? -1 : tests.path("passed").asInt(0);
+		int skipped = failed < 0 ? -1 : tests.path("skipped").asInt(0);
+		return new BuildEvent(jobName, build.path("full_url").asText(""), phase, number,
+				build.path("status").asText(null), timestamp, finished ? duration : 0, passed, failed, skipped);
+	}
+
+	/**
+	 * Turns a relative job URL such as <code>job/folder/job/name/</code> into
+	 * the full name the report keys jobs by, <code>folder/name</code>. Each
+	 * segment is percent-decoded once, so <code>my%20job</code> becomes
+	 * <code>my job</code> and a branch <code>feature%252Ffoo</code> becomes
+	 * <code>feature%2Ffoo</code>, the name Jenkins gives it.
+	 */
+	static String jobNameFromUrl(String url) {
+		StringBuilder name = new StringBuilder();
+		String[] segments = url.split("/");
+		for (int i = 0; i + 1 < segments.length; i++) {
+			if (segments[i].equals("job")) {
+				if (name.length() > 0) {
+					name.append('/');
+				}
+				name.append(decode(segments[++i]));
+			}
+		}
+		return name.toString();
+	}
+
+	private static String decode(String segment) {
+		try {
+			// a path keeps '+' literal; URLDecoder would read it as a space
+			return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public boolean isStarted() {
+		return STARTED.equals(phase);
+	}
+
+	public boolean isFinished() {
+		return COMPLETED.equals(phase) || FINALIZED.equals(phase);
+	}
+
+	/**
+	 * Writes this build into <code>row</code> if it is not older than the
+	 * build the row already shows, and counts a finished build once in the
+	 * job's rolling window.
+	 *
+	 * @param metrics
+	 *            the controller's rolling window, or null to leave the metric
+	 *            column alone
+	 * @return whether the row changed
+	 */
+	boolean applyTo(JobStore store, int row, RollingWindowMetrics metrics) {
+		if (!isStarted() && !isFinished() || number < store.getLastBuildNumber(row)) {
+			return false;
+		}
+		if (isStarted()) {
+			// a running build has no result or test report yet
+			store.setLastBuild(row, number, timestamp, 0, null);
+			store.clearTestReport(row);
+			return true;
+		}
+		store.setLastBuild(row, number, timestamp, duration, status);
+		if ("SUCCESS".equals(status)) {
+			store.setLastSuccessfulBuildNumber(row, number);
+		}
+		if (hasTestResults()) {
+			store.setTestCounts(row, passCount, failCount, skipCount);
+		} else {
+			store.clearTestReport(row);
+		}
+		if (metrics != null) {
+			metrics.advanceTo(RollingWindowMetrics.epochDay(System.currentTimeMillis()));
+			metrics.recordLatest(jobName, new BuildRecord(number, timestamp, duration, status, false,
+					hasTestResults() ? passCount + failCount + skipCount : -1, failCount, skipCount));
+			store.setMetric(row, metrics.describe(jobName));
+		}
+		return true;
+	}
+
+	public String getJobName() {
+		return jobName;
+	}
+
+	public String getBuildUrl() {
+		return buildUrl;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public boolean hasTestResults() {
+		return failCount >= 0;
+	}
+
+	public int getPassCount() {
+		return passCount;
+	}
+
+	public int getFailCount() {
+		return failCount;
+	}
+
+	public int getSkipCount() {
+		return skipCount;
+	}
+}
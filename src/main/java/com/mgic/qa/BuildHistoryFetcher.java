@@ -0,0 +1,116 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mgic.qa.utilities.APIUtilities;
+
+/**
+ * Brings a {@link BuildCache} up to date by fetching, newest first, only the
+ * builds above each job's cached high-water mark. Jobs whose last build is
+ * already cached in its final state cost no request at all.
+ * <p>
+ * Builds are requested a window of <code>allBuilds{start,end}</code> at a
+ * time. The newest window is always fetched; older windows only while they
+ * still reach into the rolling metric window, so a job with thousands of
+ * retained builds costs one or two capped requests instead of its whole
+ * history.
+ */
+public class BuildHistoryFetcher {
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	public static final int DEFAULT_HORIZON_DAYS = RollingWindowMetrics.WINDOW_DAYS;
+	static final String BUILD_FIELDS = "number,timestamp,duration,result,building,actions[failCount,skipCount,totalCount]";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private final String username;
+	private final String password;
+	private final int pageSize;
+	private final int horizonDays;
+
+	public BuildHistoryFetcher(String username, String password) {
+		this(username, password, DEFAULT_PAGE_SIZE, DEFAULT_HORIZON_DAYS);
+	}
+
+	/**
+	 * @param pageSize
+	 *            the most builds asked for in one request
+	 * @param horizonDays
+	 *            how many days back a metric needs builds; older builds are
+	 *            only fetched if they are in the newest page
+	 */
+	public BuildHistoryFetcher(String username, String password, int pageSize, int horizonDays) {
+		this.username = username;
+		this.password = password;
+		this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+		this.horizonDays = horizonDays;
+	}
+
+	/**
+	 * Fetches the builds of <code>job</code> that are missing from
+	 * <code>cache</code> or still running there, without merging them.
+	 *
+	 * @return the new builds, newest first; empty if the job is up to date
+	 * @throws IOException
+	 *             if the history could not be fetched
+	 */
+	public List<BuildRecord> fetchNewBuilds(JobSummary job, BuildCache cache) throws IOException {
+		if (!job.hasBuilds() || cache.isUpToDate(job.getName(), job.getLastBuildNumber())) {
+			return Collections.emptyList();
+		}
+		return fetchBuildsAbove(job.getUrl(), cache.getHighWaterMark(job.getName()));
+	}
+
+	private List<BuildRecord> fetchBuildsAbove(String jobUrl, int highWaterMark) throws IOException {
+		long horizon = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(horizonDays);
+		List<BuildRecord> newBuilds = new ArrayList<BuildRecord>();
+		int start = 0;
+		while (true) {
+			JsonNode buildsNode = fetchPage(jobUrl, start, start + pageSize);
+			for (JsonNode buildNode : buildsNode) {
+				BuildRecord build = toRecord(buildNode);
+				if (build.getNumber() <= highWaterMark) {
+					return newBuilds;
+				}
+				newBuilds.add(build);
+			}
+			if (buildsNode.size() < pageSize || !reachesBack(newBuilds, horizon)) {
+				return newBuilds;
+			}
+			start += pageSize;
+		}
+	}
+
+	/**
+	 * @return whether the oldest build fetched so far is still inside the
+	 *         metric window, so the page before it may be too
+	 */
+	static boolean reachesBack(List<BuildRecord> newestFirst, long horizon) {
+		return !newestFirst.isEmpty() && newestFirst.get(newestFirst.size() - 1).getTimestamp() >= horizon;
+	}
+
+	JsonNode fetchPage(String jobUrl, int start, int end) throws IOException {
+		String tree = "allBuilds[" + BUILD_FIELDS + "]{" + start + "," + end + "}";
+		String url = MGICFileUtils.addTrailingSlash(jobUrl) + "api/json?tree=" + URLEncoder.encode(tree, "UTF-8");
+		String body = new APIUtilities(url, username, password).returnResponseFromJenkinsAsString();
+		return body != null ? MAPPER.readTree(body).path("allBuilds") : MAPPER.createArrayNode();
+	}
+
+	static BuildRecord toRecord(JsonNode buildNode) {
+		int totalCount = -1, failCount = -1, skipCount = -1;
+		for (JsonNode action : buildNode.path("actions")) {
+			if (action.has("totalCount")) {
+				totalCount = action.path("totalCount").asInt();
+				failCount = action.path("failCount").asInt();
+				skipCount = action.path("skipCount").asInt();
+			}
+		}
+		return new BuildRecord(buildNode.path("number").asInt(), buildNode.path("timestamp").asLong(),
+				buildNode.path("duration").asLong(), buildNode.path("result").asText(null),
+				buildNode.path("building").asBoolean(), totalCount, failCount, skipCount);
+	}
+}
@@ -0,0 +1,68 @@
+package com.mgic.qa;
+
+/**
+ * The fields of a single build that the report reads. Finished builds never
+ * change, so records are cached between runs by {@link BuildCache}.
+ */
+public class BuildRecord {
+	private final int number;
+	private final long timestamp;
+	private final long duration;
+	private final String result;
+	private final boolean building;
+	private final int totalCount;
+	private final int failCount;
+	private final int skipCount;
+
+	public BuildRecord(int number, long timestamp, long duration, String result, boolean building, int totalCount,
+			int failCount, int skipCount) {
+		this.number = number;
+		this.timestamp = timestamp;
+		this.duration = duration;
+		this.result = result;
+		this.building = building;
+		this.totalCount = totalCount;
+		this.failCount = failCount;
+		this.skipCount = skipCount;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	public boolean isBuilding() {
+		return building;
+	}
+
+	public boolean hasTestResults() {
+		return totalCount >= 0;
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	public int getFailCount() {
+		return failCount;
+	}
+
+	public int getSkipCount() {
+		return skipCount;
+	}
+
+	public int getPassCount() {
+		return hasTestResults() ? totalCount - failCount - skipCount : 0;
+	}
+}
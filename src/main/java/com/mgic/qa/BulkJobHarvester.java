@@ -0,0 +1,110 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mgic.qa.utilities.APIUtilities;
+
+/**
+ * Harvests the dashboard fields for every job under a Jenkins URL with a
+ * single <code>tree=</code> query per page, instead of one chain of
+ * <code>getJob()</code>, <code>details()</code> and <code>getTestReport()</code>
+ * calls per job.
+ */
+public class BulkJobHarvester {
+	public static final int DEFAULT_PAGE_SIZE = 500;
+	static final String JOB_FIELDS = "name,fullName,url,_class,"
+			+ "lastBuild[number,duration,timestamp,result,building,actions[failCount,skipCount,totalCount]],"
+			+ "lastSuccessfulBuild[number]";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private final String username;
+	private final String password;
+	private final int pageSize;
+
+	public BulkJobHarvester(String username, String password, int pageSize) {
+		this.username = username;
+		this.password = password;
+		this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+	}
+
+	/**
+	 * Returns a summary of every job directly under <code>baseUrl</code>
+	 * (the controller root or a folder), paging through the job list with
+	 * <code>{start,end}</code> ranges.
+	 *
+	 * @param baseUrl
+	 *            the Jenkins root or folder URL
+	 * @return the job summaries, in the order Jenkins lists them
+	 * @throws IOException
+	 *             if a page could not be fetched or parsed
+	 */
+	public List<JobSummary> harvest(String baseUrl) throws IOException {
+		List<JobSummary> summaries = new ArrayList<JobSummary>();
+		int start = 0;
+		while (true) {
+			JsonNode jobsNode = fetchPage(baseUrl, start, start + pageSize).path("jobs");
+			for (JsonNode jobNode : jobsNode) {
+				summaries.add(toSummary(jobNode));
+			}
+			if (jobsNode.size() < pageSize) {
+				return summaries;
+			}
+			start += pageSize;
+		}
+	}
+
+	/**
+	 * Returns the summary of the single job at <code>jobUrl</code> with the
+	 * same fields {@link #harvest(String)} reads, in one request.
+	 *
+	 * @throws IOException
+	 *             if the job could not be fetched or parsed
+	 */
+	public JobSummary harvestJob(String jobUrl) throws IOException {
+		String url = MGICFileUtils.addTrailingSlash(jobUrl) + "api/json?tree=" + URLEncoder.encode(JOB_FIELDS, "UTF-8");
+		String body = new APIUtilities(url, username, password).returnResponseFromJenkinsAsString();
+		if (body == null) {
+			throw new IOException("No response for " + jobUrl);
+		}
+		return toSummary(MAPPER.readTree(body));
+	}
+
+	private JsonNode fetchPage(String baseUrl, int start, int end) throws IOException {
+		String tree = "jobs[" + JOB_FIELDS + "]{" + start + "," + end + "}";
+		String url = MGICFileUtils.addTrailingSlash(baseUrl) + "api/json?tree=" + URLEncoder.encode(tree, "UTF-8");
+		String body = new APIUtilities(url, username, password).returnResponseFromJenkinsAsString();
+		return body != null ? MAPPER.readTree(body) : MAPPER.createObjectNode();
+	}
+
+	static JobSummary toSummary(JsonNode jobNode) {
+		JobSummary summary = new JobSummary();
+		// jobs inside folders are identified by their full name, e.g. "folder/job"
+		summary.setName(jobNode.path("fullName").asText(jobNode.path("name").asText()));
+		summary.setUrl(jobNode.path("url").asText());
+		summary.setJobClass(jobNode.path("_class").asText());
+		JsonNode lastBuild = jobNode.path("lastBuild");
+		if (lastBuild.isObject()) {
+			summary.setLastBuildNumber(lastBuild.path("number").asInt(JobSummary.NO_BUILD));
+			summary.setLastBuildDuration(lastBuild.path("duration").asLong());
+			summary.setLastBuildTimestamp(lastBuild.path("timestamp").asLong());
+			summary.setLastBuildResult(lastBuild.path("result").asText(null));
+			summary.setBuilding(lastBuild.path("building").asBoolean());
+			for (JsonNode action : lastBuild.path("actions")) {
+				if (action.has("totalCount")) {
+					summary.setTotalCount(action.path("totalCount").asInt());
+					summary.setFailCount(action.path("failCount").asInt());
+					summary.setSkipCount(action.path("skipCount").asInt());
+				}
+			}
+		}
+		JsonNode lastSuccessfulBuild = jobNode.path("lastSuccessfulBuild");
+		if (lastSuccessfulBuild.isObject()) {
+			summary.setLastSuccessfulBuildNumber(lastSuccessfulBuild.path("number").asInt(JobSummary.NO_BUILD));
+		}
+		return summary;
+	}
+}
@@ -0,0 +1,52 @@
+package com.mgic.qa;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Hands out one shared {@link CellStyle} and {@link Font} per distinct look,
+ * so a report uses a handful of styles however many cells it formats instead
+ * of running into the workbook's style limit.
+ */
+public class CellStylePool {
+	private final Workbook workbook;
+	private final Map<String, Font> fonts = new HashMap<String, Font>();
+	private final Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
+
+	public CellStylePool(Workbook workbook) {
+		this.workbook = workbook;
+	}
+
+	/**
+	 * @return the style with the given font and alignment, created on first
+	 *         use
+	 */
+	public CellStyle getStyle(String fontName, boolean bold, HorizontalAlignment alignment) {
+		String key = fontName + '|' + bold + '|' + alignment;
+		CellStyle cellStyle = styles.get(key);
+		if (cellStyle == null) {
+			cellStyle = workbook.createCellStyle();
+			cellStyle.setFont(getFont(fontName, bold));
+			cellStyle.setAlignment(alignment);
+			styles.put(key, cellStyle);
+		}
+		return cellStyle;
+	}
+
+	private Font getFont(String fontName, boolean bold) {
+		String key = fontName + '|' + bold;
+		Font font = fonts.get(key);
+		if (font == null) {
+			font = workbook.createFont();
+			font.setBold(bold);
+			font.setFontName(fontName);
+			fonts.put(key, font);
+		}
+		return font;
+	}
+}
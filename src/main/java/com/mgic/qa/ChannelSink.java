@@ -0,0 +1,76 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base for the text sinks. Text is UTF-8 encoded straight into one direct
+ * buffer, which is written to the channel whenever it fills, so a row costs
+ * no intermediate byte arrays or per-row system calls.
+ */
+public abstract class ChannelSink implements ReportSink {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	protected ChannelSink(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	protected ChannelSink(File file) throws IOException {
+		this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE));
+	}
+
+	protected void write(CharSequence text) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		while (encoder.encode(chars, buffer, false) == CoderResult.OVERFLOW) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes whatever the format needs after the last row. Does nothing by
+	 * default.
+	 */
+	protected void finish() throws IOException {
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * @return how the controller is identified in the output: its name if it
+	 *         has one, otherwise its URL
+	 */
+	protected static String controllerLabel(ControllerEndpoint controller) {
+		return controller.isNamed() ? controller.getName() : controller.getUrl();
+	}
+}
@@ -0,0 +1,191 @@
+package com.mgic.qa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.util.EntityUtils;
+
+import com.mgic.qa.SignatureMatcher.Scan;
+import com.mgic.qa.utilities.APIUtilities;
+
+/**
+ * Names the cause of a job's last unsuccessful build by scanning its console
+ * log for failure signatures. The log is read through
+ * <code>logText/progressiveText?start=</code> from the offset the previous
+ * scan stopped at, a fixed buffer at a time, so a build is never read twice
+ * and memory does not grow with the log. A build still running is picked up
+ * where it left off on the next run; a finished one costs no request once it
+ * has been read to the end.
+ * <p>
+ * Offsets and scan states are kept in the cache directory between runs.
+ */
+public class ConsoleLogScanner {
+	static final int BUFFER_SIZE = 64 * 1024;
+	private static final String SEPARATOR = "\t";
+	private final SignatureMatcher matcher;
+	private final String username;
+	private final String password;
+	private final ConcurrentMap<String, LogPosition> positions = new ConcurrentHashMap<String, LogPosition>();
+
+	public ConsoleLogScanner(SignatureMatcher matcher, String username, String password) {
+		this.matcher = matcher;
+		this.username = username;
+		this.password = password;
+	}
+
+	/**
+	 * Reads the positions saved by {@link #save(File)}. Positions saved with a
+	 * different signature list are dropped, so those logs are read again.
+	 */
+	public static ConsoleLogScanner load(File file, SignatureMatcher matcher, String username, String password)
+			throws IOException {
+		ConsoleLogScanner scanner = new ConsoleLogScanner(matcher, username, password);
+		if (!file.isFile()) {
+			return scanner;
+		}
+		BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line = reader.readLine();
+			if (line == null || !line.equals("V" + SEPARATOR + matcher.getFingerprint())) {
+				return scanner;
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR, -1);
+				scanner.positions.put(fields[0], new LogPosition(Integer.parseInt(fields[1]),
+						Long.parseLong(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+						Boolean.parseBoolean(fields[5])));
+			}
+		} finally {
+			MGICFileUtils.close(reader);
+		}
+		return scanner;
+	}
+
+	public void save(File file) throws IOException {
+		MGICFileUtils.makeDirectory(file.getAbsoluteFile().getParent());
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8);
+		try {
+			writer.write("V" + SEPARATOR + matcher.getFingerprint());
+			writer.newLine();
+			for (Map.Entry<String, LogPosition> job : positions.entrySet()) {
+				LogPosition position = job.getValue();
+				writer.write(job.getKey() + SEPARATOR + position.build + SEPARATOR + position.offset + SEPARATOR
+						+ position.state + SEPARATOR + position.match + SEPARATOR + position.complete);
+				writer.newLine();
+			}
+		} finally {
+			MGICFileUtils.close(writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Whether the last build of <code>job</code> needs a failure cause: it
+	 * did not succeed, or it is still running.
+	 */
+	static boolean hasLogToScan(JobSummary job) {
+		return job.hasBuilds() && !"SUCCESS".equals(job.getLastBuildResult());
+	}
+
+	/**
+	 * Reads whatever part of the last build's log has not been read yet.
+	 *
+	 * @return the cause of the first listed signature found in the log so
+	 *         far, or null
+	 * @throws IOException
+	 *             if the log could not be read
+	 */
+	public String scan(JobSummary job) throws IOException {
+		if (!hasLogToScan(job)) {
+			return null;
+		}
+		LogPosition position = positions.get(job.getName());
+		if (position == null || position.build != job.getLastBuildNumber()) {
+			position = new LogPosition(job.getLastBuildNumber(), 0, 0, SignatureMatcher.NO_MATCH, false);
+		}
+		if (!position.complete) {
+			String url = MGICFileUtils.addTrailingSlash(job.getUrl()) + position.build
+					+ "/logText/progressiveText?start=" + position.offset;
+			final LogPosition from = position;
+			position = new APIUtilities(url, username, password)
+					.returnResponseFromJenkins(response -> read(response, from));
+			positions.put(job.getName(), position);
+		}
+		return position.match == SignatureMatcher.NO_MATCH ? null : matcher.getCause(position.match);
+	}
+
+	LogPosition read(HttpResponse response, LogPosition from) throws IOException {
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (status == HttpStatus.SC_NOT_FOUND || entity == null) {
+			// the build or its log is gone; nothing more will appear
+			EntityUtils.consume(entity);
+			return new LogPosition(from.build, from.offset, from.state, from.match, true);
+		}
+		if (status < 200 || status >= 300) {
+			// keep the position as it was, so the next run tries again
+			System.out.println("Could not read the console log of build " + from.build + ": status " + status);
+			EntityUtils.consume(entity);
+			return from;
+		}
+		Scan scan = matcher.resume(from.state, from.match);
+		long read = 0;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		InputStream content = entity.getContent();
+		try {
+			for (int n; (n = content.read(buffer)) > 0;) {
+				scan.update(buffer, 0, n);
+				read += n;
+			}
+		} finally {
+			content.close();
+		}
+		// X-Text-Size is the log offset to start from next time, in bytes of the raw log
+		Header textSize = response.getFirstHeader("X-Text-Size");
+		long offset = textSize != null ? Long.parseLong(textSize.getValue().trim()) : from.offset + read;
+		Header moreData = response.getFirstHeader("X-More-Data");
+		boolean complete = moreData == null || !Boolean.parseBoolean(moreData.getValue().trim());
+		return new LogPosition(from.build, offset, scan.getState(), scan.getMatch(), complete);
+	}
+
+	/**
+	 * How far the log of one build has been read.
+	 */
+	static class LogPosition {
+		private final int build;
+		private final long offset;
+		private final int state;
+		private final int match;
+		private final boolean complete;
+
+		LogPosition(int build, long offset, int state, int match, boolean complete) {
+			this.build = build;
+			this.offset = offset;
+			this.state = state;
+			this.match = match;
+			this.complete = complete;
+		}
+
+		long getOffset() {
+			return offset;
+		}
+
+		boolean isComplete() {
+			return complete;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.mgic.qa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+
+/**
+ * One Jenkins controller to report on: its URL, credentials and how many
+ * requests may be in flight against it at once.
+ */
+public class ControllerEndpoint {
+	private final String name;
+	private final String url;
+	private final String username;
+	private final String password;
+	private final int maxConcurrentRequests;
+
+	/**
+	 * @param name
+	 *            names the controller's sheet group and cache directory;
+	 *            empty for a single-controller report
+	 */
+	public ControllerEndpoint(String name, String url, String username, String password,
+			int maxConcurrentRequests) {
+		this.name = name;
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.maxConcurrentRequests = maxConcurrentRequests > 0 ? maxConcurrentRequests
+				: JenkinsReporting.DEFAULT_MAX_CONCURRENT_REQUESTS;
+	}
+
+	/**
+	 * The single controller configured by <code>qa.jenkins.dns</code>,
+	 * <code>qa.jenkins.username</code>, <code>qa.jenkins.password</code> and
+	 * <code>qa.jenkins.maxConcurrentRequests</code>.
+	 */
+	public static ControllerEndpoint fromSystemProperties() {
+		return new ControllerEndpoint("", System.getProperty("qa.jenkins.dns", ""),
+				System.getProperty("qa.jenkins.username", ""), System.getProperty("qa.jenkins.password", ""),
+				Integer.getInteger("qa.jenkins.maxConcurrentRequests", JenkinsReporting.DEFAULT_MAX_CONCURRENT_REQUESTS));
+	}
+
+	/**
+	 * The controllers named by the comma separated
+	 * <code>qa.jenkins.controllers</code> property. Each is configured by
+	 * <code>qa.jenkins.controller.&lt;name&gt;.dns</code>,
+	 * <code>.username</code>, <code>.password</code> and
+	 * <code>.maxConcurrentRequests</code>, falling back to the
+	 * single-controller <code>qa.jenkins.*</code> values for everything but
+	 * the URL.
+	 */
+	public static List<ControllerEndpoint> listFromSystemProperties() {
+		ControllerEndpoint defaults = fromSystemProperties();
+		List<ControllerEndpoint> controllers = new ArrayList<ControllerEndpoint>();
+		for (String name : Splitter.on(',').trimResults().omitEmptyStrings()
+				.split(System.getProperty("qa.jenkins.controllers", ""))) {
+			String prefix = "qa.jenkins.controller." + name + ".";
+			String url = System.getProperty(prefix + "dns");
+			if (url == null || url.isEmpty()) {
+				throw new IllegalArgumentException("No " + prefix + "dns given for controller " + name);
+			}
+			controllers.add(new ControllerEndpoint(name, url,
+					System.getProperty(prefix + "username", defaults.getUsername()),
+					System.getProperty(prefix + "password", defaults.getPassword()),
+					Integer.getInteger(prefix + "maxConcurrentRequests", defaults.getMaxConcurrentRequests())));
+		}
+		return controllers;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isNamed() {
+		return !name.isEmpty();
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+}
@@ -0,0 +1,66 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the dashboard as RFC 4180 CSV, one line per job, led by a
+ * Controller column so federated reports stay in one file.
+ */
+public class CsvSink extends ChannelSink {
+	private static final String LINE_END = "\r\n";
+	private String controller;
+	private boolean headerWritten;
+
+	public CsvSink(File file) throws IOException {
+		super(file);
+	}
+
+	public CsvSink(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	@Override
+	public void beginController(ControllerEndpoint controller) throws IOException {
+		this.controller = controllerLabel(controller);
+		if (!headerWritten) {
+			headerWritten = true;
+			writeLine("Controller", DashboardColumns.HEADERS);
+		}
+	}
+
+	@Override
+	public void writeRow(JobStore store, int row) throws IOException {
+		writeLine(controller, DashboardColumns.values(store, row));
+	}
+
+	private void writeLine(String first, String[] values) throws IOException {
+		StringBuilder line = new StringBuilder(128);
+		appendField(line, first);
+		for (String value : values) {
+			line.append(',');
+			appendField(line, value);
+		}
+		write(line.append(LINE_END));
+	}
+
+	static void appendField(StringBuilder line, String value) {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+}
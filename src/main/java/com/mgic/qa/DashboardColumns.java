@@ -0,0 +1,116 @@
+package com.mgic.qa;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * The dashboard columns shared by every {@link ReportSink}, and the
+ * formatting of their values.
+ */
+public final class DashboardColumns {
+	static final int CELLNUM0 = 0, CELLNUM1 = 1, CELLNUM2 = 2, CELLNUM3 = 3, CELLNUM4 = 4, CELLNUM5 = 5, CELLNUM6 = 6,
+			CELLNUM7 = 7, CELLNUM8 = 8, CELLNUM9 = 9, CELLNUM10 = 10, CELLNUM11 = 11, CELLNUM12 = 12;
+	static final int COLUMN_COUNT = 13;
+	static final String[] HEADERS = { "Job", "Total", "Passing", "Failing", "Skipped", "Duration",
+			"Time Since Last Run", "Number Of Builds", "Last Successful Build", "Started", "Ended", "30 Day Metric",
+			"Failure Cause" };
+	private static final int DOUBLE_DIGIT_NUMBERS = 10;
+	private static final int CONVERT_TIME_BY_1000 = 1000, CONVERT_TIME_BY_60 = 60, CONVERT_TIME_BY_24 = 24;
+	private static final String MIN = " min ", HR = " hr ", DAY = " days ";
+
+	private DashboardColumns() {
+	}
+
+	/**
+	 * Formats one dashboard row, indexed by the <code>CELLNUM</code>
+	 * constants. Columns that do not apply to the job are <code>null</code>.
+	 */
+	static String[] values(JobStore store, int row) {
+		String[] values = new String[COLUMN_COUNT];
+		values[CELLNUM0] = store.getName(row);
+		values[CELLNUM1] = String.valueOf(Math.max(store.getTotalTests(row), 0));
+		if (store.hasTestReport(row)) {
+			values[CELLNUM2] = String.valueOf(store.getPassedTests(row));
+			values[CELLNUM3] = String.valueOf(store.getFailedTests(row));
+			values[CELLNUM4] = String.valueOf(store.getSkippedTests(row));
+		}
+		if (store.hasBuilds(row)) {
+			long duration = store.getDuration(row);
+			long lastTime = store.getTimestamp(row);
+			values[CELLNUM5] = duration + "ms";
+			values[CELLNUM6] = checkTimeSinceLastRun(lastTime);
+			values[CELLNUM9] = checkTimeWhenJobRunStarted(lastTime);
+			values[CELLNUM10] = checkTimeWhenJobRunEnded(lastTime, duration);
+		}
+		values[CELLNUM7] = String.valueOf(store.getLastBuildNumber(row));
+		values[CELLNUM8] = String.valueOf(store.getLastSuccessfulBuildNumber(row));
+		values[CELLNUM11] = store.getMetric(row);
+		values[CELLNUM12] = store.getFailureCause(row);
+		return values;
+	}
+	
+	static String checkTimeSinceLastRun(long lastTime) {
+		long passedTime = System.currentTimeMillis() - lastTime;
+		int minutes = (int) ((passedTime / (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60)) % CONVERT_TIME_BY_60);
+		int hours = (int) ((passedTime / (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_60))
+				% CONVERT_TIME_BY_24);
+		int days = (int) ((passedTime
+				/ (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_24)));
+		return days + DAY + hours + HR + minutes + MIN;
+	}
+	
+	static String checkTimeWhenJobRunEnded(long lastTime, long duration) {
+		Calendar calendar2 = Calendar.getInstance();
+		calendar2.setTimeZone(TimeZone.getDefault());
+		calendar2.setTimeInMillis(lastTime + duration);
+		calendar2.get(Calendar.YEAR);
+		StringBuilder strBuildr2 = new StringBuilder();
+		if (calendar2.get(Calendar.HOUR) == 0) {
+			strBuildr2.append("12");
+		} else {
+			strBuildr2.append(calendar2.get(Calendar.HOUR));
+		}
+		strBuildr2.append(":");
+		if (calendar2.get(Calendar.MINUTE) < DOUBLE_DIGIT_NUMBERS) {
+			strBuildr2.append("0");
+			strBuildr2.append(calendar2.get(Calendar.MINUTE));
+		} else {
+			strBuildr2.append(calendar2.get(Calendar.MINUTE));
+		}
+
+		if (calendar2.get(Calendar.AM_PM) == 0) {
+			strBuildr2.append("am");
+		} else {
+			strBuildr2.append("pm");
+		}
+		return calendar2.get(Calendar.MONTH) + 1 + "/" + calendar2.get(Calendar.DAY_OF_MONTH) + "/"
+				+ calendar2.get(Calendar.YEAR) + ", " + strBuildr2.toString();
+	}
+	
+	static String checkTimeWhenJobRunStarted(long lastTime) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeZone(TimeZone.getDefault());
+		calendar.setTimeInMillis(lastTime);
+		calendar.get(Calendar.YEAR);
+		StringBuilder strBuildr = new StringBuilder();
+		if (calendar.get(Calendar.HOUR) == 0) {
+			strBuildr.append("12");
+		} else {
+			strBuildr.append(calendar.get(Calendar.HOUR));
+		}
+		strBuildr.append(":");
+		if (calendar.get(Calendar.MINUTE) < DOUBLE_DIGIT_NUMBERS) {
+			strBuildr.append("0");
+			strBuildr.append(calendar.get(Calendar.MINUTE));
+		} else {
+			strBuildr.append(calendar.get(Calendar.MINUTE));
+		}
+		if (calendar.get(Calendar.AM_PM) == 0) {
+			strBuildr.append("am");
+		} else {
+			strBuildr.append("pm");
+		}
+		return calendar.get(Calendar.MONTH) + 1 + "/" + calendar.get(Calendar.DAY_OF_MONTH) + "/"
+				+ calendar.get(Calendar.YEAR) + ", " + strBuildr.toString();
+	}
+}
@@ -4,27 +4,78 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.Validate;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import com.mgic.qa.MGICFileUtils;;
 
 /**
+ * Column widths are worked out from the longest value written into each
+ * column through {@link #makeCellInRow(int, Row, String)}; measuring with
+ * font metrics is only done when asked for with
+ * {@link #setFontMetricsAutoSize(boolean)}.
+ * 
  * @author Ben Meadows <ben_meadows@mgic.com>
  * @version 1.0 Created Date: 12/05/18
  */
 
 public class ExcelPOI {
 
-    HSSFWorkbook workbook;
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final int WIDTH_UNITS_PER_CHAR = 256, WIDTH_PADDING_CHARS = 2, MAX_COLUMN_WIDTH = 255 * 256;
+    Workbook workbook;
+    private CellStylePool stylePool;
+    private final Set<String> sheetNames = new HashSet<String>();
+    private final Map<Sheet, int[]> columnChars = new IdentityHashMap<Sheet, int[]>();
+    private boolean fontMetricsAutoSize;
     
     public void createExcel() throws IOException {
         InputStream isFile = this.getClass().getResourceAsStream("/reporting.xls");
         workbook = new HSSFWorkbook(isFile);
+        stylePool = new CellStylePool(workbook);
+    }
+    
+    /**
+     * Creates an empty .xlsx workbook that keeps only the last
+     * <code>rowWindow</code> rows of each sheet in memory and flushes older
+     * rows to compressed temp files. Sheets are added with
+     * {@link #createSheet(String)} as they are needed.
+     */
+    public void createStreamingExcel(int rowWindow) {
+        SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(rowWindow);
+        streamingWorkbook.setCompressTempFiles(true);
+        workbook = streamingWorkbook;
+        stylePool = new CellStylePool(workbook);
+    }
+    
+    /**
+     * Sizes columns with AWT font metrics instead of from the tracked string
+     * lengths. Much slower, and a streaming workbook has to remember every
+     * cell of a sheet to do it, so set this before any sheet is created.
+     */
+    public void setFontMetricsAutoSize(boolean fontMetricsAutoSize) {
+        this.fontMetricsAutoSize = fontMetricsAutoSize;
+    }
+    
+    public CellStylePool getStylePool() {
+        return stylePool;
+    }
+    
+    public boolean isStreaming() {
+        return workbook instanceof SXSSFWorkbook;
     }
   
 	public boolean saveToExcel(String filePath)	throws IOException {
@@ -33,22 +84,109 @@ public class ExcelPOI {
 		FileOutputStream out = null;
 		try {			
 			out = new FileOutputStream(new File(filePath));
+			return saveToExcel(out);
+		} finally {
+			MGICFileUtils.close(out);
+		}
+	}
+	
+	/**
+	 * Writes the workbook to <code>out</code>, which is left open, and frees
+	 * any streaming temp files.
+	 */
+	public boolean saveToExcel(OutputStream out) throws IOException {
+		Validate.notNull(out);
+		try {
 			workbook.write(out);
 			return true;
 		} finally {
-			MGICFileUtils.close(out);
+			if (isStreaming()) {
+				((SXSSFWorkbook) workbook).dispose();
+			}
 		}
 	}
     
-    public HSSFWorkbook getWorkbook(){
+    public Workbook getWorkbook(){
         return workbook;
     }
     
-    public HSSFRow makeRowInSheet(int rowNum, HSSFSheet sheet){
+    /**
+     * Adds a sheet named after <code>name</code>, made safe for Excel and
+     * unique within the workbook.
+     */
+    public Sheet createSheet(String name) {
+        String safeName = WorkbookUtil.createSafeSheetName(name);
+        String uniqueName = safeName;
+        for (int suffix = 2; !sheetNames.add(uniqueName.toLowerCase()); suffix++) {
+            String tail = " (" + suffix + ")";
+            uniqueName = safeName.substring(0, Math.min(safeName.length(), MAX_SHEET_NAME_LENGTH - tail.length())) + tail;
+        }
+        Sheet sheet = workbook.createSheet(uniqueName);
+        if (fontMetricsAutoSize && sheet instanceof SXSSFSheet) {
+            ((SXSSFSheet) sheet).trackAllColumnsForAutoSizing();
+        }
+        return sheet;
+    }
+    
+    /**
+     * Sizes the first <code>columns</code> columns of every sheet to fit
+     * their contents: from the longest value written into each column, or
+     * with font metrics if {@link #setFontMetricsAutoSize(boolean)} is on.
+     */
+    public void sizeColumns(int columns) {
+        if (fontMetricsAutoSize) {
+            for (int j = 0; j < workbook.getNumberOfSheets(); j++) {
+                for (int op = 0; op < columns; op++) {
+                    workbook.getSheetAt(j).autoSizeColumn(op, true);
+                }
+            }
+            return;
+        }
+        for (Map.Entry<Sheet, int[]> sheet : columnChars.entrySet()) {
+            int[] chars = sheet.getValue();
+            for (int op = 0; op < Math.min(columns, chars.length); op++) {
+                if (chars[op] > 0) {
+                    sheet.getKey().setColumnWidth(op, columnWidth(chars[op]));
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return the width, in 1/256ths of a character, of a column whose
+     *         longest value has <code>chars</code> characters
+     */
+    static int columnWidth(int chars) {
+        return Math.min((chars + WIDTH_PADDING_CHARS) * WIDTH_UNITS_PER_CHAR, MAX_COLUMN_WIDTH);
+    }
+    
+    public Row makeRowInSheet(int rowNum, Sheet sheet){
         return sheet.createRow(rowNum);
     }
     
-    public HSSFCell makeCellInRow(int cellNum, HSSFRow row){
+    public Cell makeCellInRow(int cellNum, Row row){
         return row.createCell(cellNum);
+    }
+    
+    /**
+     * Creates a cell holding <code>value</code> and remembers its length for
+     * the column's width.
+     */
+    public Cell makeCellInRow(int cellNum, Row row, String value){
+        Cell cell = row.createCell(cellNum);
+        cell.setCellValue(value);
+        if (value != null) {
+            int[] chars = columnChars.get(row.getSheet());
+            if (chars == null || chars.length <= cellNum) {
+                int[] grown = new int[cellNum + 1];
+                if (chars != null) {
+                    System.arraycopy(chars, 0, grown, 0, chars.length);
+                }
+                chars = grown;
+                columnChars.put(row.getSheet(), chars);
+            }
+            chars[cellNum] = Math.max(chars[cellNum], value.length());
+        }
+        return cell;
     }    
 }
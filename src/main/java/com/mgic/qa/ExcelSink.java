@@ -0,0 +1,269 @@
+package com.mgic.qa;
+
+import static com.mgic.qa.DashboardColumns.CELLNUM1;
+import static com.mgic.qa.DashboardColumns.CELLNUM10;
+import static com.mgic.qa.DashboardColumns.CELLNUM11;
+import static com.mgic.qa.DashboardColumns.CELLNUM12;
+import static com.mgic.qa.DashboardColumns.CELLNUM2;
+import static com.mgic.qa.DashboardColumns.CELLNUM3;
+import static com.mgic.qa.DashboardColumns.CELLNUM4;
+import static com.mgic.qa.DashboardColumns.CELLNUM5;
+import static com.mgic.qa.DashboardColumns.CELLNUM6;
+import static com.mgic.qa.DashboardColumns.CELLNUM7;
+import static com.mgic.qa.DashboardColumns.CELLNUM8;
+import static com.mgic.qa.DashboardColumns.CELLNUM9;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.mgic.qa.FlakinessTracker.FlakyTest;
+
+/**
+ * Writes the report as an Excel workbook: a dashboard sheet, the failing
+ * tests of each job, and a "Flaky Tests" sheet when flakiness is tracked.
+ * The .xls template has a sheet per job; the streaming workbook lists every
+ * job in its own block of rows on one "Job Details" sheet, since each SXSSF
+ * sheet holds a temp file open until the workbook is saved. Only this class,
+ * {@link ExcelPOI} and {@link CellStylePool} touch POI, so runs without an
+ * Excel sink never load it.
+ */
+public class ExcelSink implements ReportSink {
+	public static final int DEFAULT_ROW_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+	static final int NUM_COLUMNS_TO_AUTOSIZE = 15;
+	static final String[] FLAKY_TEST_HEADERS = { "Job", "Test", "Flip Rate", "Flips", "Failures", "Runs",
+			"Last Result" };
+	private static final int CLEANUP_OFFSET = 1;
+	private static final int TOTAL_WORKBOOK_PAGES_HARDCODED = 828, TOTAL_LINES_IN_FIRST_SHEET_HARDCODED = 830;
+	private final ExcelPOI excel;
+	private final File file;
+	private final OutputStream out;
+	private Sheet dashboard;
+	private Sheet details;
+	private int detailRows;
+	private String sheetPrefix;
+	private int controllers;
+	private int rowsWritten;
+
+	private ExcelSink(ExcelPOI excel, File file, OutputStream out) {
+		this.excel = excel;
+		this.file = file;
+		this.out = out;
+	}
+
+	/**
+	 * An .xlsx workbook that keeps only <code>rowWindow</code> rows of each
+	 * sheet in memory and can hold any number of controllers.
+	 */
+	public static ExcelSink streaming(File file, int rowWindow) {
+		return new ExcelSink(createStreamingExcel(rowWindow), file, null);
+	}
+
+	/**
+	 * Like {@link #streaming(File, int)}, but writes the workbook to
+	 * <code>out</code> on close, leaving the stream open.
+	 */
+	public static ExcelSink streaming(OutputStream out, int rowWindow) {
+		return new ExcelSink(createStreamingExcel(rowWindow), null, out);
+	}
+
+	private static ExcelPOI createStreamingExcel(int rowWindow) {
+		ExcelPOI excel = new ExcelPOI();
+		excel.setFontMetricsAutoSize(Boolean.getBoolean("qa.jenkins.fontMetricsAutoSize"));
+		excel.createStreamingExcel(rowWindow);
+		return excel;
+	}
+
+	/**
+	 * An .xls workbook filled into the <code>/reporting.xls</code> template,
+	 * which has room for a single controller.
+	 */
+	public static ExcelSink template(File file) throws IOException {
+		ExcelPOI excel = new ExcelPOI();
+		excel.setFontMetricsAutoSize(Boolean.getBoolean("qa.jenkins.fontMetricsAutoSize"));
+		excel.createExcel();
+		return new ExcelSink(excel, file, null);
+	}
+
+	@Override
+	public void beginController(ControllerEndpoint controller) {
+		if (!excel.isStreaming() && controllers > 0) {
+			throw new IllegalStateException("The .xls template only holds one controller; use xlsx");
+		}
+		controllers++;
+		// named controllers get their own dashboard and detail sheets, prefixed with the name
+		sheetPrefix = controller.isNamed() ? controller.getName() + " " : "";
+		dashboard = excel.isStreaming() ? excel.createSheet(sheetPrefix + "Dashboard")
+				: getWorkbook().getSheetAt(0);
+		this.initializeExcelFile(controller.getUrl());
+		if (excel.isStreaming()) {
+			details = excel.createSheet(sheetPrefix + "Job Details");
+			excel.makeCellInRow(0, excel.makeRowInSheet(0, details), "Back to Dashboard")
+					.setCellStyle(getCellStyleForWorkbook());
+			detailRows = 1;
+		}
+	}
+
+	@Override
+	public void writeRow(JobStore store, int row) {
+		rowsWritten++;
+		this.writeToExcel(store, row);
+	}
+
+	@Override
+	public void writeFlakyTests(List<FlakyTest> tests) {
+		Sheet sheet = excel.createSheet(sheetPrefix + "Flaky Tests");
+		Row header = excel.makeRowInSheet(0, sheet);
+		for (int cellNum = 0; cellNum < FLAKY_TEST_HEADERS.length; cellNum++) {
+			excel.makeCellInRow(cellNum, header, FLAKY_TEST_HEADERS[cellNum]).setCellStyle(getCellStyleForWorkbook());
+		}
+		int rowNum = 1;
+		for (FlakyTest test : tests) {
+			Row row = excel.makeRowInSheet(rowNum++, sheet);
+			excel.makeCellInRow(0, row, test.getJobName());
+			excel.makeCellInRow(1, row, test.getCaseName());
+			excel.makeCellInRow(2, row, String.format(Locale.ROOT, "%.0f%%", test.getFlipRate() * 100));
+			excel.makeCellInRow(3, row, String.valueOf(test.getFlips()));
+			excel.makeCellInRow(4, row, String.valueOf(test.getFailures()));
+			excel.makeCellInRow(5, row, String.valueOf(test.getRuns()));
+			excel.makeCellInRow(6, row, test.isLastFailed() ? "FAILED" : "PASSED");
+		}
+	}
+
+	/**
+	 * Trims the unused part of the template, sizes the columns and saves the
+	 * workbook.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.cleanup();
+		if (out != null) {
+			excel.saveToExcel(out);
+		} else {
+			excel.saveToExcel(file.getPath());
+		}
+	}
+
+	private void writeToExcel(JobStore store, int row) {
+		int i = row + 1;
+		Row row1 = excel.makeRowInSheet(i, dashboard);
+		
+		if (excel.isStreaming()) {
+			writeJobDetails(store, row);
+		} else {
+			Sheet sheet = getWorkbook().getSheetAt(i);
+			Row link = excel.makeRowInSheet(0, sheet);
+			Cell cellHome = excel.makeCellInRow(0, link, "Back to Dashboard");
+			cellHome.setCellStyle(getCellStyleForWorkbook());
+			
+			Row origin = excel.makeRowInSheet(1, sheet);
+			List<String> failingCases = store.getFailingCases(row);
+			if (!failingCases.isEmpty()) {
+				excel.makeCellInRow(0, origin, "Failing Tests");
+				writeFailingCases(store, row, sheet, 2);
+			}
+		}
+		
+		// set the Project Name and other high-level build info
+		String[] values = DashboardColumns.values(store, row);
+		for (int cellNum = 0; cellNum < values.length; cellNum++) {
+			if (values[cellNum] != null) {
+				excel.makeCellInRow(cellNum, row1, values[cellNum]);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the job's block to the shared detail sheet: a heading with its
+	 * name, then its failing tests, then a blank row.
+	 */
+	private void writeJobDetails(JobStore store, int row) {
+		// skip a row between blocks
+		detailRows++;
+		Row heading = excel.makeRowInSheet(detailRows++, details);
+		excel.makeCellInRow(0, heading, store.getName(row)).setCellStyle(getCellStyleForWorkbook());
+		if (!store.getFailingCases(row).isEmpty()) {
+			excel.makeCellInRow(1, heading, "Failing Tests");
+			detailRows = writeFailingCases(store, row, details, detailRows);
+		}
+	}
+
+	/**
+	 * @return the row after the last one written
+	 */
+	private int writeFailingCases(JobStore store, int row, Sheet sheet, int firstRow) {
+		int failingRow = firstRow;
+		for (String failingCase : store.getFailingCases(row)) {
+			excel.makeCellInRow(0, excel.makeRowInSheet(failingRow++, sheet), failingCase);
+		}
+		if (store.getOmittedFailingCases(row) > 0) {
+			excel.makeCellInRow(0, excel.makeRowInSheet(failingRow++, sheet),
+					"... and " + store.getOmittedFailingCases(row) + " more");
+		}
+		return failingRow;
+	}
+
+	private void createBasicFrameworkOfExcelFile(Row row0) {
+		excel.makeCellInRow(CELLNUM1, row0, "Total   ");
+		excel.makeCellInRow(CELLNUM2, row0, "Passing   ");
+		excel.makeCellInRow(CELLNUM3, row0, "Failing   ");
+		excel.makeCellInRow(CELLNUM4, row0, "Skipped   ");
+		excel.makeCellInRow(CELLNUM5, row0, "Duration");
+		excel.makeCellInRow(CELLNUM6, row0, "Time Since Last Run");
+		excel.makeCellInRow(CELLNUM7, row0, "Number Of Builds");
+		excel.makeCellInRow(CELLNUM8, row0, "Last Successful Build");
+		excel.makeCellInRow(CELLNUM9, row0, "Started");
+		excel.makeCellInRow(CELLNUM10, row0, "Ended");
+		excel.makeCellInRow(CELLNUM11, row0, "30 Day Metric");
+		excel.makeCellInRow(CELLNUM12, row0, "Failure Cause");
+	}
+	
+	private void initializeExcelFile(String jenkinsUrl) {
+		// setup the main page
+		Row row0 = excel.makeRowInSheet(0, dashboard);
+		Cell cell0 = excel.makeCellInRow(0, row0, "JENKINS REPORTING - " + jenkinsUrl);
+		cell0.setCellStyle(getCellStyleForWorkbook());
+		createBasicFrameworkOfExcelFile(row0);
+	}
+	
+	private Workbook getWorkbook() {
+		return excel.getWorkbook();
+	}
+	
+	public CellStyle getCellStyleForWorkbook() {
+		// one shared style for every heading, however many sheets there are
+		return excel.getStylePool().getStyle(HSSFFont.FONT_ARIAL, true, HorizontalAlignment.CENTER);
+	}
+	
+	void cleanup() {
+		// the streaming workbook has nothing to trim: only the sheets and rows that were written exist
+		if (!excel.isStreaming()) {
+			trimTemplate();
+		}
+		excel.sizeColumns(NUM_COLUMNS_TO_AUTOSIZE);
+	}
+	
+	private void trimTemplate() {
+		Workbook workbook = excel.getWorkbook();
+		for (int i = TOTAL_WORKBOOK_PAGES_HARDCODED; i > rowsWritten; i--) {
+			workbook.removeSheetAt(i);
+		}
+
+		Sheet sheet = workbook.getSheetAt(0);
+		for (int i = rowsWritten + CLEANUP_OFFSET; i < TOTAL_LINES_IN_FIRST_SHEET_HARDCODED; i++) {
+			Row row = sheet.getRow(i);
+			sheet.removeRow(row);
+		}
+	}
+}
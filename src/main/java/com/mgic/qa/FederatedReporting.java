@@ -0,0 +1,203 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reports on several Jenkins controllers at once. Every controller is
+ * harvested concurrently by its own {@link JenkinsReporting}, with its own
+ * request pool and state, and the results are merged into one workbook with a
+ * dashboard and job details sheet per controller.
+ */
+public class FederatedReporting {
+	private final List<JenkinsReporting> reports = new ArrayList<JenkinsReporting>();
+	private Future<Void> mailDelivery;
+
+	public FederatedReporting() throws IOException {
+		this(ControllerEndpoint.listFromSystemProperties());
+	}
+
+	/**
+	 * Harvests every controller and waits for all of them to finish. If any
+	 * controller fails, the others are cancelled and every report already
+	 * started is shut down, so nothing keeps fetching in the background.
+	 *
+	 * @throws IOException
+	 *             if any controller could not be harvested
+	 */
+	public FederatedReporting(List<ControllerEndpoint> controllers) throws IOException {
+		if (controllers.isEmpty()) {
+			throw new IllegalArgumentException("No controllers given in qa.jenkins.controllers");
+		}
+		List<Callable<JenkinsReporting>> harvests = new ArrayList<Callable<JenkinsReporting>>();
+		for (final ControllerEndpoint controller : controllers) {
+			harvests.add(() -> new JenkinsReporting(controller));
+		}
+		reports.addAll(harvestAll(harvests));
+	}
+
+	/**
+	 * Harvests every controller again, keeping each controller's caches in
+	 * memory (see {@link JenkinsReporting#harvest()}), and waits for all of
+	 * them. If any controller fails, the others are shut down as by the
+	 * constructor, and the next refresh starts them over.
+	 *
+	 * @throws IOException
+	 *             if any controller could not be harvested
+	 */
+	public void refresh() throws IOException {
+		List<Callable<JenkinsReporting>> harvests = new ArrayList<Callable<JenkinsReporting>>();
+		for (final JenkinsReporting report : reports) {
+			harvests.add(() -> {
+				report.harvest();
+				return report;
+			});
+		}
+		harvestAll(harvests);
+	}
+
+	/**
+	 * Runs every harvest at once and waits for all of them.
+	 *
+	 * @return each harvest's report, in the order of <code>harvests</code>
+	 */
+	private static List<JenkinsReporting> harvestAll(List<Callable<JenkinsReporting>> harvests) throws IOException {
+		ExecutorService harvesters = Executors.newFixedThreadPool(harvests.size(),
+				new ThreadFactoryBuilder().setNameFormat("jenkins-controller-%d").setDaemon(true).build());
+		final List<JenkinsReporting> started = new ArrayList<JenkinsReporting>();
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		List<Future<JenkinsReporting>> pending = new ArrayList<Future<JenkinsReporting>>();
+		try {
+			for (final Callable<JenkinsReporting> harvest : harvests) {
+				pending.add(harvesters.submit(new Callable<JenkinsReporting>() {
+
+					@Override
+					public JenkinsReporting call() throws Exception {
+						JenkinsReporting report = harvest.call();
+						synchronized (started) {
+							// a report finished after another controller failed is not wanted
+							if (abandoned.get()) {
+								report.shutdown();
+							} else {
+								started.add(report);
+							}
+						}
+						return report;
+					}
+				}));
+			}
+			List<JenkinsReporting> reports = new ArrayList<JenkinsReporting>();
+			for (Future<JenkinsReporting> report : pending) {
+				reports.add(Futures.getChecked(report, IOException.class));
+			}
+			return reports;
+		} catch (IOException | RuntimeException e) {
+			synchronized (started) {
+				abandoned.set(true);
+				for (JenkinsReporting report : started) {
+					report.shutdown();
+				}
+			}
+			for (Future<JenkinsReporting> report : pending) {
+				report.cancel(true);
+			}
+			throw e;
+		} finally {
+			harvesters.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for every controller's rows without writing them anywhere.
+	 */
+	public ReportSnapshot snapshot() throws IOException {
+		List<ControllerEndpoint> controllers = new ArrayList<ControllerEndpoint>();
+		for (JenkinsReporting report : reports) {
+			controllers.add(report.getController());
+		}
+		return new ReportSnapshot(controllers, collectAll(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Drains every controller's pipeline at once, so no controller's requests
+	 * wait for another's rows to be rendered, and waits for all of them. If
+	 * any controller fails, every report is shut down.
+	 *
+	 * @return each controller's rows, in controller order
+	 */
+	private List<JobStore> collectAll() throws IOException {
+		ExecutorService drainers = Executors.newFixedThreadPool(reports.size(),
+				new ThreadFactoryBuilder().setNameFormat("jenkins-drain-%d").setDaemon(true).build());
+		List<Future<JobStore>> pending = new ArrayList<Future<JobStore>>();
+		try {
+			for (final JenkinsReporting report : reports) {
+				pending.add(drainers.submit(report::collect));
+			}
+			List<JobStore> stores = new ArrayList<JobStore>();
+			for (Future<JobStore> store : pending) {
+				stores.add(Futures.getChecked(store, IOException.class));
+			}
+			return stores;
+		} catch (IOException | RuntimeException e) {
+			for (JenkinsReporting report : reports) {
+				report.shutdown();
+			}
+			throw e;
+		} finally {
+			drainers.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return each controller's rolling window as counted by
+	 *         {@link #snapshot()}, in controller order
+	 */
+	List<RollingWindowMetrics> getMetrics() {
+		List<RollingWindowMetrics> metrics = new ArrayList<RollingWindowMetrics>();
+		for (JenkinsReporting report : reports) {
+			metrics.add(report.getMetrics());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Writes every controller, in the order the controllers were given, into
+	 * one set of report sinks; an .xlsx workbook gets a sheet group per
+	 * controller. The .xls template only has room for a single controller.
+	 * Every controller is fetched in full at once before any row is written.
+	 */
+	public void printBuildDetails() throws IOException {
+		collectAll();
+		MGICFileUtils.makeDirectory("./build/JenkinsReporting");
+		ReportSink sink = ReportSinks.open(ReportSinks.configuredFormats(), new File("./build/JenkinsReporting"),
+				"JenkinsReporting");
+		try {
+			for (JenkinsReporting report : reports) {
+				report.writeCollected(sink);
+			}
+		} finally {
+			sink.close();
+		}
+		mailDelivery = ReportMailer.mailConfigured(ReportSinks.files(ReportSinks.configuredFormats(),
+				new File("./build/JenkinsReporting"), "JenkinsReporting"));
+	}
+
+	/**
+	 * @see JenkinsReporting#awaitMailDelivery()
+	 */
+	public void awaitMailDelivery() throws IOException {
+		if (mailDelivery != null) {
+			ReportMailer.await(mailDelivery);
+		}
+	}
+}
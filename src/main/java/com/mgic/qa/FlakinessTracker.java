@@ -0,0 +1,290 @@
+package com.mgic.qa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.mgic.qa.TestReportParser.TestReportSummary;
+
+/**
+ * Remembers, for every test case of every job, whether it passed or failed
+ * in each of the last builds it ran in, and ranks the cases that flip
+ * between the two most often.
+ * <p>
+ * Each case gets an int id the first time it is seen, and its history is one
+ * <code>long</code> bitset (bit 0 is the newest run, a set bit a failure)
+ * plus a run count, held in arrays indexed by id. Ids are looked up in an
+ * open-addressing {@link StringIntMap} per job, and names are interned with
+ * the job store's interner, so a case also listed as failing keeps one copy
+ * of its name. Besides its name, a case costs 17 bytes of arrays and an 8
+ * byte table slot, with compressed references, however many builds the
+ * window spans. Arrays and tables double as they grow, so up to twice that
+ * may be allocated.
+ */
+public class FlakinessTracker {
+	public static final int DEFAULT_WINDOW = 32;
+	public static final int MAX_WINDOW = Long.SIZE;
+	public static final int DEFAULT_RANKED = 200;
+	public static final int DEFAULT_MIN_RUNS = 5;
+	private static final String SEPARATOR = "\t";
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INITIAL_JOBS = 64;
+	private static final int NOT_RECORDED = Integer.MIN_VALUE;
+	private final int window;
+	private final long mask;
+	private final Interner<String> strings;
+	private final StringIntMap jobIds = new StringIntMap(INITIAL_JOBS);
+	private String[] jobNames = new String[INITIAL_JOBS];
+	private int[] lastRecorded = new int[INITIAL_JOBS];
+	private StringIntMap[] caseIds = new StringIntMap[INITIAL_JOBS];
+	private int jobCount;
+	private int[] jobs = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private long[] failures = new long[INITIAL_CAPACITY];
+	private byte[] runs = new byte[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * @param window
+	 *            how many of each case's latest runs are kept, at most
+	 *            {@link #MAX_WINDOW}
+	 */
+	public FlakinessTracker(int window) {
+		this(window, Interners.<String> newStrongInterner());
+	}
+
+	/**
+	 * @param strings
+	 *            interns job and case names, see {@link JobStore#getInterner()}
+	 */
+	public FlakinessTracker(int window, Interner<String> strings) {
+		this.window = Math.max(2, Math.min(window, MAX_WINDOW));
+		this.mask = this.window == MAX_WINDOW ? -1L : (1L << this.window) - 1;
+		this.strings = strings;
+	}
+
+	public static FlakinessTracker load(File file, int window) throws IOException {
+		return load(file, window, Interners.<String> newStrongInterner());
+	}
+
+	public static FlakinessTracker load(File file, int window, Interner<String> strings) throws IOException {
+		FlakinessTracker tracker = new FlakinessTracker(window, strings);
+		if (!file.isFile()) {
+			return tracker;
+		}
+		BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR, -1);
+				if (fields[0].equals("J")) {
+					tracker.lastRecorded[tracker.jobId(fields[1])] = Integer.parseInt(fields[2]);
+				} else {
+					int id = tracker.id(tracker.jobId(fields[1]), fields[2]);
+					tracker.runs[id] = (byte) Math.min(Integer.parseInt(fields[3]), tracker.window);
+					tracker.failures[id] = Long.parseUnsignedLong(fields[4], 16) & tracker.mask;
+				}
+			}
+		} finally {
+			MGICFileUtils.close(reader);
+		}
+		return tracker;
+	}
+
+	public void save(File file) throws IOException {
+		MGICFileUtils.makeDirectory(file.getAbsoluteFile().getParent());
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8);
+		try {
+			for (int job = 0; job < jobCount; job++) {
+				if (lastRecorded[job] != NOT_RECORDED) {
+					writer.write("J" + SEPARATOR + jobNames[job] + SEPARATOR + lastRecorded[job]);
+					writer.newLine();
+				}
+			}
+			for (int id = 0; id < size; id++) {
+				writer.write("T" + SEPARATOR + jobNames[jobs[id]] + SEPARATOR + names[id] + SEPARATOR + runs[id] + SEPARATOR
+						+ Long.toHexString(failures[id]));
+				writer.newLine();
+			}
+		} finally {
+			MGICFileUtils.close(writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Adds the outcome of every case in <code>report</code> as the newest run
+	 * of that case. A build is recorded once; older or repeated builds of the
+	 * job are ignored, as are reports parsed without case results, so the
+	 * builds of a job must be recorded oldest first.
+	 *
+	 * @return whether the build was recorded
+	 */
+	public boolean record(String jobName, int buildNumber, TestReportSummary report) {
+		if (!report.hasCaseResults()) {
+			return false;
+		}
+		int job = jobId(jobName);
+		if (buildNumber <= lastRecorded[job]) {
+			return false;
+		}
+		lastRecorded[job] = buildNumber;
+		List<String> cases = report.getCaseNames();
+		for (int i = 0; i < cases.size(); i++) {
+			int id = id(job, cases.get(i));
+			failures[id] = (failures[id] << 1 | (report.isCaseFailed(i) ? 1 : 0)) & mask;
+			if (runs[id] < window) {
+				runs[id]++;
+			}
+		}
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return up to <code>limit</code> cases that changed outcome at least once
+	 *         in their last <code>minRuns</code> or more runs, highest flip
+	 *         rate first
+	 */
+	public List<FlakyTest> rank(int limit, int minRuns) {
+		Comparator<FlakyTest> flakiest = Comparator.comparingDouble(FlakyTest::getFlipRate)
+				.thenComparingInt(FlakyTest::getFlips);
+		// keep only the best limit cases, whatever the number of cases tracked
+		PriorityQueue<FlakyTest> top = new PriorityQueue<FlakyTest>(Math.max(limit, 1), flakiest);
+		for (int id = 0; id < size && limit > 0; id++) {
+			int flips = flips(failures[id], runs[id]);
+			if (flips == 0 || runs[id] < minRuns) {
+				continue;
+			}
+			FlakyTest test = new FlakyTest(jobNames[jobs[id]], names[id], runs[id], Long.bitCount(failures[id]), flips,
+					(failures[id] & 1) != 0);
+			if (top.size() < limit) {
+				top.add(test);
+			} else if (flakiest.compare(test, top.peek()) > 0) {
+				top.poll();
+				top.add(test);
+			}
+		}
+		List<FlakyTest> ranked = new ArrayList<FlakyTest>(top);
+		Collections.sort(ranked, flakiest.reversed());
+		return ranked;
+	}
+
+	/**
+	 * @return how many times consecutive runs in <code>history</code> differ
+	 */
+	static int flips(long history, int runs) {
+		if (runs < 2) {
+			return 0;
+		}
+		long adjacent = runs - 1 >= MAX_WINDOW ? -1L : (1L << (runs - 1)) - 1;
+		return Long.bitCount((history ^ (history >>> 1)) & adjacent);
+	}
+
+	private int jobId(String jobName) {
+		int job = jobIds.get(jobName, -1);
+		if (job < 0) {
+			if (jobCount == jobNames.length) {
+				jobNames = Arrays.copyOf(jobNames, jobCount * 2);
+				lastRecorded = Arrays.copyOf(lastRecorded, jobCount * 2);
+				caseIds = Arrays.copyOf(caseIds, jobCount * 2);
+			}
+			job = jobCount++;
+			jobNames[job] = strings.intern(jobName);
+			lastRecorded[job] = NOT_RECORDED;
+			caseIds[job] = new StringIntMap();
+			jobIds.put(jobNames[job], job);
+		}
+		return job;
+	}
+
+	private int id(int job, String caseName) {
+		int id = caseIds[job].get(caseName, -1);
+		if (id < 0) {
+			if (size == names.length) {
+				grow(size * 2);
+			}
+			id = size++;
+			jobs[id] = job;
+			names[id] = strings.intern(caseName);
+			caseIds[job].put(names[id], id);
+		}
+		return id;
+	}
+
+	private void grow(int capacity) {
+		jobs = Arrays.copyOf(jobs, capacity);
+		names = Arrays.copyOf(names, capacity);
+		failures = Arrays.copyOf(failures, capacity);
+		runs = Arrays.copyOf(runs, capacity);
+	}
+
+	/**
+	 * One ranked case.
+	 */
+	public static class FlakyTest {
+		private final String jobName;
+		private final String caseName;
+		private final int runs;
+		private final int failures;
+		private final int flips;
+		private final boolean lastFailed;
+
+		FlakyTest(String jobName, String caseName, int runs, int failures, int flips, boolean lastFailed) {
+			this.jobName = jobName;
+			this.caseName = caseName;
+			this.runs = runs;
+			this.failures = failures;
+			this.flips = flips;
+			this.lastFailed = lastFailed;
+		}
+
+		public String getJobName() {
+			return jobName;
+		}
+
+		public String getCaseName() {
+			return caseName;
+		}
+
+		public int getRuns() {
+			return runs;
+		}
+
+		public int getFailures() {
+			return failures;
+		}
+
+		public int getFlips() {
+			return flips;
+		}
+
+		/**
+		 * @return the share of consecutive runs that changed outcome, from 0
+		 *         to 1
+		 */
+		public double getFlipRate() {
+			return (double) flips / (runs - 1);
+		}
+
+		public boolean isLastFailed() {
+			return lastFailed;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Walks folders, organization folders and multibranch projects below a
+ * Jenkins URL on a fork/join pool. Every folder listing is one paged
+ * <code>tree=</code> request and sibling folders are listed concurrently, so a
+ * deep tree takes roughly as long as its widest level. Jobs are deduplicated
+ * by full name, and the {@link JobFilter} is applied as jobs are discovered:
+ * excluded folders are never listed and excluded jobs never reach a per-job
+ * request.
+ */
+public class FolderCrawler {
+	public static final int DEFAULT_MAX_DEPTH = 10;
+	private static final Set<String> FOLDER_CLASSES = ImmutableSet.of(
+			"com.cloudbees.hudson.plugins.folder.Folder",
+			"jenkins.branch.OrganizationFolder",
+			"org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject");
+	private final BulkJobHarvester harvester;
+	private final JobFilter filter;
+	private final int maxDepth;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param harvester
+	 *            lists the jobs of one folder
+	 * @param filter
+	 *            decides which jobs and folders are reported
+	 * @param maxDepth
+	 *            how many folder levels below the root to descend into
+	 * @param parallelism
+	 *            how many folders may be listed at once
+	 */
+	public FolderCrawler(BulkJobHarvester harvester, JobFilter filter, int maxDepth, int parallelism) {
+		this.harvester = harvester;
+		this.filter = filter;
+		this.maxDepth = maxDepth;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * @return every non-folder job below <code>rootUrl</code>, in listing
+	 *         order with each folder's contents after its own jobs
+	 * @throws IOException
+	 *             if any folder could not be listed
+	 */
+	public List<JobSummary> crawl(String rootUrl) throws IOException {
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		try {
+			return pool.invoke(new FolderTask(rootUrl, 0, false, seen));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	static boolean isFolder(String jobClass) {
+		return jobClass != null && (FOLDER_CLASSES.contains(jobClass) || jobClass.endsWith("Folder")
+				|| jobClass.endsWith("MultiBranchProject"));
+	}
+
+	private class FolderTask extends RecursiveTask<List<JobSummary>> {
+		private static final long serialVersionUID = 1L;
+		private final String url;
+		private final int depth;
+		private final boolean included;
+		private final Set<String> seen;
+
+		FolderTask(String url, int depth, boolean included, Set<String> seen) {
+			this.url = url;
+			this.depth = depth;
+			this.included = included;
+			this.seen = seen;
+		}
+
+		@Override
+		protected List<JobSummary> compute() {
+			List<JobSummary> children;
+			try {
+				children = harvester.harvest(url);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			List<JobSummary> jobs = new ArrayList<JobSummary>();
+			List<FolderTask> folders = new ArrayList<FolderTask>();
+			for (JobSummary child : children) {
+				if (isFolder(child.getJobClass())) {
+					if (depth < maxDepth && !filter.isExcluded(child.getName())) {
+						boolean folderIncluded = included || (filter.hasIncludes() && filter.isIncluded(child.getName()));
+						folders.add(new FolderTask(child.getUrl(), depth + 1, folderIncluded, seen));
+					}
+				} else if (filter.accepts(child.getName(), included) && seen.add(child.getName())) {
+					jobs.add(child);
+				}
+			}
+			for (FolderTask folder : invokeAll(folders)) {
+				jobs.addAll(folder.join());
+			}
+			return jobs;
+		}
+	}
+}
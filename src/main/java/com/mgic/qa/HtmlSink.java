@@ -0,0 +1,100 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the dashboard as a single static HTML page with one table per
+ * controller. Job names link to the job on Jenkins.
+ */
+public class HtmlSink extends ChannelSink {
+	private boolean tableOpen;
+
+	public HtmlSink(File file) throws IOException {
+		super(file);
+		writeHead();
+	}
+
+	public HtmlSink(WritableByteChannel channel) throws IOException {
+		super(channel);
+		writeHead();
+	}
+
+	private void writeHead() throws IOException {
+		write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Jenkins Reporting</title>\n"
+				+ "<style>table{border-collapse:collapse}th,td{border:1px solid #ccc;padding:2px 6px}</style>\n"
+				+ "</head>\n<body>\n");
+	}
+
+	@Override
+	public void beginController(ControllerEndpoint controller) throws IOException {
+		closeTable();
+		StringBuilder head = new StringBuilder(256);
+		head.append("<h2>");
+		appendEscaped(head, "JENKINS REPORTING - " + controller.getUrl());
+		head.append("</h2>\n<table>\n<thead><tr>");
+		for (String header : DashboardColumns.HEADERS) {
+			head.append("<th>");
+			appendEscaped(head, header);
+			head.append("</th>");
+		}
+		write(head.append("</tr></thead>\n<tbody>\n"));
+		tableOpen = true;
+	}
+
+	@Override
+	public void writeRow(JobStore store, int row) throws IOException {
+		String[] values = DashboardColumns.values(store, row);
+		StringBuilder line = new StringBuilder(256);
+		line.append("<tr><td><a href=\"");
+		appendEscaped(line, store.getUrl(row));
+		line.append("\">");
+		appendEscaped(line, values[DashboardColumns.CELLNUM0]);
+		line.append("</a></td>");
+		for (int cellNum = 1; cellNum < values.length; cellNum++) {
+			line.append("<td>");
+			appendEscaped(line, values[cellNum]);
+			line.append("</td>");
+		}
+		write(line.append("</tr>\n"));
+	}
+
+	@Override
+	protected void finish() throws IOException {
+		closeTable();
+		write("</body>\n</html>\n");
+	}
+
+	private void closeTable() throws IOException {
+		if (tableOpen) {
+			write("</tbody>\n</table>\n");
+			tableOpen = false;
+		}
+	}
+
+	static void appendEscaped(StringBuilder html, String value) {
+		if (value == null) {
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				html.append("&amp;");
+				break;
+			case '<':
+				html.append("&lt;");
+				break;
+			case '>':
+				html.append("&gt;");
+				break;
+			case '"':
+				html.append("&quot;");
+				break;
+			default:
+				html.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Lets requests that throw {@link IOException} run inside
+ * <code>CompletableFuture</code> stages, and turns their failures back into
+ * an {@link IOException} once joined.
+ */
+final class JenkinsCalls {
+
+	private JenkinsCalls() {
+	}
+
+	/**
+	 * Runs <code>call</code>, rethrowing an {@link IOException} wrapped in a
+	 * {@link CompletionException}.
+	 */
+	static <T> T call(JenkinsCall<T> call) {
+		try {
+			return call.execute();
+		} catch (IOException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * @return the {@link IOException} a failed stage was completed with, or
+	 *         an {@link IOException} wrapping any other cause
+	 */
+	static IOException unwrap(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+				: failure;
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		return new IOException(cause);
+	}
+
+	/**
+	 * A single request to Jenkins.
+	 */
+	interface JenkinsCall<T> {
+		T execute() throws IOException;
+	}
+}
@@ -1,31 +1,32 @@
 package com.mgic.qa;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.HorizontalAlignment;
-
-import com.google.common.collect.ArrayTable;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Table;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mgic.qa.JobDetailFetcher.JobFetchResult;
+import com.mgic.qa.ReportPipeline.BuildReport;
+import com.mgic.qa.ReportPipeline.FetchedJob;
+import com.mgic.qa.utilities.SharedHttpClient;
 import com.offbytwo.jenkins.JenkinsServer;
+import com.offbytwo.jenkins.client.JenkinsHttpClient;
 import com.offbytwo.jenkins.model.Build;
 import com.offbytwo.jenkins.model.BuildWithDetails;
 import com.offbytwo.jenkins.model.Job;
@@ -38,322 +39,428 @@ import com.offbytwo.jenkins.model.TestResult;
 
 /**
  * Provides methods for gathering statistics from Jenkins instance. Compiles
- * gathered data into Excel file
+ * gathered data into Excel file and the other {@link ReportSink}s named by
+ * <code>qa.jenkins.reportSinks</code>
+ * <p>
+ * All state is held per instance, so several controllers can be harvested at
+ * once by separate instances; see {@link FederatedReporting}.
  * 
  * @author Ben Meadows <ben_meadows@mgic.com>
  * @version 1.0 Created Date: 12/05/18
  */
 public class JenkinsReporting {
-	private static String jenkinsUrl;
-	private static String username;
-	private static String password;
-	private static String excludeJobs;
+	private final ControllerEndpoint controller;
+	private String jenkinsUrl;
+	private String username;
+	private String password;
+	private String includeJobs;
+	private String excludeJobs;
+	private int maxConcurrentRequests;
+	private boolean bulkHarvest;
+	private int harvestPageSize;
+	private String reportSinks;
+	private File cacheDir;
+	private int folderDepth;
+	private int pipelineCapacity;
+	private int historyWindow;
+	private boolean trackFlakiness;
+	private int flakinessWindow;
+	private boolean scanConsoleLogs;
+	private JobFilter artifactFilter;
+	private File artifactDir;
+	private JenkinsHttpClient jenkinsClient;
 	private JenkinsServer jenkins;
 	private Map<String, Job> jobs;
-	private List<Integer> rowsTableForJobsTable;
-	private List<String> columnsTablesForJobsTable;
-	private Table<Integer,String,Object> jobsTable;
-	private ExcelPOI excel;
-	private static final int CELLNUM0 = 0, CELLNUM1 = 1, CELLNUM2 = 2, CELLNUM3 = 3, CELLNUM4 = 4, CELLNUM5 = 5, CELLNUM6 = 6,
-			CELLNUM7 = 7, CELLNUM8 = 8, CELLNUM9 = 9, CELLNUM10 = 10, CELLNUM11 = 11, CELLNUM35 = 35;
-	private static final int NUM_COLUMNS_TO_AUTOSIZE = 15, DOUBLE_DIGIT_NUMBERS = 10, CLEANUP_OFFSET = 1;
+	private JobStore store;
+	private ExecutorService requestPool;
+	private BuildCache buildCache;
+	private RollingWindowMetrics metrics;
+	private FlakinessTracker flakiness;
+	private ConsoleLogScanner logScanner;
+	private ReportPipeline pipeline;
+	private Future<Void> mailDelivery;
+	private Set<String> reported = Collections.emptySet();
+	// weak, so a long-running daemon lets go of the names of removed jobs and cases
+	private final Interner<String> strings = Interners.newWeakInterner();
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
 	private static final Integer NUMBER_OF_BUILDS_FILTER = 20;
-	private static final int TOTAL_WORKBOOK_PAGES_HARDCODED = 828, TOTAL_LINES_IN_FIRST_SHEET_HARDCODED = 830;
-	private static long lastTime = -1, currentTime = -1, passedTime = -1, buildTimestamp = -1;
-	private static final int CONVERT_TIME_BY_1000 = 1000, CONVERT_TIME_BY_60 = 60, CONVERT_TIME_BY_24 = 24;
-	private static int successBuild = -1, seconds = 0, minutes = 0, hours = 0, days = 0;
-	private static final String MIN = " min ", HR = " hr ", DAY = " days ", SECS = " sec";
-	private static long fail = -1, skip = -1, total = -1, pass = -1, duration = -1;
-	String hourMinSec = null;
 	
 	public JenkinsReporting() throws Exception {
+		this(ControllerEndpoint.fromSystemProperties());
+	}
+	
+	/**
+	 * Lists the jobs of a single controller and starts fetching their build
+	 * history and test reports in the background, using at most its own
+	 * <code>maxConcurrentRequests</code> requests at a time. Rows are written
+	 * by {@link #printBuildDetails()} as the fetches finish.
+	 */
+	public JenkinsReporting(ControllerEndpoint controller) throws Exception {
+		this.controller = controller;
 		this.getConfigurationProperties();
 		this.establishJenkinsConnection();
-		this.getJenkinsJobs();
-		this.createJobsTable();
-		this.populateJobsTable();
+		this.loadCaches();
+		this.harvest();
+	}
+	
+	/**
+	 * Lists the jobs again and starts fetching what changed since the last
+	 * harvest, keeping the build cache, rolling window, flakiness history and
+	 * console log positions in memory rather than reading them back from
+	 * disk. Jobs whose last build is the one already reported keep their row's
+	 * test report and cost no test report request. The rows of the previous
+	 * harvest are left as they were, for readers still holding them.
+	 */
+	void harvest() throws IOException {
+		requestPool = Executors.newFixedThreadPool(maxConcurrentRequests, new ThreadFactoryBuilder()
+				.setNameFormat(controller.isNamed() ? "jenkins-" + controller.getName() + "-%d" : "jenkins-request-%d")
+				.setDaemon(true).build());
+		try {
+			List<JobSummary> summaries = this.harvestJenkinsJobs();
+			if (!bulkHarvest) {
+				this.getJenkinsJobs(summaries);
+				summaries = this.fetchJenkinsJobDetails();
+			}
+			this.populateJobStore(summaries);
+			this.startPipeline(summaries);
+		} catch (Exception e) {
+			requestPool.shutdownNow();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Reads the state kept between runs from <code>qa.jenkins.cacheDir</code>.
+	 */
+	private void loadCaches() throws IOException {
+		buildCache = BuildCache.load(new File(cacheDir, "builds.tsv"), historyWindow,
+				RollingWindowMetrics.WINDOW_DAYS);
+		metrics = RollingWindowMetrics.load(new File(cacheDir, "rolling-window.tsv"),
+				RollingWindowMetrics.epochDay(System.currentTimeMillis()));
+		if (trackFlakiness) {
+			flakiness = FlakinessTracker.load(new File(cacheDir, "flakiness.tsv"), flakinessWindow, strings);
+		}
+		if (scanConsoleLogs) {
+			logScanner = ConsoleLogScanner.load(new File(cacheDir, "console-logs.tsv"),
+					SignatureMatcher.fromSystemProperties(), username, password);
+		}
 	}
 	
 	private void establishJenkinsConnection() throws URISyntaxException, UnsupportedEncodingException {
 		//System.out.println("URL" + jenkinsUrl);
-		jenkins = new JenkinsServer(new URI(jenkinsUrl), username, password);
+		// share the pooled keep-alive client with APIUtilities; auth is added preemptively by SharedHttpClient
+		SharedHttpClient.registerCredentials(jenkinsUrl, username, password);
+		jenkinsClient = new JenkinsHttpClient(new URI(jenkinsUrl), SharedHttpClient.getClient());
+		jenkins = new JenkinsServer(jenkinsClient);
 	}
 	
 	private void getConfigurationProperties() {
-		jenkinsUrl = System.getProperty("qa.jenkins.dns", "");
+		jenkinsUrl = controller.getUrl();
 		System.out.println(jenkinsUrl);
-		username = System.getProperty("qa.jenkins.username", "");
-		password = System.getProperty("qa.jenkins.password", "");
-		excludeJobs = System.getProperty("qa.jenkins.excludeJobs", "");		
+		username = controller.getUsername();
+		password = controller.getPassword();
+		includeJobs = System.getProperty("qa.jenkins.includeJobs", "");
+		excludeJobs = System.getProperty("qa.jenkins.excludeJobs", "JenkinsReporting");		
+		maxConcurrentRequests = controller.getMaxConcurrentRequests();
+		bulkHarvest = Boolean.parseBoolean(System.getProperty("qa.jenkins.bulkHarvest", "true"));
+		harvestPageSize = Integer.getInteger("qa.jenkins.harvestPageSize", BulkJobHarvester.DEFAULT_PAGE_SIZE);
+		reportSinks = ReportSinks.configuredFormats();
+		cacheDir = new File(System.getProperty("qa.jenkins.cacheDir", "./build/JenkinsReporting/cache"));
+		if (controller.isNamed()) {
+			// job names repeat across controllers, so each keeps its own caches
+			cacheDir = new File(cacheDir, controller.getName());
+		}
+		folderDepth = Integer.getInteger("qa.jenkins.folderDepth", FolderCrawler.DEFAULT_MAX_DEPTH);
+		pipelineCapacity = Integer.getInteger("qa.jenkins.pipelineCapacity", ReportPipeline.DEFAULT_CAPACITY);
+		historyWindow = Integer.getInteger("qa.jenkins.historyWindow", NUMBER_OF_BUILDS_FILTER);
+		trackFlakiness = Boolean.getBoolean("qa.jenkins.flakiness");
+		flakinessWindow = Integer.getInteger("qa.jenkins.flakinessWindow", FlakinessTracker.DEFAULT_WINDOW);
+		scanConsoleLogs = Boolean.getBoolean("qa.jenkins.consoleScan");
+		String artifacts = System.getProperty("qa.jenkins.artifacts", "");
+		artifactFilter = artifacts.trim().isEmpty() ? null : JobFilter.compile(artifacts, "");
+		artifactDir = new File(System.getProperty("qa.jenkins.artifactDir", "./build/JenkinsReporting/artifacts"));
+		if (controller.isNamed()) {
+			artifactDir = new File(artifactDir, controller.getName());
+		}
 	}
 	
-	private void getJenkinsJobs(){
-		try {
-			jobs = jenkins.getJobs();
-		} catch (IOException e) {
+	/**
+	 * Turns the crawled jobs into jenkins-client jobs, keyed by full name, for
+	 * the per-job detail fetch.
+	 */
+	private void getJenkinsJobs(List<JobSummary> summaries){
+		jobs = new LinkedHashMap<String, Job>();
+		for (JobSummary summary : summaries) {
+			Job job = new Job(summary.getName(), summary.getUrl());
+			job.setClient(jenkinsClient);
+			jobs.put(summary.getName(), job);
+		}
+		if (jobs.isEmpty()) {
 			System.out.println("No Jobs To Report On");
 		}
 	}
 	
-	private void populateJobsTable() throws IOException {
-		int tableKey = 1;
-		for (Map.Entry<String, Job> job : jobs.entrySet()) {
-			if(!job.getValue().getName().toString().equals("JenkinsReporting")) {
-			JobWithDetails details = jenkins.getJob(job.getKey());
-			jobsTable.put(tableKey, "Job Name", job.getValue().getName());
-			jobsTable.put(tableKey, "Job Details", details);
-			jobsTable.put(tableKey, "Number Of Builds", details.getLastBuild().getNumber());
-			jobsTable.put(tableKey, "Builds", details.getAllBuilds());
-			duration = details.getLastBuild().details().getDuration();
-			jobsTable.put(tableKey, "Duration Of Last Run", duration + "ms");
-			lastTime = details.getLastBuild().details().getTimestamp();
-			jobsTable.put(tableKey, "Time Since Last Run", this.checkTimeSinceLastRun());
-			jobsTable.put(tableKey, "Time When Job Started", this.checkTimeWhenJobRunStarted());
-			jobsTable.put(tableKey, "Time When Job Ended", this.checkTimeWhenJobRunEnded());
-			try {
-			jobsTable.put(tableKey, "Total Number Of Tests", details.getLastBuild().getTestReport().getTotalCount());
-			}catch(Exception e) {
-				//DO Nothing
-			}
-			tableKey++;
-			}
+	/**
+	 * Lists every job on the controller, descending into folders and
+	 * multibranch projects up to <code>qa.jenkins.folderDepth</code> levels.
+	 * Jobs excluded by <code>qa.jenkins.includeJobs</code> and
+	 * <code>qa.jenkins.excludeJobs</code> are dropped here, before any per-job
+	 * request.
+	 */
+	private List<JobSummary> harvestJenkinsJobs() throws IOException {
+		FolderCrawler crawler = new FolderCrawler(new BulkJobHarvester(username, password, harvestPageSize),
+				JobFilter.compile(includeJobs, excludeJobs), folderDepth, maxConcurrentRequests);
+		try {
+			return crawler.crawl(jenkinsUrl);
+		} finally {
+			crawler.shutdown();
 		}
 	}
 	
-	private String checkTimeSinceLastRun() {
-		currentTime = System.currentTimeMillis();
-		passedTime = currentTime - lastTime;
-		minutes = (int) ((passedTime / (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60)) % CONVERT_TIME_BY_60);
-		hours = (int) ((passedTime / (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_60))
-				% CONVERT_TIME_BY_24);
-		days = (int) ((passedTime
-				/ (CONVERT_TIME_BY_1000 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_60 * CONVERT_TIME_BY_24)));
-		return days + DAY + hours + HR + minutes + MIN;
+	private List<JobSummary> fetchJenkinsJobDetails() throws IOException {
+		List<Job> jobsToFetch = new ArrayList<Job>(jobs.values());
+		List<JobSummary> summaries = new ArrayList<JobSummary>();
+		for (JobFetchResult result : new JobDetailFetcher(requestPool).fetchAll(jobsToFetch)) {
+			JobWithDetails details = result.getDetails();
+			BuildWithDetails lastBuild = result.getLastBuildDetails();
+			JobSummary summary = new JobSummary();
+			summary.setName(result.getJobName());
+			summary.setUrl(details.getUrl());
+			summary.setLastBuildNumber(details.getLastBuild().getNumber());
+			summary.setLastSuccessfulBuildNumber(details.getLastSuccessfulBuild().getNumber());
+			summary.setLastBuildDuration(lastBuild.getDuration());
+			summary.setLastBuildTimestamp(lastBuild.getTimestamp());
+			summary.setBuilding(lastBuild.isBuilding());
+			if (lastBuild.getResult() != null) {
+				summary.setLastBuildResult(lastBuild.getResult().name());
+			}
+			summaries.add(summary);
+		}
+		return summaries;
 	}
 	
-	private String checkTimeWhenJobRunEnded() {
-		Calendar calendar2 = Calendar.getInstance();
-		calendar2.setTimeZone(TimeZone.getDefault());
-		calendar2.setTimeInMillis(lastTime + duration);
-		calendar2.get(Calendar.YEAR);
-		StringBuilder strBuildr2 = new StringBuilder();
-		if (calendar2.get(Calendar.HOUR) == 0) {
-			strBuildr2.append("12");
-		} else {
-			strBuildr2.append(calendar2.get(Calendar.HOUR));
-		}
-		strBuildr2.append(":");
-		if (calendar2.get(Calendar.MINUTE) < DOUBLE_DIGIT_NUMBERS) {
-			strBuildr2.append("0");
-			strBuildr2.append(calendar2.get(Calendar.MINUTE));
-		} else {
-			strBuildr2.append(calendar2.get(Calendar.MINUTE));
+	/**
+	 * Keeps only the projected fields of each job; the summaries and anything
+	 * fetched to build them can be collected once the run moves on. A job
+	 * whose finished last build is the one the previous harvest fetched a
+	 * test report for keeps that row's report.
+	 */
+	private void populateJobStore(List<JobSummary> summaries) {
+		JobStore previous = store;
+		StringIntMap previousRows = new StringIntMap(previous == null ? 0 : previous.size());
+		for (int row = 0; previous != null && row < previous.size(); row++) {
+			previousRows.put(previous.getName(row), row);
 		}
-
-		if (calendar2.get(Calendar.AM_PM) == 0) {
-			strBuildr2.append("am");
-		} else {
-			strBuildr2.append("pm");
+		store = new JobStore(summaries.size(), strings);
+		reported = new HashSet<String>();
+		for (JobSummary summary : summaries) {
+			int row = store.add(summary);
+			int old = previousRows.get(summary.getName(), -1);
+			// a row whose report never arrived is fetched again
+			if (old >= 0 && previous.hasTestReport(old) && summary.getLastBuildResult() != null
+					&& previous.getLastBuildNumber(old) == summary.getLastBuildNumber()
+					&& summary.getLastBuildResult().equals(previous.getResult(old))) {
+				store.copyReport(row, previous, old);
+				reported.add(summary.getName());
+			}
 		}
-		return calendar2.get(Calendar.MONTH) + 1 + "/" + calendar2.get(Calendar.DAY_OF_MONTH) + "/"
-				+ calendar2.get(Calendar.YEAR) + ", " + strBuildr2.toString();
 	}
 	
-	private String checkTimeWhenJobRunStarted() {
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTimeZone(TimeZone.getDefault());
-		calendar.setTimeInMillis(lastTime);
-		calendar.get(Calendar.YEAR);
-		StringBuilder strBuildr = new StringBuilder();
-		if (calendar.get(Calendar.HOUR) == 0) {
-			strBuildr.append("12");
-		} else {
-			strBuildr.append(calendar.get(Calendar.HOUR));
-		}
-		strBuildr.append(":");
-		if (calendar.get(Calendar.MINUTE) < DOUBLE_DIGIT_NUMBERS) {
-			strBuildr.append("0");
-			strBuildr.append(calendar.get(Calendar.MINUTE));
-		} else {
-			strBuildr.append(calendar.get(Calendar.MINUTE));
+	/**
+	 * Starts fetching, in row order and at most
+	 * <code>qa.jenkins.pipelineCapacity</code> jobs ahead of the writer, only
+	 * the builds newer than what the local build cache already holds and the
+	 * last build's test report. Bulk harvested jobs that show no test results
+	 * get no test report request at all. With <code>qa.jenkins.flakiness</code>
+	 * the reports of the other new builds, up to the flakiness window, are
+	 * fetched too.
+	 */
+	private void startPipeline(List<JobSummary> summaries) {
+		pipeline = new ReportPipeline(new BuildHistoryFetcher(username, password, historyWindow,
+				RollingWindowMetrics.WINDOW_DAYS), new TestReportFetcher(username, password, trackFlakiness),
+				requestPool, bulkHarvest, pipelineCapacity);
+		if (logScanner != null) {
+			pipeline.setLogScanner(logScanner);
 		}
-		if (calendar.get(Calendar.AM_PM) == 0) {
-			strBuildr.append("am");
-		} else {
-			strBuildr.append("pm");
+		final Set<String> alreadyReported = reported;
+		pipeline.setReported(job -> alreadyReported.contains(job.getName()));
+		if (trackFlakiness) {
+			pipeline.setBuildReportWindow(Math.min(flakinessWindow, FlakinessTracker.MAX_WINDOW));
 		}
-		return calendar.get(Calendar.MONTH) + 1 + "/" + calendar.get(Calendar.DAY_OF_MONTH) + "/"
-				+ calendar.get(Calendar.YEAR) + ", " + strBuildr.toString();
+		pipeline.start(summaries, buildCache);
 	}
 	
-	private void buildRowsTableForJobsTable() {
-		int tableSeed = 1;
-		rowsTableForJobsTable = new ArrayList<Integer>();
-		for (Map.Entry<String, Job> job : jobs.entrySet()) {
-			//Do nothing with the Job Object for now; rewrite later
-			if(!job.getValue().getName().toString().equals("JenkinsReporting")) {
-			rowsTableForJobsTable.add(tableSeed);
-			tableSeed++;
+	/**
+	 * Merges a job's new builds into the build cache, rolls them into the 30
+	 * day metric and fills the Passing, Failing and Skipped columns from its
+	 * test report. Every new build's report is recorded for flakiness, oldest
+	 * first.
+	 */
+	private void updateRow(int row, FetchedJob fetched) {
+		String name = store.getName(row);
+		buildCache.merge(name, fetched.getNewBuilds());
+		metrics.update(name, buildCache);
+		store.setMetric(row, metrics.describe(name));
+		if (flakiness != null) {
+			// oldest first: the tracker ignores builds older than one it has recorded
+			for (BuildReport earlier : fetched.getEarlierReports()) {
+				flakiness.record(name, earlier.getNumber(), earlier.getTestReport());
 			}
 		}
+		if (fetched.getTestReport() != null) {
+			store.setTestReport(row, fetched.getTestReport());
+			if (flakiness != null) {
+				flakiness.record(name, store.getLastBuildNumber(row), fetched.getTestReport());
+			}
+		}
+		store.setFailureCause(row, fetched.getFailureCause());
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void printBuildDetails() throws IOException {
-		excel = new ExcelPOI();
-		excel.createExcel();
-		this.initializeExcelFile();
-		Set<Integer> rowKeys = jobsTable.rowKeySet();
-		for (Integer integer : rowKeys) {
-			this.writeToExcel(integer);
-			System.out.println("Job: " + jobsTable.get(integer, "Job Name"));
-			JobWithDetails jobDetails = (JobWithDetails) jobsTable.get(integer, "Job Details");
-			System.out.println("Last Build Number: " + jobDetails.getLastBuild().getNumber());
-			for (Build build : (List<Build>) jobsTable.get(integer, "Builds")) {
-				try {
-/*					TestReport testReportResult = build.getTestReport();
-					List<TestChildReport> childReports = testReportResult.getChildReports();
-					for (TestChildReport testChildReport : childReports) {;
-						TestResult childTestResult = testChildReport.getResult();
-						System.out.println("Build: " + build.details().getDisplayName());
-						System.out.println("Total: " + testReportResult.getTotalCount() 
-						+ " Failed: " + childTestResult.getFailCount()
-						+ " Skipped: " + childTestResult.getSkipCount()
-						+ " Duration: " + childTestResult.getDuration());
-					
-					}*/
-					
-				} catch (Exception e) {
-					//DO Nothing
-				}
-			}
-		}
-		this.cleanup();
 		MGICFileUtils.makeDirectory("./build/JenkinsReporting");
-		excel.saveToExcel("./build/JenkinsReporting/JenkinsReporting.xls");
+		ReportSink sink = ReportSinks.open(reportSinks, new File("./build/JenkinsReporting"), "JenkinsReporting");
+		try {
+			this.writeReport(sink);
+		} finally {
+			sink.close();
+		}
+		// delivered in the background; see awaitMailDelivery()
+		mailDelivery = ReportMailer.mailConfigured(
+				ReportSinks.files(reportSinks, new File("./build/JenkinsReporting"), "JenkinsReporting"));
 	}
 	
-	private void createJobsTable() {
-		this.buildRowsTableForJobsTable();
-		columnsTablesForJobsTable = Lists.newArrayList("Job Name",
-				"Job Details",
-				"Number Of Builds", 
-				"Builds",
-				"Duration Of Last Run",
-				"Time Since Last Run",
-				"Time When Job Started",
-				"Time When Job Ended",
-				"Total Number Of Tests");
-		jobsTable = ArrayTable.create(rowsTableForJobsTable,columnsTablesForJobsTable);
+	/**
+	 * Waits until the report written by {@link #printBuildDetails()} has been
+	 * mailed to every team in <code>qa.jenkins.mail.teams</code>.
+	 *
+	 * @throws IOException
+	 *             if it could not be mailed to some team
+	 */
+	public void awaitMailDelivery() throws IOException {
+		if (mailDelivery != null) {
+			ReportMailer.await(mailDelivery);
+		}
 	}
 	
-	private void writeToExcel(Integer i) {
-		HSSFRow row1 = excel.makeRowInSheet(i, getWorkbook().getSheetAt(0));
-
-		// set the Project Name
-		HSSFCell cell1 = excel.makeCellInRow(CELLNUM0, row1);
-		cell1.setCellValue(jobsTable.get(i, "Job Name").toString());
-		
-		HSSFSheet sheet = getWorkbook().getSheetAt(i);
-		HSSFRow link = excel.makeRowInSheet(0, sheet);
-		HSSFCell cellHome = excel.makeCellInRow(0, link);
-		cellHome.setCellValue("Back to Dashboard");
-		cellHome.setCellStyle(getCellStyleForWorkbook());
-		
-		HSSFRow origin = excel.makeRowInSheet(1, sheet);
-		
-		//set other high-level build info
-		HSSFCell cell2 = excel.makeCellInRow(CELLNUM1, row1);
-		try {
-		cell2.setCellValue(jobsTable.get(i, "Total Number Of Tests").toString());
-		}catch(Exception e) {
-			cell2.setCellValue("0");
+	/**
+	 * Writes this controller's rows into <code>sink</code> as each job's
+	 * requests finish.
+	 */
+	private void writeReport(ReportSink sink) throws IOException {
+		sink.beginController(controller);
+		this.drainPipeline(sink);
+		this.writeFlakyTests(sink);
+	}
+	
+	/**
+	 * Writes the rows finished by {@link #collect()} into <code>sink</code>,
+	 * which may already hold other controllers' rows.
+	 */
+	void writeCollected(ReportSink sink) throws IOException {
+		sink.beginController(controller);
+		for (int row = 0; row < store.size(); row++) {
+			this.writeRow(sink, row);
+		}
+		this.writeFlakyTests(sink);
+	}
+	
+	private void writeFlakyTests(ReportSink sink) throws IOException {
+		if (flakiness != null) {
+			sink.writeFlakyTests(flakiness.rank(FlakinessTracker.DEFAULT_RANKED, FlakinessTracker.DEFAULT_MIN_RUNS));
 		}
-		
-		HSSFCell cell3 = excel.makeCellInRow(CELLNUM5, row1);
-		cell3.setCellValue(jobsTable.get(i, "Duration Of Last Run").toString());
-		
-		HSSFCell cell4 = excel.makeCellInRow(CELLNUM6, row1);
-		cell4.setCellValue(jobsTable.get(i, "Time Since Last Run").toString());
-		
-		HSSFCell cell5 = excel.makeCellInRow(CELLNUM9, row1);
-		cell5.setCellValue(jobsTable.get(i, "Time When Job Started").toString());
-		
-		HSSFCell cell6 = excel.makeCellInRow(CELLNUM10, row1);
-		cell6.setCellValue(jobsTable.get(i, "Time When Job Ended").toString());	
-		
-		HSSFCell cell7 = excel.makeCellInRow(CELLNUM7, row1);
-		cell7.setCellValue(jobsTable.get(i, "Number Of Builds").toString());
+	}
+	
+	/**
+	 * Waits for every job's requests and returns the finished rows without
+	 * writing them anywhere. The store is not changed afterwards.
+	 */
+	JobStore collect() throws IOException {
+		this.drainPipeline(null);
+		return store;
+	}
 
+	/**
+	 * @return the rolling window every drain counts builds into
+	 */
+	RollingWindowMetrics getMetrics() {
+		return metrics;
 	}
 	
-	private void createBasicFrameworkOfExcelFile(HSSFRow row0) {
-		HSSFCell c10 = excel.makeCellInRow(CELLNUM1, row0);
-		c10.setCellValue("Total   ");
-		HSSFCell c11 = excel.makeCellInRow(CELLNUM2, row0);
-		c11.setCellValue("Passing   ");
-		HSSFCell c12 = excel.makeCellInRow(CELLNUM3, row0);
-		c12.setCellValue("Failing   ");
-		HSSFCell c13 = excel.makeCellInRow(CELLNUM4, row0);
-		c13.setCellValue("Skipped   ");
-		HSSFCell c14 = excel.makeCellInRow(CELLNUM5, row0);
-		c14.setCellValue("Duration");
-		HSSFCell c15 = excel.makeCellInRow(CELLNUM6, row0);
-		c15.setCellValue("Time Since Last Run");
-		HSSFCell c16 = excel.makeCellInRow(CELLNUM7, row0);
-		c16.setCellValue("Number Of Builds");
-		HSSFCell c17 = excel.makeCellInRow(CELLNUM8, row0);
-		c17.setCellValue("Last Successful Build");
-		HSSFCell c18 = excel.makeCellInRow(CELLNUM9, row0);
-		c18.setCellValue("Started");
-		HSSFCell c19 = excel.makeCellInRow(CELLNUM10, row0);
-		c19.setCellValue("Ended");
-		HSSFCell c20 = excel.makeCellInRow(CELLNUM11, row0);
-		c20.setCellValue("30 Day Metric");
+	ControllerEndpoint getController() {
+		return controller;
 	}
 	
-	private void initializeExcelFile() {
-		// setup the main page
-		// //set these initialization in other private method
-		HSSFSheet sheet0 = getWorkbook().getSheetAt(0);
-		HSSFRow row0 = excel.makeRowInSheet(0, sheet0);
-		HSSFCell cell0 = excel.makeCellInRow(0, row0);
-		cell0.setCellValue("JENKINS REPORTING - " + jenkinsUrl);
-		cell0.setCellStyle(getCellStyleForWorkbook());
-		createBasicFrameworkOfExcelFile(row0);
+	private void writeRow(ReportSink sink, int row) throws IOException {
+		sink.writeRow(store, row);
+		System.out.println("Job: " + store.getName(row));
+		System.out.println("Last Build Number: " + store.getLastBuildNumber(row));
+		if (store.hasTestReport(row)) {
+			System.out.println("Total: " + store.getTotalTests(row)
+			+ " Failed: " + store.getFailedTests(row)
+			+ " Skipped: " + store.getSkippedTests(row));
+		}
 	}
 	
-	private HSSFWorkbook getWorkbook() {
-		return excel.getWorkbook();
+	/**
+	 * Abandons a report that will not be written: stops the pipeline's feeder
+	 * and every request still running on this controller's pool.
+	 */
+	void shutdown() {
+		if (pipeline != null) {
+			pipeline.stop();
+		}
+		requestPool.shutdownNow();
 	}
 	
-	public HSSFCellStyle getCellStyleForWorkbook() {
-		HSSFCellStyle cellStyle = getWorkbook().createCellStyle();
-		HSSFFont font = getWorkbook().createFont();
-		font.setBold(true);
-		font.setFontName(HSSFFont.FONT_ARIAL);
-		cellStyle.setFont(font);
-		cellStyle.setAlignment(HorizontalAlignment.CENTER);;
-		return cellStyle;
+	/**
+	 * Downloads the last build's artifacts matching
+	 * <code>qa.jenkins.artifacts</code> of every job into
+	 * <code>qa.jenkins.artifactDir</code>, under the job's name and build
+	 * number. A job whose artifacts cannot be downloaded is reported and
+	 * skipped.
+	 */
+	private void downloadArtifacts() {
+		ArtifactFetcher fetcher = new ArtifactFetcher(username, password, requestPool);
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.hasBuilds(row)) {
+				continue;
+			}
+			String name = store.getName(row);
+			int build = store.getLastBuildNumber(row);
+			try {
+				List<ArtifactFetcher.Artifact> artifacts = fetcher
+						.list(MGICFileUtils.addTrailingSlash(store.getUrl(row)) + build, artifactFilter);
+				fetcher.fetchAll(artifacts, new File(new File(artifactDir, name), String.valueOf(build)));
+			} catch (IOException e) {
+				System.out.println("Could not download the artifacts of " + name + " #" + build + ": " + e);
+			}
+		}
 	}
 	
-	private void cleanup() {
-		HSSFWorkbook workbook = excel.getWorkbook();
-		// autosize columns
-		for (int j = 0; j < TOTAL_WORKBOOK_PAGES_HARDCODED; j++) {
-			for (int op = 0; op < NUM_COLUMNS_TO_AUTOSIZE; op++) {
-				workbook.getSheetAt(j).autoSizeColumn(op, true);
+	private void drainPipeline(final ReportSink sink) throws IOException {
+		metrics.advanceTo(RollingWindowMetrics.epochDay(System.currentTimeMillis()));
+		try {
+			// each row is written as soon as its job's requests finish
+			pipeline.drain((row, fetched) -> {
+				this.updateRow(row, fetched);
+				if (sink != null) {
+					this.writeRow(sink, row);
+				}
+			});
+			if (artifactFilter != null) {
+				this.downloadArtifacts();
 			}
+		} finally {
+			requestPool.shutdownNow();
 		}
-		for (int i = TOTAL_WORKBOOK_PAGES_HARDCODED; i > jobs.size() - 1; i--) {
-			workbook.removeSheetAt(i);
+		buildCache.save();
+		metrics.save(new File(cacheDir, "rolling-window.tsv"));
+		if (flakiness != null) {
+			flakiness.save(new File(cacheDir, "flakiness.tsv"));
 		}
-
-		HSSFSheet sheet = workbook.getSheetAt(0);
-		for (int i = jobs.size() - 1 + CLEANUP_OFFSET; i < TOTAL_LINES_IN_FIRST_SHEET_HARDCODED; i++) {
-			HSSFRow row = sheet.getRow(i);
-			sheet.removeRow(row);
+		if (logScanner != null) {
+			logScanner.save(new File(cacheDir, "console-logs.tsv"));
 		}
 	}
 	
-}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.mgic.qa;
+
+import static com.mgic.qa.JenkinsCalls.call;
+import static com.mgic.qa.JenkinsCalls.unwrap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import com.offbytwo.jenkins.model.BuildWithDetails;
+import com.offbytwo.jenkins.model.Job;
+import com.offbytwo.jenkins.model.JobWithDetails;
+
+/**
+ * Fetches job details and last build details for a list of jobs on the shared
+ * request pool. Every task on the pool is a single HTTP request, so the pool
+ * size caps the number of requests in flight. Results are returned in the same
+ * order as the jobs were given.
+ */
+public class JobDetailFetcher {
+	private final ExecutorService executor;
+
+	public JobDetailFetcher(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Fetches every job concurrently and waits for all of them to finish.
+	 *
+	 * @param jobs
+	 *            the jobs to fetch, in the order rows should be reported
+	 * @return one result per job, in the same order as <code>jobs</code>
+	 * @throws IOException
+	 *             if any request for any job failed
+	 */
+	public List<JobFetchResult> fetchAll(List<Job> jobs) throws IOException {
+		List<CompletableFuture<JobFetchResult>> pending = new ArrayList<CompletableFuture<JobFetchResult>>();
+		for (Job job : jobs) {
+			pending.add(fetch(job));
+		}
+		List<JobFetchResult> results = new ArrayList<JobFetchResult>(pending.size());
+		for (CompletableFuture<JobFetchResult> future : pending) {
+			try {
+				results.add(future.join());
+			} catch (CompletionException e) {
+				throw unwrap(e);
+			}
+		}
+		return results;
+	}
+
+	private CompletableFuture<JobFetchResult> fetch(final Job job) {
+		// details() of the last build is only requested once per job
+		return CompletableFuture.supplyAsync(() -> call(() -> job.details()), executor)
+				.thenApplyAsync(details -> new JobFetchResult(job.getName(), details,
+						call(() -> details.getLastBuild().details())), executor);
+	}
+
+	/**
+	 * Everything fetched for a single job.
+	 */
+	public static class JobFetchResult {
+		private final String jobName;
+		private final JobWithDetails details;
+		private final BuildWithDetails lastBuildDetails;
+
+		JobFetchResult(String jobName, JobWithDetails details, BuildWithDetails lastBuildDetails) {
+			this.jobName = jobName;
+			this.details = details;
+			this.lastBuildDetails = lastBuildDetails;
+		}
+
+		public String getJobName() {
+			return jobName;
+		}
+
+		public JobWithDetails getDetails() {
+			return details;
+		}
+
+		public BuildWithDetails getLastBuildDetails() {
+			return lastBuildDetails;
+		}
+	}
+}
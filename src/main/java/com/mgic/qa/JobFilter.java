@@ -0,0 +1,107 @@
+package com.mgic.qa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+/**
+ * Include/exclude rules for job full names, compiled once into a single
+ * pattern per list. Rules are comma separated and may be
+ * <ul>
+ * <li>a glob, e.g. <code>team/*-nightly</code>, where <code>*</code> and
+ * <code>?</code> stay within one folder level and <code>**</code> crosses
+ * levels,</li>
+ * <li><code>regex:</code> followed by a Java regular expression, or</li>
+ * <li><code>folder:</code> followed by a folder's full name, selecting
+ * everything inside it.</li>
+ * </ul>
+ * A rule that matches a folder applies to everything inside the folder.
+ */
+public class JobFilter {
+	private static final String REGEX = "regex:", FOLDER = "folder:";
+	private final Pattern includes;
+	private final Pattern excludes;
+
+	private JobFilter(Pattern includes, Pattern excludes) {
+		this.includes = includes;
+		this.excludes = excludes;
+	}
+
+	/**
+	 * @param includeRules
+	 *            the rules a job must match to be reported; empty reports
+	 *            every job
+	 * @param excludeRules
+	 *            the rules that drop a job even if it is included
+	 */
+	public static JobFilter compile(String includeRules, String excludeRules) {
+		return new JobFilter(compileRules(includeRules), compileRules(excludeRules));
+	}
+
+	public boolean hasIncludes() {
+		return includes != null;
+	}
+
+	public boolean isExcluded(String fullName) {
+		return excludes != null && excludes.matcher(fullName).matches();
+	}
+
+	public boolean isIncluded(String fullName) {
+		return includes == null || includes.matcher(fullName).matches();
+	}
+
+	/**
+	 * @param fullName
+	 *            the job's full name
+	 * @param folderIncluded
+	 *            whether an enclosing folder already matched an include rule
+	 */
+	public boolean accepts(String fullName, boolean folderIncluded) {
+		return !isExcluded(fullName) && (folderIncluded || isIncluded(fullName));
+	}
+
+	private static Pattern compileRules(String rules) {
+		List<String> alternatives = new ArrayList<String>();
+		for (String rule : Splitter.on(',').trimResults().omitEmptyStrings().split(rules == null ? "" : rules)) {
+			if (rule.startsWith(REGEX)) {
+				alternatives.add("(?:" + rule.substring(REGEX.length()) + ")");
+			} else if (rule.startsWith(FOLDER)) {
+				alternatives.add(Pattern.quote(rule.substring(FOLDER.length())));
+			} else {
+				alternatives.add(globToRegex(rule));
+			}
+		}
+		return alternatives.isEmpty() ? null : Pattern.compile(Joiner.on('|').join(alternatives));
+	}
+
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c != '*' && c != '?') {
+				literal.append(c);
+				continue;
+			}
+			if (literal.length() > 0) {
+				regex.append(Pattern.quote(literal.toString()));
+				literal.setLength(0);
+			}
+			if (c == '?') {
+				regex.append("[^/]");
+			} else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+				regex.append(".*");
+				i++;
+			} else {
+				regex.append("[^/]*");
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return regex.toString();
+	}
+}
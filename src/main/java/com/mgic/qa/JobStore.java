@@ -0,0 +1,331 @@
+package com.mgic.qa;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.mgic.qa.TestReportParser.TestReportSummary;
+import com.mgic.qa.TestReportParser.TestTotals;
+
+/**
+ * Column-oriented store of the projected fields reported for each job. Numbers
+ * live in primitive arrays and repeated strings are interned, so a row costs a
+ * few hundred bytes no matter how much Jenkins returned for the job.
+ * <p>
+ * Rows are numbered from 0 in the order they were added.
+ */
+public class JobStore {
+	public static final int UNKNOWN = -1;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final String[] NO_CASES = new String[0];
+	private final Interner<String> strings;
+	private int size;
+	private String[] names;
+	private String[] urls;
+	private String[] results;
+	private int[] lastBuildNumbers;
+	private int[] lastSuccessfulBuildNumbers;
+	private long[] durations;
+	private long[] timestamps;
+	private int[] totalTests;
+	private int[] passedTests;
+	private int[] failedTests;
+	private int[] skippedTests;
+	private String[] metrics;
+	private String[] failureCauses;
+	private String[][] failingCases;
+	private int[] omittedFailingCases;
+
+	public JobStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public JobStore(int capacity) {
+		this(capacity, Interners.<String> newStrongInterner());
+	}
+
+	/**
+	 * @param strings
+	 *            interns the store's strings, so stores built one after another
+	 *            can share their names
+	 */
+	JobStore(int capacity, Interner<String> strings) {
+		this.strings = strings;
+		allocate(Math.max(capacity, 1));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the interner this store's strings go through, for other per-run
+	 *         state that holds the same names
+	 */
+	Interner<String> getInterner() {
+		return strings;
+	}
+
+	/**
+	 * Appends a row with the fields of <code>summary</code>.
+	 *
+	 * @return the index of the new row
+	 */
+	public int add(JobSummary summary) {
+		if (size == names.length) {
+			allocate(size * 2);
+		}
+		int row = size++;
+		names[row] = strings.intern(summary.getName());
+		urls[row] = summary.getUrl();
+		results[row] = summary.getLastBuildResult() == null ? null : strings.intern(summary.getLastBuildResult());
+		lastBuildNumbers[row] = summary.getLastBuildNumber();
+		lastSuccessfulBuildNumbers[row] = summary.getLastSuccessfulBuildNumber();
+		durations[row] = summary.getLastBuildDuration();
+		timestamps[row] = summary.getLastBuildTimestamp();
+		totalTests[row] = summary.hasTestResults() ? summary.getTotalCount() : UNKNOWN;
+		passedTests[row] = UNKNOWN;
+		failedTests[row] = UNKNOWN;
+		skippedTests[row] = UNKNOWN;
+		failingCases[row] = NO_CASES;
+		return row;
+	}
+
+	/**
+	 * Copies the counters and failing case names of a parsed test report into
+	 * <code>row</code>. The report itself is not retained.
+	 */
+	public void setTestReport(int row, TestReportSummary report) {
+		TestTotals totals = report.getTotals();
+		totalTests[row] = totals.getTotal();
+		passedTests[row] = totals.getPassed();
+		failedTests[row] = totals.getFailed();
+		skippedTests[row] = totals.getSkipped();
+		List<String> cases = report.getFailingCases();
+		String[] interned = new String[cases.size()];
+		for (int i = 0; i < interned.length; i++) {
+			interned[i] = strings.intern(cases.get(i));
+		}
+		failingCases[row] = interned;
+		omittedFailingCases[row] = report.getOmittedFailingCases();
+	}
+
+	/**
+	 * Copies the test report, failure cause and metric of <code>fromRow</code>
+	 * in <code>from</code>, a previous harvest of the same job whose last
+	 * build has not changed since.
+	 */
+	public void copyReport(int row, JobStore from, int fromRow) {
+		totalTests[row] = from.totalTests[fromRow];
+		passedTests[row] = from.passedTests[fromRow];
+		failedTests[row] = from.failedTests[fromRow];
+		skippedTests[row] = from.skippedTests[fromRow];
+		String[] cases = from.failingCases[fromRow];
+		String[] interned = cases.length == 0 ? NO_CASES : new String[cases.length];
+		for (int i = 0; i < interned.length; i++) {
+			interned[i] = strings.intern(cases[i]);
+		}
+		failingCases[row] = interned;
+		omittedFailingCases[row] = from.omittedFailingCases[fromRow];
+		setFailureCause(row, from.failureCauses[fromRow]);
+		metrics[row] = from.metrics[fromRow];
+	}
+
+	/**
+	 * Sets the counters of <code>row</code> without failing case names, as
+	 * when only a build notification's test summary is known.
+	 */
+	public void setTestCounts(int row, int passed, int failed, int skipped) {
+		totalTests[row] = passed + failed + skipped;
+		passedTests[row] = passed;
+		failedTests[row] = failed;
+		skippedTests[row] = skipped;
+		failingCases[row] = NO_CASES;
+		omittedFailingCases[row] = failed;
+	}
+
+	public void clearTestReport(int row) {
+		totalTests[row] = UNKNOWN;
+		passedTests[row] = UNKNOWN;
+		failedTests[row] = UNKNOWN;
+		skippedTests[row] = UNKNOWN;
+		failingCases[row] = NO_CASES;
+		omittedFailingCases[row] = 0;
+	}
+
+	public void setLastBuild(int row, int number, long timestamp, long duration, String result) {
+		if (number != lastBuildNumbers[row]) {
+			// the cause found in the previous build's log does not apply to this one
+			failureCauses[row] = null;
+		}
+		lastBuildNumbers[row] = number;
+		timestamps[row] = timestamp;
+		durations[row] = duration;
+		results[row] = result == null ? null : strings.intern(result);
+	}
+
+	/**
+	 * Replaces the build fields of <code>row</code> with a fresh summary of the
+	 * same job. The counters of the summary replace the row's test report.
+	 *
+	 * @return whether the last build shown for the job changed
+	 */
+	public boolean update(int row, JobSummary summary) {
+		String result = summary.getLastBuildResult();
+		if (summary.getLastBuildNumber() == lastBuildNumbers[row] && summary.getLastBuildDuration() == durations[row]
+				&& (result == null ? results[row] == null : result.equals(results[row]))) {
+			return false;
+		}
+		setLastBuild(row, summary.getLastBuildNumber(), summary.getLastBuildTimestamp(),
+				summary.getLastBuildDuration(), result);
+		lastSuccessfulBuildNumbers[row] = summary.getLastSuccessfulBuildNumber();
+		if (summary.hasTestResults()) {
+			setTestCounts(row, summary.getTotalCount() - summary.getFailCount() - summary.getSkipCount(),
+					summary.getFailCount(), summary.getSkipCount());
+		} else {
+			clearTestReport(row);
+		}
+		return true;
+	}
+
+	public void setLastSuccessfulBuildNumber(int row, int number) {
+		lastSuccessfulBuildNumbers[row] = number;
+	}
+
+	public void setMetric(int row, String metric) {
+		metrics[row] = metric;
+	}
+
+	/**
+	 * @return the row of the job named <code>name</code>, or -1
+	 */
+	public int indexOf(String name) {
+		for (int row = 0; row < size; row++) {
+			if (names[row].equals(name)) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns an independent copy of every row, so one row can be changed
+	 * while readers keep using this store.
+	 */
+	public JobStore copy() {
+		JobStore copy = new JobStore(1, strings);
+		copy.size = size;
+		copy.names = names.clone();
+		copy.urls = urls.clone();
+		copy.results = results.clone();
+		copy.lastBuildNumbers = lastBuildNumbers.clone();
+		copy.lastSuccessfulBuildNumbers = lastSuccessfulBuildNumbers.clone();
+		copy.durations = durations.clone();
+		copy.timestamps = timestamps.clone();
+		copy.totalTests = totalTests.clone();
+		copy.passedTests = passedTests.clone();
+		copy.failedTests = failedTests.clone();
+		copy.skippedTests = skippedTests.clone();
+		copy.metrics = metrics.clone();
+		copy.failureCauses = failureCauses.clone();
+		copy.failingCases = failingCases.clone();
+		copy.omittedFailingCases = omittedFailingCases.clone();
+		return copy;
+	}
+
+	public String getName(int row) {
+		return names[row];
+	}
+
+	public String getUrl(int row) {
+		return urls[row];
+	}
+
+	public String getResult(int row) {
+		return results[row];
+	}
+
+	public boolean hasBuilds(int row) {
+		return lastBuildNumbers[row] != JobSummary.NO_BUILD;
+	}
+
+	public int getLastBuildNumber(int row) {
+		return lastBuildNumbers[row];
+	}
+
+	public int getLastSuccessfulBuildNumber(int row) {
+		return lastSuccessfulBuildNumbers[row];
+	}
+
+	public long getDuration(int row) {
+		return durations[row];
+	}
+
+	public long getTimestamp(int row) {
+		return timestamps[row];
+	}
+
+	public boolean hasTestReport(int row) {
+		return passedTests[row] != UNKNOWN;
+	}
+
+	public int getTotalTests(int row) {
+		return totalTests[row];
+	}
+
+	public int getPassedTests(int row) {
+		return passedTests[row];
+	}
+
+	public int getFailedTests(int row) {
+		return failedTests[row];
+	}
+
+	public int getSkippedTests(int row) {
+		return skippedTests[row];
+	}
+
+	public String getMetric(int row) {
+		return metrics[row];
+	}
+
+	public void setFailureCause(int row, String failureCause) {
+		failureCauses[row] = failureCause == null ? null : strings.intern(failureCause);
+	}
+
+	/**
+	 * @return the cause found in the last build's console log, or null
+	 */
+	public String getFailureCause(int row) {
+		return failureCauses[row];
+	}
+
+	public List<String> getFailingCases(int row) {
+		return Arrays.asList(failingCases[row]);
+	}
+
+	public int getOmittedFailingCases(int row) {
+		return omittedFailingCases[row];
+	}
+
+	private void allocate(int capacity) {
+		names = names == null ? new String[capacity] : Arrays.copyOf(names, capacity);
+		urls = urls == null ? new String[capacity] : Arrays.copyOf(urls, capacity);
+		results = results == null ? new String[capacity] : Arrays.copyOf(results, capacity);
+		lastBuildNumbers = lastBuildNumbers == null ? new int[capacity] : Arrays.copyOf(lastBuildNumbers, capacity);
+		lastSuccessfulBuildNumbers = lastSuccessfulBuildNumbers == null ? new int[capacity]
+				: Arrays.copyOf(lastSuccessfulBuildNumbers, capacity);
+		durations = durations == null ? new long[capacity] : Arrays.copyOf(durations, capacity);
+		timestamps = timestamps == null ? new long[capacity] : Arrays.copyOf(timestamps, capacity);
+		totalTests = totalTests == null ? new int[capacity] : Arrays.copyOf(totalTests, capacity);
+		passedTests = passedTests == null ? new int[capacity] : Arrays.copyOf(passedTests, capacity);
+		failedTests = failedTests == null ? new int[capacity] : Arrays.copyOf(failedTests, capacity);
+		skippedTests = skippedTests == null ? new int[capacity] : Arrays.copyOf(skippedTests, capacity);
+		metrics = metrics == null ? new String[capacity] : Arrays.copyOf(metrics, capacity);
+		failureCauses = failureCauses == null ? new String[capacity] : Arrays.copyOf(failureCauses, capacity);
+		failingCases = failingCases == null ? new String[capacity][] : Arrays.copyOf(failingCases, capacity);
+		omittedFailingCases = omittedFailingCases == null ? new int[capacity]
+				: Arrays.copyOf(omittedFailingCases, capacity);
+	}
+}
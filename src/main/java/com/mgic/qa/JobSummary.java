@@ -0,0 +1,125 @@
+package com.mgic.qa;
+
+/**
+ * The handful of fields the dashboard needs for a single job, as returned by
+ * one entry of a Jenkins <code>tree=</code> query.
+ */
+public class JobSummary {
+	public static final int NO_BUILD = -1;
+	private String name;
+	private String url;
+	private String jobClass;
+	private int lastBuildNumber = NO_BUILD;
+	private long lastBuildDuration;
+	private long lastBuildTimestamp;
+	private String lastBuildResult;
+	private boolean building;
+	private int lastSuccessfulBuildNumber = NO_BUILD;
+	private int totalCount = -1;
+	private int failCount = -1;
+	private int skipCount = -1;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getJobClass() {
+		return jobClass;
+	}
+
+	public void setJobClass(String jobClass) {
+		this.jobClass = jobClass;
+	}
+
+	public boolean hasBuilds() {
+		return lastBuildNumber != NO_BUILD;
+	}
+
+	public int getLastBuildNumber() {
+		return lastBuildNumber;
+	}
+
+	public void setLastBuildNumber(int lastBuildNumber) {
+		this.lastBuildNumber = lastBuildNumber;
+	}
+
+	public long getLastBuildDuration() {
+		return lastBuildDuration;
+	}
+
+	public void setLastBuildDuration(long lastBuildDuration) {
+		this.lastBuildDuration = lastBuildDuration;
+	}
+
+	public long getLastBuildTimestamp() {
+		return lastBuildTimestamp;
+	}
+
+	public void setLastBuildTimestamp(long lastBuildTimestamp) {
+		this.lastBuildTimestamp = lastBuildTimestamp;
+	}
+
+	public String getLastBuildResult() {
+		return lastBuildResult;
+	}
+
+	public void setLastBuildResult(String lastBuildResult) {
+		this.lastBuildResult = lastBuildResult;
+	}
+
+	public boolean isBuilding() {
+		return building;
+	}
+
+	public void setBuilding(boolean building) {
+		this.building = building;
+	}
+
+	public int getLastSuccessfulBuildNumber() {
+		return lastSuccessfulBuildNumber;
+	}
+
+	public void setLastSuccessfulBuildNumber(int lastSuccessfulBuildNumber) {
+		this.lastSuccessfulBuildNumber = lastSuccessfulBuildNumber;
+	}
+
+	public boolean hasTestResults() {
+		return totalCount >= 0;
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	public void setTotalCount(int totalCount) {
+		this.totalCount = totalCount;
+	}
+
+	public int getFailCount() {
+		return failCount;
+	}
+
+	public void setFailCount(int failCount) {
+		this.failCount = failCount;
+	}
+
+	public int getSkipCount() {
+		return skipCount;
+	}
+
+	public void setSkipCount(int skipCount) {
+		this.skipCount = skipCount;
+	}
+}
@@ -0,0 +1,91 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes one JSON object per job and line. Numbers stay numbers and times
+ * stay epoch milliseconds, so other tools need not parse the formatted
+ * dashboard text; values that do not apply to a job are <code>null</code>.
+ */
+public class JsonLinesSink extends ChannelSink {
+	private String controller;
+
+	public JsonLinesSink(File file) throws IOException {
+		super(file);
+	}
+
+	public JsonLinesSink(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	@Override
+	public void beginController(ControllerEndpoint controller) {
+		this.controller = controllerLabel(controller);
+	}
+
+	@Override
+	public void writeRow(JobStore store, int row) throws IOException {
+		StringBuilder line = new StringBuilder(256);
+		line.append("{\"controller\":");
+		appendString(line, controller);
+		line.append(",\"job\":");
+		appendString(line, store.getName(row));
+		line.append(",\"url\":");
+		appendString(line, store.getUrl(row));
+		boolean hasBuilds = store.hasBuilds(row);
+		line.append(",\"lastBuild\":").append(hasBuilds ? String.valueOf(store.getLastBuildNumber(row)) : "null");
+		line.append(",\"lastSuccessfulBuild\":").append(store.getLastSuccessfulBuildNumber(row) != JobSummary.NO_BUILD
+				? String.valueOf(store.getLastSuccessfulBuildNumber(row)) : "null");
+		line.append(",\"result\":");
+		appendString(line, store.getResult(row));
+		line.append(",\"timestamp\":").append(hasBuilds ? String.valueOf(store.getTimestamp(row)) : "null");
+		line.append(",\"durationMs\":").append(hasBuilds ? String.valueOf(store.getDuration(row)) : "null");
+		boolean hasReport = store.hasTestReport(row);
+		line.append(",\"total\":").append(hasReport ? String.valueOf(store.getTotalTests(row)) : "null");
+		line.append(",\"passing\":").append(hasReport ? String.valueOf(store.getPassedTests(row)) : "null");
+		line.append(",\"failing\":").append(hasReport ? String.valueOf(store.getFailedTests(row)) : "null");
+		line.append(",\"skipped\":").append(hasReport ? String.valueOf(store.getSkippedTests(row)) : "null");
+		line.append(",\"metric\":");
+		appendString(line, store.getMetric(row));
+		line.append(",\"failureCause\":");
+		appendString(line, store.getFailureCause(row));
+		write(line.append("}\n"));
+	}
+
+	static void appendString(StringBuilder line, String value) {
+		if (value == null) {
+			line.append("null");
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					line.append(String.format("\\u%04x", (int) c));
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		line.append('"');
+	}
+}
@@ -12,15 +12,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.imageio.ImageIO;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
+import com.google.common.collect.Iterables;
 import com.sun.mail.util.BASE64DecoderStream;
 
 /**
@@ -35,6 +46,10 @@ public final class MGICFileUtils {
 	// the list file will not be handled
 	private static final String[] EXTENSIONS = new String[] { "txt", "xml", "xls", "xlsx", "doc", "docx", "pdf", "exe",
 			"log", "dat" };
+	private static final long TRANSFER_CHUNK = 1024 * 1024;
+	// a single MappedByteBuffer cannot exceed Integer.MAX_VALUE bytes
+	public static final int MAP_CHUNK_SIZE = 1 << 30;
+	private static final int BASE64_CHUNK = 4 * 1024;
 
 	private MGICFileUtils() {
 	}
@@ -109,7 +124,7 @@ public final class MGICFileUtils {
 	 */
 	public static String readFileInputStreamToBase64String(FileInputStream stream) throws IOException {
 		Validate.notNull(stream);
-		return Base64.encodeBase64String(IOUtils.toByteArray(stream));
+		return readBase64EncodedToString(stream);
 	}
 
 	/**
@@ -141,9 +156,53 @@ public final class MGICFileUtils {
 	 */
 	public static String readBase64DecoderStreamToBase64String(BASE64DecoderStream stream) throws IOException {
 		Validate.notNull(stream);
-		byte[] byteArray = IOUtils.toByteArray(stream);
-		byte[] encodeBase64 = Base64.encodeBase64(byteArray);
-		return new String(encodeBase64, "UTF-8");
+		return readBase64EncodedToString(stream);
+	}
+
+	/**
+	 * 
+	 * Base64 encodes everything left in an InputStream into an OutputStream, a
+	 * fixed size buffer at a time, so the data is never held in memory
+	 * whatever its size. Neither stream is closed.
+	 * <p>
+	 * 
+	 * @param in
+	 *            the raw data
+	 * @param out
+	 *            receives the encoded data, without line breaks
+	 * @return the number of encoded bytes written
+	 * @throws IOException
+	 */
+	public static long encodeBase64(InputStream in, OutputStream out) throws IOException {
+		Validate.notNull(in);
+		Validate.notNull(out);
+		// lineLength 0: one unbroken line, like Base64.encodeBase64String
+		return IOUtils.copyLarge(new Base64InputStream(in, true, 0, null), out);
+	}
+
+	/**
+	 * 
+	 * Decodes Base64 data from an InputStream into an OutputStream, a fixed
+	 * size buffer at a time. Line breaks in the input are ignored. Neither
+	 * stream is closed.
+	 * <p>
+	 * 
+	 * @param in
+	 *            the encoded data
+	 * @param out
+	 *            receives the decoded data
+	 * @return the number of decoded bytes written
+	 * @throws IOException
+	 */
+	public static long decodeBase64(InputStream in, OutputStream out) throws IOException {
+		Validate.notNull(in);
+		Validate.notNull(out);
+		return IOUtils.copyLarge(new Base64InputStream(in, false), out);
+	}
+
+	private static String readBase64EncodedToString(InputStream stream) throws IOException {
+		// only the encoded string is built, not a copy of the raw bytes as well
+		return IOUtils.toString(new Base64InputStream(stream, true, 0, null), "US-ASCII");
 	}
 
 	/**
@@ -241,10 +300,16 @@ public final class MGICFileUtils {
 	public static void writeBase64StringToFile(File file, String data) throws IOException {
 		Validate.notNull(file);
 		Validate.notNull(data);
-		byte[] dearr = Base64.decodeBase64(data);
-		FileOutputStream fos = new FileOutputStream(file);
-		fos.write(dearr);
-		fos.close();
+		// decoded a slice at a time rather than into one array the size of the file
+		OutputStream out = new Base64OutputStream(new FileOutputStream(file), false);
+		try {
+			for (int start = 0; start < data.length(); start += BASE64_CHUNK) {
+				String slice = data.substring(start, Math.min(data.length(), start + BASE64_CHUNK));
+				out.write(slice.getBytes(StandardCharsets.US_ASCII));
+			}
+		} finally {
+			out.close();
+		}
 	}
 
 	/**
@@ -265,6 +330,143 @@ public final class MGICFileUtils {
 		FileUtils.copyFile(file, file2);
 	}
 
+	/**
+	 * 
+	 * Streams everything left in an InputStream into a file, starting at
+	 * <code>position</code> (the bytes before it are kept, anything after it is
+	 * replaced). The data goes from the stream to the file through
+	 * FileChannel.transferFrom, a small buffer at a time, so it is never held
+	 * in memory whatever its size.
+	 * <p>
+	 * The stream is closed afterwards.
+	 * 
+	 * @param stream
+	 *            the data to write, e.g. an HTTP response body
+	 * @param file
+	 *            the file to write to; created if it does not exist
+	 * @param position
+	 *            where in the file to start writing, at most its current
+	 *            length
+	 * @return the length of the file afterwards
+	 * @throws IOException
+	 */
+	public static long transferToFile(InputStream stream, File file, long position) throws IOException {
+		Validate.notNull(stream);
+		Validate.notNull(file);
+		ReadableByteChannel source = Channels.newChannel(stream);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			Validate.isTrue(position >= 0 && position <= channel.size(), "position outside of " + file);
+			channel.truncate(position);
+			// transferFrom returns 0 once a blocking source is exhausted
+			for (long n; (n = channel.transferFrom(source, position, TRANSFER_CHUNK)) > 0;) {
+				position += n;
+			}
+			return position;
+		} finally {
+			close(channel);
+			close(source);
+		}
+	}
+
+	/**
+	 * 
+	 * Maps a file into memory read-only, as consecutive buffers of at most
+	 * MAP_CHUNK_SIZE bytes, so files over 2GB can be mapped too. The pages are
+	 * loaded by the operating system as they are read and do not count against
+	 * the heap. The buffers stay valid after this method returns; the file
+	 * itself is not held open.
+	 * <p>
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @return the buffers covering the file, in order; none for an empty file
+	 * @throws IOException
+	 *             in case the file does not exist or cannot be read
+	 */
+	public static MappedByteBuffer[] mapReadOnly(File file) throws IOException {
+		return mapReadOnly(file, MAP_CHUNK_SIZE);
+	}
+
+	static MappedByteBuffer[] mapReadOnly(File file, int chunkSize) throws IOException {
+		Validate.notNull(file);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			MappedByteBuffer[] buffers = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+			for (int i = 0; i < buffers.length; i++) {
+				long position = (long) i * chunkSize;
+				buffers[i] = channel.map(MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+			}
+			return buffers;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * 
+	 * Iterates over the records of a file separated by
+	 * <code>delimiter</code>, reading it through
+	 * {@link #mapReadOnly(File)}. Each record is a view of the mapped file
+	 * without the delimiter; only a record that straddles two mapped buffers
+	 * is copied. Memory use therefore does not grow with the file.
+	 * <p>
+	 * A delimiter at the very end of the file does not start another record.
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @param delimiter
+	 *            the byte that ends each record, e.g. '\n'
+	 * @return the records, each from its position to its limit
+	 * @throws IOException
+	 *             in case the file does not exist or cannot be read
+	 */
+	public static Iterable<ByteBuffer> iterateRecords(File file, byte delimiter) throws IOException {
+		return iterateRecords(mapReadOnly(file), delimiter);
+	}
+
+	/**
+	 * 
+	 * Iterates over the records separated by <code>delimiter</code> in
+	 * consecutive buffers, e.g. those returned by {@link #mapReadOnly(File)}.
+	 * The buffers' positions are not changed.
+	 * <p>
+	 * 
+	 * @see #iterateRecords(File, byte)
+	 */
+	public static Iterable<ByteBuffer> iterateRecords(final ByteBuffer[] buffers, final byte delimiter) {
+		Validate.notNull(buffers);
+		return new Iterable<ByteBuffer>() {
+
+			@Override
+			public Iterator<ByteBuffer> iterator() {
+				return new RecordIterator(buffers, delimiter);
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * Iterates over the lines of a UTF-8 text file (test output, console
+	 * logs) through {@link #iterateRecords(File, byte)}. Lines end with
+	 * <code>\n</code> or <code>\r\n</code>; only the current line is held
+	 * as a String.
+	 * <p>
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @return the lines, without their line endings
+	 * @throws IOException
+	 *             in case the file does not exist or cannot be read
+	 */
+	public static Iterable<String> iterateLines(File file) throws IOException {
+		return Iterables.transform(iterateRecords(file, (byte) '\n'), record -> {
+			String line = StandardCharsets.UTF_8.decode(record).toString();
+			return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+		});
+	}
+
 	/**
 	 * Converts given string into ByteArrayInputStream.
 	 * 
@@ -274,7 +476,8 @@ public final class MGICFileUtils {
 	 */
 	public static ByteArrayInputStream convertStringToInputStream(String stringToConvert) {
 		Validate.notNull(stringToConvert);
-		return new ByteArrayInputStream(Charset.forName("UTF-8").encode(stringToConvert).array());
+		// the array behind Charset.encode() is larger than the encoded bytes
+		return new ByteArrayInputStream(stringToConvert.getBytes(StandardCharsets.UTF_8));
 	}
 
 	/**
@@ -357,6 +560,83 @@ public final class MGICFileUtils {
 		}
 	}
 
+	/**
+	 * Walks records across consecutive buffers. A record is a slice of its
+	 * buffer, or a copy when it continues into the next one.
+	 */
+	private static final class RecordIterator implements Iterator<ByteBuffer> {
+		private final ByteBuffer[] buffers;
+		private final byte delimiter;
+		private int buffer;
+		private int position;
+		private ByteBuffer next;
+
+		RecordIterator(ByteBuffer[] buffers, byte delimiter) {
+			this.buffers = buffers;
+			this.delimiter = delimiter;
+			this.position = buffers.length > 0 ? buffers[0].position() : 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+
+		@Override
+		public ByteBuffer next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ByteBuffer record = next;
+			next = null;
+			return record;
+		}
+
+		private ByteBuffer advance() {
+			ByteArrayOutputStream straddling = null;
+			while (buffer < buffers.length) {
+				ByteBuffer current = buffers[buffer];
+				int end = position;
+				while (end < current.limit() && current.get(end) != delimiter) {
+					end++;
+				}
+				ByteBuffer piece = slice(current, position, end);
+				if (end < current.limit()) {
+					position = end + 1;
+					if (straddling == null) {
+						return piece;
+					}
+					append(straddling, piece);
+					return ByteBuffer.wrap(straddling.toByteArray());
+				}
+				if (piece.hasRemaining()) {
+					straddling = straddling == null ? new ByteArrayOutputStream() : straddling;
+					append(straddling, piece);
+				}
+				if (++buffer < buffers.length) {
+					position = buffers[buffer].position();
+				}
+			}
+			return straddling != null ? ByteBuffer.wrap(straddling.toByteArray()) : null;
+		}
+
+		private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(end);
+			slice.position(start);
+			return slice.slice();
+		}
+
+		private static void append(ByteArrayOutputStream straddling, ByteBuffer piece) {
+			byte[] bytes = new byte[piece.remaining()];
+			piece.get(bytes);
+			straddling.write(bytes, 0, bytes.length);
+		}
+	}
+
 	public static String addTrailingSlash(String path) {
 		String result;
 		if (path.endsWith("/")) {
@@ -0,0 +1,180 @@
+package com.mgic.qa;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when each job is next worth refreshing. A job's build interval is
+ * learned from the timestamps of the builds it has been seen with, and the
+ * job is checked about twice per interval, so a job that builds every few
+ * minutes is checked every few minutes while a weekly job is checked a few
+ * times a day. Every check that finds no new build doubles the job's delay up
+ * to the maximum.
+ * <p>
+ * Jobs wait in a priority queue ordered by their next deadline.
+ */
+public class RefreshScheduler {
+	public static final long DEFAULT_MIN_DELAY = TimeUnit.MINUTES.toMillis(1);
+	public static final long DEFAULT_MAX_DELAY = TimeUnit.HOURS.toMillis(6);
+	private final long minDelay;
+	private final long maxDelay;
+	private final PriorityQueue<ScheduledJob> queue = new PriorityQueue<ScheduledJob>(64,
+			(a, b) -> Long.compare(a.deadline, b.deadline));
+	private Map<String, ScheduledJob> jobs = new HashMap<String, ScheduledJob>();
+
+	public RefreshScheduler(long minDelay, long maxDelay) {
+		this.minDelay = minDelay;
+		this.maxDelay = Math.max(maxDelay, minDelay);
+	}
+
+	/**
+	 * Schedules every row of <code>snapshot</code>. Jobs that were already
+	 * scheduled keep their learned interval and deadline; new jobs start
+	 * from the time since their last build, and jobs no longer listed are
+	 * dropped.
+	 */
+	public synchronized void schedule(ReportSnapshot snapshot, long now) {
+		Map<String, ScheduledJob> next = new HashMap<String, ScheduledJob>();
+		for (int controller = 0; controller < snapshot.getControllers().size(); controller++) {
+			JobStore store = snapshot.getStore(controller);
+			for (int row = 0; row < store.size(); row++) {
+				String key = controller + "/" + store.getName(row);
+				ScheduledJob job = jobs.get(key);
+				if (job == null) {
+					job = new ScheduledJob(controller, store.getName(row), store.getUrl(row));
+					job.meanInterval = store.hasBuilds(row) ? now - store.getTimestamp(row) : maxDelay;
+					job.delay = clamp(job.meanInterval / 2);
+					job.deadline = now + job.delay;
+				}
+				if (store.getLastBuildNumber(row) > job.lastNumber) {
+					job.lastNumber = store.getLastBuildNumber(row);
+					job.lastTimestamp = store.getTimestamp(row);
+				}
+				next.put(key, job);
+			}
+		}
+		jobs = next;
+		queue.clear();
+		for (ScheduledJob job : jobs.values()) {
+			if (!job.inFlight) {
+				queue.add(job);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Removes and returns the job with the earliest deadline if it is due at
+	 * <code>now</code>. The job is not scheduled again until
+	 * {@link #observed(ScheduledJob, JobSummary, long)} is called for it.
+	 */
+	public synchronized ScheduledJob poll(long now) {
+		ScheduledJob head = queue.peek();
+		if (head == null || head.deadline > now) {
+			return null;
+		}
+		queue.poll();
+		head.inFlight = true;
+		return head;
+	}
+
+	/**
+	 * Waits until a job is due and removes it, as
+	 * {@link #poll(long)} does.
+	 */
+	public synchronized ScheduledJob take() throws InterruptedException {
+		while (true) {
+			long now = System.currentTimeMillis();
+			ScheduledJob due = poll(now);
+			if (due != null) {
+				return due;
+			}
+			ScheduledJob head = queue.peek();
+			wait(head == null ? 0 : head.deadline - now);
+		}
+	}
+
+	/**
+	 * Reschedules <code>job</code> after a refresh. A newer build updates the
+	 * learned interval and resets the backoff, a running build keeps the
+	 * current delay, and anything else doubles the delay.
+	 *
+	 * @param latest
+	 *            what the refresh returned, or null if it failed
+	 */
+	public synchronized void observed(ScheduledJob job, JobSummary latest, long now) {
+		if (latest != null && latest.getLastBuildNumber() > job.lastNumber) {
+			if (job.lastNumber != JobSummary.NO_BUILD && latest.getLastBuildTimestamp() > job.lastTimestamp) {
+				long interval = (latest.getLastBuildTimestamp() - job.lastTimestamp)
+						/ (latest.getLastBuildNumber() - job.lastNumber);
+				// weight the newest interval by a quarter so one odd gap does not swing the schedule
+				job.meanInterval = (job.meanInterval * 3 + interval) / 4;
+			}
+			job.lastNumber = latest.getLastBuildNumber();
+			job.lastTimestamp = latest.getLastBuildTimestamp();
+			job.delay = clamp(job.meanInterval / 2);
+		} else if (latest == null || !latest.isBuilding()) {
+			job.delay = clamp(job.delay * 2);
+		}
+		job.deadline = now + job.delay;
+		job.inFlight = false;
+		if (jobs.get(job.controller + "/" + job.name) == job) {
+			queue.add(job);
+		}
+	}
+
+	public synchronized int size() {
+		return jobs.size();
+	}
+
+	private long clamp(long delay) {
+		return Math.min(Math.max(delay, minDelay), maxDelay);
+	}
+
+	/**
+	 * One job's place in the schedule.
+	 */
+	public static class ScheduledJob {
+		private final int controller;
+		private final String name;
+		private final String url;
+		private int lastNumber = JobSummary.NO_BUILD;
+		private long lastTimestamp;
+		private long meanInterval;
+		private long delay;
+		private long deadline;
+		private boolean inFlight;
+
+		ScheduledJob(int controller, String name, String url) {
+			this.controller = controller;
+			this.name = name;
+			this.url = url;
+		}
+
+		public int getController() {
+			return controller;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public long getDelay() {
+			return delay;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public long getMeanInterval() {
+			return meanInterval;
+		}
+	}
+}
@@ -0,0 +1,459 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mgic.qa.RefreshScheduler.ScheduledJob;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps the report in memory and serves it over HTTP instead of writing a
+ * file per run. The controllers are harvested again every
+ * <code>qa.jenkins.daemon.refreshSeconds</code> in the background, and each
+ * finished harvest is published as a new {@link ReportSnapshot} with one
+ * atomic swap, so requests always read a complete report and never wait for a
+ * refresh.
+ * <p>
+ * Serves <code>/report.xlsx</code>, <code>/report.csv</code>,
+ * <code>/report.jsonl</code> and <code>/report.html</code> (also at
+ * <code>/</code>), plus <code>/status</code>. These need no login, so the
+ * daemon only listens on the loopback interface unless
+ * <code>qa.jenkins.daemon.bindAddress</code> names another.
+ * <p>
+ * Jenkins can also POST Notification plugin events to <code>/notify</code>.
+ * A started or finished build replaces only its own job's row and counts once
+ * in that job's rolling window, and the report is republished within the
+ * request, so the dashboard is seconds behind Jenkins instead of a whole
+ * refresh interval. With <code>qa.jenkins.daemon.notifications</code> set the
+ * full harvest only runs every <code>qa.jenkins.daemon.reconcileSeconds</code>
+ * to pick up new jobs and anything a lost notification missed. Events must
+ * carry <code>?token=</code> matching <code>qa.jenkins.daemon.notifyToken</code>;
+ * with no token configured, only events from the daemon's own host are
+ * accepted.
+ * <p>
+ * With <code>qa.jenkins.daemon.adaptiveRefresh</code> set, jobs are also
+ * refreshed one at a time between harvests, each as often as it builds (see
+ * {@link RefreshScheduler}), and never more than
+ * <code>qa.jenkins.daemon.requestsPerSecond</code> requests a second in
+ * total.
+ */
+public class ReportDaemon {
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_REFRESH_SECONDS = 300;
+	public static final int DEFAULT_HTTP_THREADS = 4;
+	public static final int DEFAULT_RECONCILE_SECONDS = 3600;
+	public static final double DEFAULT_REQUESTS_PER_SECOND = 2.0;
+	private static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+	private final List<ControllerEndpoint> controllers;
+	private final AtomicReference<ReportSnapshot> snapshot = new AtomicReference<ReportSnapshot>(ReportSnapshot.EMPTY);
+	private final AtomicReference<String> lastError = new AtomicReference<String>();
+	private List<RollingWindowMetrics> metrics = Collections.emptyList();
+	private Map<BuildEvent, Integer> replay;
+	private volatile long lastEventAt;
+	private String notifyToken = "";
+	private RefreshScheduler scheduler;
+	private ExecutorService adaptiveRefresher;
+	private ScheduledExecutorService refresher;
+	private ExecutorService httpPool;
+	private HttpServer server;
+	private FederatedReporting federated;
+
+	public ReportDaemon(List<ControllerEndpoint> controllers) {
+		this.controllers = controllers;
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<ControllerEndpoint> controllers = ControllerEndpoint.listFromSystemProperties();
+		if (controllers.isEmpty()) {
+			controllers = Collections.singletonList(ControllerEndpoint.fromSystemProperties());
+		}
+		ReportDaemon daemon = new ReportDaemon(controllers);
+		String bindAddress = System.getProperty("qa.jenkins.daemon.bindAddress", "");
+		daemon.start(bindAddress.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress),
+				Integer.getInteger("qa.jenkins.daemon.port", DEFAULT_PORT));
+		boolean adaptive = Boolean.getBoolean("qa.jenkins.daemon.adaptiveRefresh");
+		if (adaptive) {
+			long minDelay = TimeUnit.SECONDS.toMillis(Integer.getInteger("qa.jenkins.daemon.minRefreshSeconds",
+					(int) TimeUnit.MILLISECONDS.toSeconds(RefreshScheduler.DEFAULT_MIN_DELAY)));
+			long maxDelay = TimeUnit.SECONDS.toMillis(Integer.getInteger("qa.jenkins.daemon.maxRefreshSeconds",
+					(int) TimeUnit.MILLISECONDS.toSeconds(RefreshScheduler.DEFAULT_MAX_DELAY)));
+			double requestsPerSecond = Double.parseDouble(System.getProperty("qa.jenkins.daemon.requestsPerSecond",
+					String.valueOf(DEFAULT_REQUESTS_PER_SECOND)));
+			daemon.startAdaptiveRefresh(new RefreshScheduler(minDelay, maxDelay), requestsPerSecond);
+		}
+		daemon.startRefreshing(adaptive || Boolean.getBoolean("qa.jenkins.daemon.notifications")
+				? Integer.getInteger("qa.jenkins.daemon.reconcileSeconds", DEFAULT_RECONCILE_SECONDS)
+				: Integer.getInteger("qa.jenkins.daemon.refreshSeconds", DEFAULT_REFRESH_SECONDS));
+	}
+
+	/**
+	 * Starts serving the current snapshot on <code>port</code> of the loopback
+	 * interface; 0 picks a free port.
+	 */
+	public void start(int port) throws IOException {
+		start(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * Starts serving the current snapshot on <code>port</code> of
+	 * <code>address</code>; the wildcard address serves every interface.
+	 */
+	public void start(InetAddress address, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/report.xlsx", exchange -> serve(exchange, "xlsx", XLSX));
+		server.createContext("/report.csv", exchange -> serve(exchange, "csv", "text/csv; charset=utf-8"));
+		server.createContext("/report.jsonl", exchange -> serve(exchange, "jsonl", "application/x-ndjson"));
+		server.createContext("/report.html", exchange -> serve(exchange, "html", "text/html; charset=utf-8"));
+		server.createContext("/status", this::serveStatus);
+		server.createContext("/notify", this::receiveNotification);
+		notifyToken = System.getProperty("qa.jenkins.daemon.notifyToken", "");
+		if (notifyToken.isEmpty()) {
+			System.out.println("No qa.jenkins.daemon.notifyToken set, accepting notifications from this host only");
+		}
+		server.createContext("/", exchange -> {
+			if (exchange.getRequestURI().getPath().equals("/")) {
+				serve(exchange, "html", "text/html; charset=utf-8");
+			} else {
+				try {
+					send(exchange, 404, "text/plain; charset=utf-8", "Not found".getBytes(StandardCharsets.UTF_8));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		httpPool = Executors.newFixedThreadPool(Integer.getInteger("qa.jenkins.daemon.httpThreads", DEFAULT_HTTP_THREADS),
+				new ThreadFactoryBuilder().setNameFormat("report-http-%d").setDaemon(true).build());
+		server.setExecutor(httpPool);
+		server.start();
+		System.out.println("Serving Jenkins report on " + server.getAddress());
+	}
+
+	/**
+	 * Refreshes now and then every <code>refreshSeconds</code> after the
+	 * previous refresh finished. A failed refresh keeps the last snapshot.
+	 */
+	public void startRefreshing(int refreshSeconds) {
+		refresher = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("report-refresh-%d").build());
+		refresher.scheduleWithFixedDelay(() -> {
+			try {
+				refresh();
+			} catch (Exception e) {
+				lastError.set(e.toString());
+				System.out.println("Refresh failed, still serving the previous report: " + e);
+			}
+		}, 0, refreshSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Refreshes single jobs as <code>jobScheduler</code> makes them due, on one
+	 * background thread that waits for <code>requestsPerSecond</code> before
+	 * each request. Jobs are scheduled from every published snapshot.
+	 */
+	public void startAdaptiveRefresh(final RefreshScheduler jobScheduler, double requestsPerSecond) {
+		final RateLimiter budget = RateLimiter.create(requestsPerSecond);
+		final List<BulkJobHarvester> harvesters = new ArrayList<BulkJobHarvester>();
+		for (ControllerEndpoint controller : controllers) {
+			harvesters.add(new BulkJobHarvester(controller.getUsername(), controller.getPassword(), 0));
+		}
+		synchronized (this) {
+			scheduler = jobScheduler;
+			if (!snapshot.get().isEmpty()) {
+				scheduler.schedule(snapshot.get(), System.currentTimeMillis());
+			}
+		}
+		adaptiveRefresher = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("report-adaptive-%d").setDaemon(true).build());
+		adaptiveRefresher.execute(() -> {
+			try {
+				while (true) {
+					ScheduledJob job = jobScheduler.take();
+					budget.acquire();
+					JobSummary latest = null;
+					try {
+						latest = harvesters.get(job.getController()).harvestJob(job.getUrl());
+						apply(job.getController(), latest);
+					} catch (IOException e) {
+						System.out.println("Could not refresh " + job.getName() + ": " + e);
+					}
+					jobScheduler.observed(job, latest, System.currentTimeMillis());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	/**
+	 * Harvests every controller and publishes the result. The controllers'
+	 * caches are read from disk by the first refresh only and kept in memory
+	 * after that, so each refresh fetches just what changed.
+	 */
+	public void refresh() throws IOException {
+		synchronized (this) {
+			replay = new LinkedHashMap<BuildEvent, Integer>();
+		}
+		try {
+			if (federated == null) {
+				federated = new FederatedReporting(controllers);
+			} else {
+				federated.refresh();
+			}
+			publish(federated.snapshot(), federated.getMetrics());
+		} finally {
+			synchronized (this) {
+				replay = null;
+			}
+		}
+	}
+
+	void publish(ReportSnapshot next) {
+		publish(next, Collections.<RollingWindowMetrics>emptyList());
+	}
+
+	synchronized void publish(ReportSnapshot next, List<RollingWindowMetrics> nextMetrics) {
+		metrics = nextMetrics;
+		snapshot.set(next);
+		if (scheduler != null) {
+			scheduler.schedule(next, System.currentTimeMillis());
+		}
+		if (replay != null) {
+			// the harvest may have listed a job before a build it was notified of
+			for (Map.Entry<BuildEvent, Integer> event : replay.entrySet()) {
+				applyTo(event.getValue(), event.getKey());
+			}
+		}
+		lastError.set(null);
+	}
+
+	/**
+	 * Updates the row of the job <code>event</code> names and publishes the
+	 * result. Jobs the current snapshot does not list are left to the next
+	 * harvest, so the job filters still apply.
+	 *
+	 * @param controllerName
+	 *            the controller the event came from, or null to match it by
+	 *            the build URL
+	 * @return whether a row changed
+	 */
+	synchronized boolean apply(BuildEvent event, String controllerName) {
+		int controller = controllerFor(event, controllerName);
+		if (controller < 0) {
+			return false;
+		}
+		lastEventAt = System.currentTimeMillis();
+		if (replay != null) {
+			replay.put(event, controller);
+		}
+		return applyTo(controller, event);
+	}
+
+	/**
+	 * Replaces the row of the job <code>latest</code> describes if its last
+	 * build changed, and publishes the result.
+	 *
+	 * @return whether a row changed
+	 */
+	synchronized boolean apply(int controller, JobSummary latest) {
+		ReportSnapshot current = snapshot.get();
+		if (current.isEmpty()) {
+			return false;
+		}
+		JobStore store = current.getStore(controller);
+		int row = store.indexOf(latest.getName());
+		if (row < 0) {
+			return false;
+		}
+		JobStore next = store.copy();
+		if (!next.update(row, latest)) {
+			return false;
+		}
+		RollingWindowMetrics window = controller < metrics.size() ? metrics.get(controller) : null;
+		if (window != null && latest.hasBuilds() && !latest.isBuilding()) {
+			window.advanceTo(RollingWindowMetrics.epochDay(System.currentTimeMillis()));
+			window.recordLatest(latest.getName(), new BuildRecord(latest.getLastBuildNumber(),
+					latest.getLastBuildTimestamp(), latest.getLastBuildDuration(), latest.getLastBuildResult(), false,
+					latest.getTotalCount(), latest.getFailCount(), latest.getSkipCount()));
+			next.setMetric(row, window.describe(latest.getName()));
+		}
+		snapshot.set(current.withStore(controller, next, System.currentTimeMillis()));
+		return true;
+	}
+
+	private boolean applyTo(int controller, BuildEvent event) {
+		ReportSnapshot current = snapshot.get();
+		if (current.isEmpty()) {
+			return false;
+		}
+		JobStore store = current.getStore(controller);
+		int row = store.indexOf(event.getJobName());
+		if (row < 0) {
+			return false;
+		}
+		// readers of the current snapshot keep the old rows
+		JobStore next = store.copy();
+		if (!event.applyTo(next, row, controller < metrics.size() ? metrics.get(controller) : null)) {
+			return false;
+		}
+		snapshot.set(current.withStore(controller, next, System.currentTimeMillis()));
+		return true;
+	}
+
+	private int controllerFor(BuildEvent event, String controllerName) {
+		for (int i = 0; i < controllers.size(); i++) {
+			ControllerEndpoint controller = controllers.get(i);
+			if (controllerName != null ? controller.getName().equals(controllerName)
+					: event.getBuildUrl().startsWith(MGICFileUtils.addTrailingSlash(controller.getUrl()))) {
+				return i;
+			}
+		}
+		return controllerName == null && controllers.size() == 1 ? 0 : -1;
+	}
+
+	public ReportSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	public void stop() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+		}
+		if (adaptiveRefresher != null) {
+			adaptiveRefresher.shutdownNow();
+		}
+		if (server != null) {
+			server.stop(0);
+			httpPool.shutdownNow();
+		}
+	}
+
+	private void serve(HttpExchange exchange, String format, String contentType) throws IOException {
+		try {
+			ReportSnapshot current = snapshot.get();
+			if (current.isEmpty()) {
+				exchange.getResponseHeaders().set("Retry-After", "30");
+				send(exchange, 503, "text/plain; charset=utf-8",
+						"The first report is still being fetched".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+					.format(Instant.ofEpochMilli(current.getRefreshedAt()).atOffset(ZoneOffset.UTC)));
+			send(exchange, 200, contentType, current.render(format));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void serveStatus(HttpExchange exchange) throws IOException {
+		try {
+			ReportSnapshot current = snapshot.get();
+			StringBuilder status = new StringBuilder("{\"refreshedAt\":");
+			status.append(current.isEmpty() ? "null" : String.valueOf(current.getRefreshedAt()));
+			status.append(",\"jobs\":").append(current.getJobCount());
+			status.append(",\"lastEventAt\":").append(lastEventAt == 0 ? "null" : String.valueOf(lastEventAt));
+			status.append(",\"lastError\":");
+			JsonLinesSink.appendString(status, lastError.get());
+			send(exchange, 200, "application/json", status.append("}").toString().getBytes(StandardCharsets.UTF_8));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void receiveNotification(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				send(exchange, 405, "text/plain; charset=utf-8", "Use POST".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			URI uri = exchange.getRequestURI();
+			if (!isAuthorized(exchange, queryParameter(uri, "token"))) {
+				send(exchange, 403, "text/plain; charset=utf-8", "Bad token".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			BuildEvent event;
+			try (InputStream body = exchange.getRequestBody()) {
+				event = BuildEvent.parse(body, System.currentTimeMillis());
+			} catch (IOException e) {
+				send(exchange, 400, "text/plain; charset=utf-8",
+						String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			boolean updated = apply(event, queryParameter(uri, "controller"));
+			send(exchange, 202, "text/plain; charset=utf-8",
+					(updated ? "Updated" : "Ignored").getBytes(StandardCharsets.UTF_8));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Whether a notification may change the report: it carries the configured
+	 * token, or no token is configured and it comes from this host.
+	 */
+	private boolean isAuthorized(HttpExchange exchange, String token) {
+		if (notifyToken.isEmpty()) {
+			return exchange.getRemoteAddress().getAddress().isLoopbackAddress();
+		}
+		// compared in constant time, so the token cannot be guessed byte by byte
+		return token != null && MessageDigest.isEqual(notifyToken.getBytes(StandardCharsets.UTF_8),
+				token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String queryParameter(URI uri, String name) throws UnsupportedEncodingException {
+		String query = uri.getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0 && URLDecoder.decode(pair.substring(0, equals), "UTF-8").equals(name)) {
+				return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+			}
+		}
+		return null;
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		boolean head = "HEAD".equals(exchange.getRequestMethod());
+		exchange.sendResponseHeaders(status, head ? -1 : body.length);
+		if (!head) {
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+		}
+	}
+}
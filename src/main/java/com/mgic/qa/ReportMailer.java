@@ -0,0 +1,253 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Emails each run's report files to per-team recipient lists. Teams are named
+ * by <code>qa.jenkins.mail.teams</code> and each team's recipients by
+ * <code>qa.jenkins.mail.team.&lt;name&gt;</code>, both comma separated.
+ * <p>
+ * Messages are sent on a small pool in the background, so report generation
+ * does not wait for the mail server. They go out in batches of
+ * <code>qa.jenkins.mail.batchSize</code>, each over a single SMTP connection,
+ * and the attachments are streamed from disk as each message is written.
+ * The pool's threads are not daemons, so the JVM only exits once queued
+ * messages have been handed to the server.
+ */
+public class ReportMailer {
+	public static final int DEFAULT_PORT = 25;
+	public static final int DEFAULT_THREADS = 2;
+	public static final int DEFAULT_BATCH_SIZE = 20;
+	public static final int DEFAULT_MAX_RECIPIENTS = 50;
+	private final Session session;
+	private final String host;
+	private final int port;
+	private final String username;
+	private final String password;
+	private final InternetAddress from;
+	private final String subject;
+	private final Map<String, List<InternetAddress>> teams;
+	private final int batchSize;
+	private final int maxRecipients;
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * @param teams
+	 *            each team's recipients, by team name
+	 * @param batchSize
+	 *            the messages sent over one SMTP connection
+	 * @param maxRecipients
+	 *            the recipients per message; larger teams get several
+	 *            messages
+	 */
+	public ReportMailer(String host, int port, String username, String password, InternetAddress from,
+			String subject, Map<String, List<InternetAddress>> teams, int threads, int batchSize, int maxRecipients) {
+		Properties properties = new Properties();
+		properties.setProperty("mail.smtp.host", host);
+		properties.setProperty("mail.smtp.port", String.valueOf(port));
+		properties.setProperty("mail.smtp.auth", String.valueOf(!username.isEmpty()));
+		properties.setProperty("mail.smtp.starttls.enable", System.getProperty("qa.jenkins.mail.startTls", "false"));
+		this.session = Session.getInstance(properties);
+		this.host = host;
+		this.port = port;
+		this.username = username;
+		this.password = password;
+		this.from = from;
+		this.subject = subject;
+		this.teams = teams;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxRecipients = Math.max(1, maxRecipients);
+		// idle threads time out, so a finished pool does not keep the JVM alive
+		this.pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("report-mail-%d").build());
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return a mailer configured from the <code>qa.jenkins.mail.*</code>
+	 *         properties, or null if no team is named
+	 * @throws IllegalArgumentException
+	 *             if a team has no recipients, an address is malformed, or no
+	 *             <code>qa.jenkins.mail.host</code> is given
+	 */
+	public static ReportMailer fromSystemProperties() {
+		Map<String, List<InternetAddress>> teams = new LinkedHashMap<String, List<InternetAddress>>();
+		for (String team : Splitter.on(',').trimResults().omitEmptyStrings()
+				.split(System.getProperty("qa.jenkins.mail.teams", ""))) {
+			List<InternetAddress> recipients = parseAddresses(System.getProperty("qa.jenkins.mail.team." + team, ""));
+			if (recipients.isEmpty()) {
+				throw new IllegalArgumentException("No recipients given in qa.jenkins.mail.team." + team);
+			}
+			teams.put(team, recipients);
+		}
+		if (teams.isEmpty()) {
+			return null;
+		}
+		String host = System.getProperty("qa.jenkins.mail.host", "");
+		if (host.isEmpty()) {
+			throw new IllegalArgumentException("No SMTP server given in qa.jenkins.mail.host");
+		}
+		List<InternetAddress> from = parseAddresses(
+				System.getProperty("qa.jenkins.mail.from", "jenkins-reporting@localhost"));
+		if (from.isEmpty()) {
+			throw new IllegalArgumentException("No sender given in qa.jenkins.mail.from");
+		}
+		return new ReportMailer(host, Integer.getInteger("qa.jenkins.mail.port", DEFAULT_PORT),
+				System.getProperty("qa.jenkins.mail.username", ""), System.getProperty("qa.jenkins.mail.password", ""),
+				from.get(0), System.getProperty("qa.jenkins.mail.subject", "Jenkins Report"), teams,
+				Integer.getInteger("qa.jenkins.mail.threads", DEFAULT_THREADS),
+				Integer.getInteger("qa.jenkins.mail.batchSize", DEFAULT_BATCH_SIZE),
+				Integer.getInteger("qa.jenkins.mail.maxRecipients", DEFAULT_MAX_RECIPIENTS));
+	}
+
+	/**
+	 * Mails <code>reports</code> with the mailer configured by the
+	 * <code>qa.jenkins.mail.*</code> properties and shuts it down once the
+	 * messages are queued.
+	 *
+	 * @return completes when every message has been sent; already complete
+	 *         if mail is not configured
+	 */
+	public static CompletableFuture<Void> mailConfigured(List<File> reports) {
+		ReportMailer mailer = fromSystemProperties();
+		if (mailer == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		try {
+			return mailer.send(reports);
+		} finally {
+			mailer.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for a delivery started by {@link #send(List)}.
+	 *
+	 * @throws IOException
+	 *             if any batch could not be sent
+	 */
+	public static void await(Future<?> delivery) throws IOException {
+		try {
+			delivery.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for report mail", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		}
+	}
+
+	/**
+	 * Queues one message per team, or per <code>maxRecipients</code> of a
+	 * team, each with every file in <code>reports</code> attached, and
+	 * returns without waiting for them to be sent.
+	 *
+	 * @return completes when every batch has been sent, exceptionally if any
+	 *         could not be
+	 */
+	public CompletableFuture<Void> send(final List<File> reports) {
+		List<List<InternetAddress>> messages = new ArrayList<List<InternetAddress>>();
+		for (List<InternetAddress> recipients : teams.values()) {
+			messages.addAll(Lists.partition(recipients, maxRecipients));
+		}
+		List<CompletableFuture<Void>> batches = new ArrayList<CompletableFuture<Void>>();
+		for (final List<List<InternetAddress>> batch : Lists.partition(messages, batchSize)) {
+			batches.add(CompletableFuture.runAsync(() -> {
+				try {
+					sendBatch(batch, reports);
+				} catch (MessagingException | IOException e) {
+					System.out.println("Could not mail the report to " + batch + ": " + e);
+					throw new CompletionException(e instanceof IOException ? e : new IOException(e));
+				}
+			}, pool));
+		}
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()]));
+	}
+
+	/**
+	 * Stops accepting messages. Those already queued are still sent.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Sends every message of a batch over one connection.
+	 */
+	private void sendBatch(List<List<InternetAddress>> batch, List<File> reports)
+			throws MessagingException, IOException {
+		Transport transport = session.getTransport("smtp");
+		transport.connect(host, port, username.isEmpty() ? null : username, password);
+		try {
+			for (List<InternetAddress> recipients : batch) {
+				MimeMessage message = createMessage(recipients, reports);
+				transport.sendMessage(message, message.getAllRecipients());
+			}
+		} finally {
+			transport.close();
+		}
+	}
+
+	MimeMessage createMessage(List<InternetAddress> recipients, List<File> reports)
+			throws MessagingException, IOException {
+		MimeMessage message = new MimeMessage(session);
+		message.setFrom(from);
+		message.setRecipients(Message.RecipientType.TO, recipients.toArray(new InternetAddress[recipients.size()]));
+		message.setSubject(subject);
+		message.setSentDate(new Date());
+		MimeMultipart content = new MimeMultipart();
+		MimeBodyPart text = new MimeBodyPart();
+		text.setText("The latest Jenkins report is attached.");
+		content.addBodyPart(text);
+		for (File report : reports) {
+			// backed by a FileDataSource: the file is read while the message is written
+			MimeBodyPart attachment = new MimeBodyPart();
+			attachment.attachFile(report);
+			content.addBodyPart(attachment);
+		}
+		message.setContent(content);
+		message.saveChanges();
+		return message;
+	}
+
+	static List<InternetAddress> parseAddresses(String addresses) {
+		List<InternetAddress> parsed = new ArrayList<InternetAddress>();
+		for (String address : Splitter.on(',').trimResults().omitEmptyStrings().split(addresses)) {
+			try {
+				parsed.add(new InternetAddress(address, true));
+			} catch (AddressException e) {
+				throw new IllegalArgumentException("Malformed mail address: " + address, e);
+			}
+		}
+		return parsed;
+	}
+}
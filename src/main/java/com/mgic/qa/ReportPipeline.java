@@ -0,0 +1,325 @@
+package com.mgic.qa;
+
+import static com.mgic.qa.JenkinsCalls.call;
+import static com.mgic.qa.JenkinsCalls.unwrap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import com.mgic.qa.JenkinsCalls.JenkinsCall;
+import com.mgic.qa.TestReportParser.TestReportSummary;
+
+/**
+ * Overlaps fetching with rendering. A feeder thread starts the build history
+ * and test report requests of each job in report order and puts them on a
+ * bounded queue; the renderer takes them off in the same order and writes
+ * each row as soon as its requests have finished. When the renderer falls
+ * behind, the queue fills and the feeder stops starting requests, so at most
+ * <code>capacity</code> jobs' results are held at once.
+ */
+public class ReportPipeline {
+	public static final int DEFAULT_CAPACITY = 64;
+	private static final long FEEDER_CHECK_MILLIS = 1000;
+	private final BuildHistoryFetcher historyFetcher;
+	private final TestReportFetcher reportFetcher;
+	private final ExecutorService executor;
+	private final boolean onlyWithResults;
+	private final BlockingQueue<CompletableFuture<FetchedJob>> queue;
+	private ConsoleLogScanner logScanner;
+	private int buildReportWindow;
+	private Predicate<JobSummary> reported = job -> false;
+	private Thread feeder;
+	private volatile RuntimeException feederFailure;
+	private int expected;
+
+	/**
+	 * @param onlyWithResults
+	 *            when <code>true</code>, jobs whose summary shows no test
+	 *            results are not asked for a test report
+	 * @param capacity
+	 *            how many jobs may be fetched ahead of the renderer
+	 */
+	public ReportPipeline(BuildHistoryFetcher historyFetcher, TestReportFetcher reportFetcher,
+			ExecutorService executor, boolean onlyWithResults, int capacity) {
+		this.historyFetcher = historyFetcher;
+		this.reportFetcher = reportFetcher;
+		this.executor = executor;
+		this.onlyWithResults = onlyWithResults;
+		this.queue = new ArrayBlockingQueue<CompletableFuture<FetchedJob>>(
+				capacity > 0 ? capacity : DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Also scans the console log of each job's last unsuccessful build with
+	 * <code>scanner</code>. Must be set before {@link #start(List, BuildCache)}.
+	 */
+	public void setLogScanner(ConsoleLogScanner scanner) {
+		this.logScanner = scanner;
+	}
+
+	/**
+	 * Skips the test report request of the jobs <code>reported</code>
+	 * accepts, whose rows already hold their last build's report. Must be set
+	 * before {@link #start(List, BuildCache)}.
+	 */
+	public void setReported(Predicate<JobSummary> reported) {
+		this.reported = reported;
+	}
+
+	/**
+	 * Also fetches the test report of each new build before the last, so
+	 * every build can be recorded by a {@link FlakinessTracker}, not only the
+	 * newest. Only the newest <code>window</code> builds, the last included,
+	 * get a report. Must be set before {@link #start(List, BuildCache)}.
+	 */
+	public void setBuildReportWindow(int window) {
+		this.buildReportWindow = window;
+	}
+
+	/**
+	 * Starts fetching <code>jobs</code> in the background and returns
+	 * immediately.
+	 *
+	 * @param cache
+	 *            decides which builds are new; it is only read here, merging
+	 *            is left to the renderer
+	 */
+	public void start(final List<JobSummary> jobs, final BuildCache cache) {
+		expected = jobs.size();
+		feeder = new Thread(() -> {
+			try {
+				for (JobSummary job : jobs) {
+					queue.put(fetch(job, cache));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				// the request pool was shut down or a job could not be fetched:
+				// fail the renderer at this job instead of leaving it waiting
+				feederFailure = e;
+				CompletableFuture<FetchedJob> failed = new CompletableFuture<FetchedJob>();
+				failed.completeExceptionally(e);
+				queue.offer(failed);
+			}
+		}, "jenkins-pipeline");
+		feeder.setDaemon(true);
+		feeder.start();
+	}
+
+	/**
+	 * Hands every job's results to <code>renderer</code>, in report order, as
+	 * they arrive. A job whose history, test report or console log could not
+	 * be fetched is still rendered, without what is missing. Stops the feeder
+	 * when done or when the renderer fails.
+	 *
+	 * @throws IOException
+	 *             if the renderer failed, or the feeder stopped before every
+	 *             job was queued
+	 */
+	public void drain(RowRenderer renderer) throws IOException {
+		try {
+			for (int row = 0; row < expected; row++) {
+				renderer.render(row, next(row));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for job results");
+		} finally {
+			stop();
+		}
+	}
+
+	/**
+	 * Waits for the results of <code>row</code>, checking every so often that
+	 * the feeder is still there to queue them.
+	 */
+	private FetchedJob next(int row) throws IOException, InterruptedException {
+		CompletableFuture<FetchedJob> fetched;
+		while ((fetched = queue.poll(FEEDER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+			if (!feeder.isAlive() && queue.isEmpty()) {
+				throw new IOException("Stopped fetching jobs after " + row + " of " + expected, feederFailure);
+			}
+		}
+		try {
+			return fetched.join();
+		} catch (RuntimeException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Stops the feeder from starting any more requests. Results already queued
+	 * are left for the garbage collector.
+	 */
+	public void stop() {
+		if (feeder != null) {
+			feeder.interrupt();
+		}
+	}
+
+	private CompletableFuture<FetchedJob> fetch(final JobSummary job, final BuildCache cache) {
+		CompletableFuture<List<BuildRecord>> builds = request(() -> historyFetcher.fetchNewBuilds(job, cache),
+				Collections.<BuildRecord> emptyList(), "build history", job);
+		CompletableFuture<TestReportSummary> report = TestReportFetcher.hasReportToFetch(job, onlyWithResults)
+				&& !reported.test(job)
+						? request(() -> reportFetcher.fetch(job), null, "test report", job)
+						: CompletableFuture.completedFuture(null);
+		CompletableFuture<String> cause = logScanner != null && ConsoleLogScanner.hasLogToScan(job)
+				? request(() -> logScanner.scan(job), null, "console log", job)
+				: CompletableFuture.completedFuture(null);
+		CompletableFuture<List<BuildReport>> earlier = buildReportWindow > 1
+				&& TestReportFetcher.hasReportToFetch(job, onlyWithResults)
+						? builds.thenCompose(newBuilds -> fetchEarlierReports(job, newBuilds))
+						: CompletableFuture.completedFuture(Collections.<BuildReport> emptyList());
+		return builds.thenCombine(report, FetchedJob::new).thenCombine(cause, FetchedJob::withFailureCause)
+				.thenCombine(earlier, FetchedJob::withEarlierReports);
+	}
+
+	/**
+	 * Fetches the reports of the finished builds in <code>newBuilds</code>
+	 * other than the last build, newest first and at most one window.
+	 *
+	 * @return the reports that could be fetched, oldest first
+	 */
+	private CompletableFuture<List<BuildReport>> fetchEarlierReports(final JobSummary job,
+			List<BuildRecord> newBuilds) {
+		final List<CompletableFuture<BuildReport>> pending = new ArrayList<CompletableFuture<BuildReport>>();
+		for (final BuildRecord build : newBuilds) {
+			if (pending.size() == buildReportWindow - 1) {
+				break;
+			}
+			if (build.getNumber() >= job.getLastBuildNumber() || build.isBuilding()
+					|| onlyWithResults && !build.hasTestResults()) {
+				continue;
+			}
+			pending.add(request(() -> new BuildReport(build.getNumber(), reportFetcher.fetch(job, build.getNumber())),
+					null, "test report of build " + build.getNumber(), job));
+		}
+		return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()])).thenApply(done -> {
+			List<BuildReport> reports = new ArrayList<BuildReport>();
+			for (int i = pending.size() - 1; i >= 0; i--) {
+				BuildReport report = pending.get(i).join();
+				if (report != null && report.getTestReport() != null) {
+					reports.add(report);
+				}
+			}
+			return reports;
+		});
+	}
+
+	/**
+	 * Runs <code>request</code> on the request pool. If it fails, the job is
+	 * reported with <code>fallback</code> in its place rather than failing the
+	 * whole report.
+	 */
+	private <T> CompletableFuture<T> request(final JenkinsCall<T> request, final T fallback, final String what,
+			final JobSummary job) {
+		return CompletableFuture.supplyAsync(() -> call(request), executor).exceptionally(e -> {
+			System.out.println("Could not fetch the " + what + " of " + job.getName() + ": " + unwrap(e));
+			return fallback;
+		});
+	}
+
+	/**
+	 * Writes one job's row once its results have arrived.
+	 */
+	public interface RowRenderer {
+		void render(int row, FetchedJob fetched) throws IOException;
+	}
+
+	/**
+	 * Everything fetched for a single job.
+	 */
+	public static class FetchedJob {
+		private final List<BuildRecord> newBuilds;
+		private final TestReportSummary testReport;
+		private final String failureCause;
+		private final List<BuildReport> earlierReports;
+
+		FetchedJob(List<BuildRecord> newBuilds, TestReportSummary testReport) {
+			this(newBuilds, testReport, null, Collections.<BuildReport> emptyList());
+		}
+
+		FetchedJob(List<BuildRecord> newBuilds, TestReportSummary testReport, String failureCause,
+				List<BuildReport> earlierReports) {
+			this.newBuilds = newBuilds;
+			this.testReport = testReport;
+			this.failureCause = failureCause;
+			this.earlierReports = earlierReports;
+		}
+
+		FetchedJob withFailureCause(String cause) {
+			return new FetchedJob(newBuilds, testReport, cause, earlierReports);
+		}
+
+		FetchedJob withEarlierReports(List<BuildReport> reports) {
+			return new FetchedJob(newBuilds, testReport, failureCause, reports);
+		}
+
+		/**
+		 * @return the builds not yet in the build cache, newest first
+		 */
+		public List<BuildRecord> getNewBuilds() {
+			return newBuilds;
+		}
+
+		/**
+		 * @return the last build's test report, or <code>null</code> if there
+		 *         is none or it was not requested
+		 */
+		public TestReportSummary getTestReport() {
+			return testReport;
+		}
+
+		/**
+		 * @return the cause found in the last build's console log, or
+		 *         <code>null</code> if none was found or the log was not
+		 *         scanned
+		 */
+		public String getFailureCause() {
+			return failureCause;
+		}
+
+		/**
+		 * @return the test reports of new builds before the last one, oldest
+		 *         first; empty unless {@link ReportPipeline#setBuildReportWindow(int)}
+		 *         was set
+		 */
+		public List<BuildReport> getEarlierReports() {
+			return earlierReports;
+		}
+	}
+
+	/**
+	 * The test report of one build.
+	 */
+	public static class BuildReport {
+		private final int number;
+		private final TestReportSummary testReport;
+
+		BuildReport(int number, TestReportSummary testReport) {
+			this.number = number;
+			this.testReport = testReport;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * @return the report, or <code>null</code> if the build has none
+		 */
+		public TestReportSummary getTestReport() {
+			return testReport;
+		}
+	}
+}
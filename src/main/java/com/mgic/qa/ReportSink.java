@@ -0,0 +1,39 @@
+package com.mgic.qa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import com.mgic.qa.FlakinessTracker.FlakyTest;
+
+/**
+ * Receives the dashboard rows of a report as they are rendered. Rows are
+ * read straight out of the {@link JobStore}, so a sink keeps only what its
+ * output format needs.
+ */
+public interface ReportSink extends Closeable {
+
+	/**
+	 * Starts the rows of one controller. Called before its first row; a
+	 * federated report calls it once per controller.
+	 */
+	void beginController(ControllerEndpoint controller) throws IOException;
+
+	/**
+	 * Writes one job's dashboard row.
+	 */
+	void writeRow(JobStore store, int row) throws IOException;
+
+	/**
+	 * Writes the flakiest tests of the current controller, after its rows.
+	 * Formats without a place for them ignore the call.
+	 */
+	default void writeFlakyTests(List<FlakyTest> tests) throws IOException {
+	}
+
+	/**
+	 * Finishes the report; nothing is written afterwards.
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,177 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.mgic.qa.FlakinessTracker.FlakyTest;
+
+/**
+ * Opens the sinks named by <code>qa.jenkins.reportSinks</code>, a comma
+ * separated list of <code>xlsx</code>, <code>xls</code>, <code>csv</code>,
+ * <code>jsonl</code> and <code>html</code>. Several sinks are fed from the
+ * same pass over the rows.
+ */
+public final class ReportSinks {
+
+	private ReportSinks() {
+	}
+
+	/**
+	 * @return <code>qa.jenkins.reportSinks</code>, falling back to the older
+	 *         single-format <code>qa.jenkins.reportFormat</code>
+	 */
+	public static String configuredFormats() {
+		return System.getProperty("qa.jenkins.reportSinks", System.getProperty("qa.jenkins.reportFormat", "xlsx"));
+	}
+
+	/**
+	 * Opens one sink per format, each writing
+	 * <code>directory/baseName.&lt;format&gt;</code>.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a format is unknown or none is given
+	 */
+	public static ReportSink open(String formats, File directory, String baseName) throws IOException {
+		List<ReportSink> sinks = new ArrayList<ReportSink>();
+		try {
+			for (String format : Splitter.on(',').trimResults().omitEmptyStrings().split(formats)) {
+				sinks.add(openSink(format.toLowerCase(), directory, baseName));
+			}
+		} catch (IOException | RuntimeException e) {
+			try {
+				closeAll(sinks);
+			} catch (IOException closeFailure) {
+				e.addSuppressed(closeFailure);
+			}
+			throw e;
+		}
+		if (sinks.isEmpty()) {
+			throw new IllegalArgumentException("No report sinks given in qa.jenkins.reportSinks");
+		}
+		return sinks.size() == 1 ? sinks.get(0) : new MultiSink(sinks);
+	}
+
+	/**
+	 * Opens a single sink of <code>format</code> that writes to
+	 * <code>out</code>. The stream is left open for <code>xlsx</code> and
+	 * closed with the sink for the text formats.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the format is unknown or cannot be streamed
+	 */
+	public static ReportSink open(String format, OutputStream out) throws IOException {
+		switch (format.trim().toLowerCase()) {
+		case "xlsx":
+			return ExcelSink.streaming(out, Integer.getInteger("qa.jenkins.rowWindow", ExcelSink.DEFAULT_ROW_WINDOW));
+		case "csv":
+			return new CsvSink(Channels.newChannel(out));
+		case "json":
+		case "jsonl":
+			return new JsonLinesSink(Channels.newChannel(out));
+		case "html":
+			return new HtmlSink(Channels.newChannel(out));
+		default:
+			throw new IllegalArgumentException("Cannot stream report sink: " + format);
+		}
+	}
+
+	/**
+	 * @return the files {@link #open(String, File, String)} writes for
+	 *         <code>formats</code>, in the same order
+	 */
+	public static List<File> files(String formats, File directory, String baseName) {
+		List<File> files = new ArrayList<File>();
+		for (String format : Splitter.on(',').trimResults().omitEmptyStrings().split(formats)) {
+			files.add(file(format.toLowerCase(), directory, baseName));
+		}
+		return files;
+	}
+
+	private static ReportSink openSink(String format, File directory, String baseName) throws IOException {
+		File file = file(format, directory, baseName);
+		switch (format) {
+		case "xlsx":
+			return ExcelSink.streaming(file, Integer.getInteger("qa.jenkins.rowWindow", ExcelSink.DEFAULT_ROW_WINDOW));
+		case "xls":
+			return ExcelSink.template(file);
+		case "csv":
+			return new CsvSink(file);
+		case "json":
+		case "jsonl":
+			return new JsonLinesSink(file);
+		case "html":
+			return new HtmlSink(file);
+		default:
+			throw new IllegalArgumentException("Unknown report sink: " + format);
+		}
+	}
+
+	/**
+	 * @return the file a sink of <code>format</code> writes, named after
+	 *         <code>baseName</code>; <code>json</code> is written as
+	 *         <code>jsonl</code>
+	 */
+	private static File file(String format, File directory, String baseName) {
+		return new File(directory, baseName + "." + (format.equals("json") ? "jsonl" : format));
+	}
+
+	private static void closeAll(List<ReportSink> sinks) throws IOException {
+		IOException failure = null;
+		for (ReportSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Feeds every row to several sinks, in the order they were named.
+	 */
+	private static class MultiSink implements ReportSink {
+		private final List<ReportSink> sinks;
+
+		MultiSink(List<ReportSink> sinks) {
+			this.sinks = sinks;
+		}
+
+		@Override
+		public void beginController(ControllerEndpoint controller) throws IOException {
+			for (ReportSink sink : sinks) {
+				sink.beginController(controller);
+			}
+		}
+
+		@Override
+		public void writeRow(JobStore store, int row) throws IOException {
+			for (ReportSink sink : sinks) {
+				sink.writeRow(store, row);
+			}
+		}
+
+		@Override
+		public void writeFlakyTests(List<FlakyTest> tests) throws IOException {
+			for (ReportSink sink : sinks) {
+				sink.writeFlakyTests(tests);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			closeAll(sinks);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.mgic.qa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The finished rows of every controller as of one refresh. A snapshot is
+ * never changed after it is built, so any number of readers can render it
+ * while the next one is being fetched. Each format is rendered at most once
+ * per snapshot.
+ */
+public final class ReportSnapshot {
+	public static final ReportSnapshot EMPTY = new ReportSnapshot(Collections.<ControllerEndpoint>emptyList(),
+			Collections.<JobStore>emptyList(), 0);
+	private final List<ControllerEndpoint> controllers;
+	private final List<JobStore> stores;
+	private final long refreshedAt;
+	private final ConcurrentMap<String, byte[]> rendered = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * @param stores
+	 *            one finished store per controller, in the same order; they
+	 *            must not be changed afterwards
+	 */
+	public ReportSnapshot(List<ControllerEndpoint> controllers, List<JobStore> stores, long refreshedAt) {
+		this.controllers = Collections.unmodifiableList(new ArrayList<ControllerEndpoint>(controllers));
+		this.stores = Collections.unmodifiableList(new ArrayList<JobStore>(stores));
+		this.refreshedAt = refreshedAt;
+	}
+
+	public boolean isEmpty() {
+		return refreshedAt == 0;
+	}
+
+	public long getRefreshedAt() {
+		return refreshedAt;
+	}
+
+	public List<ControllerEndpoint> getControllers() {
+		return controllers;
+	}
+
+	public JobStore getStore(int controller) {
+		return stores.get(controller);
+	}
+
+	/**
+	 * @return a new snapshot with the rows of one controller replaced and
+	 *         every other controller's store shared with this one
+	 */
+	ReportSnapshot withStore(int controller, JobStore store, long updatedAt) {
+		List<JobStore> next = new ArrayList<JobStore>(stores);
+		next.set(controller, store);
+		return new ReportSnapshot(controllers, next, updatedAt);
+	}
+
+	public int getJobCount() {
+		int jobs = 0;
+		for (JobStore store : stores) {
+			jobs += store.size();
+		}
+		return jobs;
+	}
+
+	/**
+	 * Writes every controller's rows into <code>sink</code>.
+	 */
+	public void writeTo(ReportSink sink) throws IOException {
+		for (int i = 0; i < controllers.size(); i++) {
+			JobStore store = stores.get(i);
+			sink.beginController(controllers.get(i));
+			for (int row = 0; row < store.size(); row++) {
+				sink.writeRow(store, row);
+			}
+		}
+	}
+
+	/**
+	 * @return the whole report in <code>format</code>, rendered on first
+	 *         request and shared afterwards
+	 */
+	public byte[] render(String format) throws IOException {
+		try {
+			return rendered.computeIfAbsent(format, key -> {
+				try {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					try (ReportSink sink = ReportSinks.open(key, out)) {
+						writeTo(sink);
+					}
+					return out.toByteArray();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package com.mgic.qa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps per-job, per-day buckets of build counts, test pass/fail/skip counts
+ * and total duration for the last {@link #WINDOW_DAYS} days. Each run only
+ * adds the builds finished since the previous run and evicts the days that
+ * slid out of the window, so the "30 Day Metric" never has to be recomputed
+ * from the full build history.
+ * <p>
+ * Every method is synchronized, so a long-running {@link ReportDaemon} can
+ * count notified builds while a harvest is counting into the same window.
+ */
+public class RollingWindowMetrics {
+	public static final int WINDOW_DAYS = 30;
+	private static final String SEPARATOR = "\t";
+	private final Map<String, JobWindow> windows = new HashMap<String, JobWindow>();
+	private long today;
+
+	/**
+	 * @param today
+	 *            the epoch day the window ends on, see {@link #epochDay(long)}
+	 */
+	public RollingWindowMetrics(long today) {
+		this.today = today;
+	}
+
+	public static long epochDay(long timestamp) {
+		return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+	}
+
+	/**
+	 * Loads the buckets saved by a previous run and evicts the days that are
+	 * no longer inside the window ending on <code>today</code>.
+	 */
+	public static RollingWindowMetrics load(File file, long today) throws IOException {
+		RollingWindowMetrics metrics = new RollingWindowMetrics(today);
+		if (!file.isFile()) {
+			return metrics;
+		}
+		BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR, -1);
+				JobWindow window = metrics.window(fields[1]);
+				if (fields[0].equals("J")) {
+					window.lastCounted = Integer.parseInt(fields[2]);
+				} else if (metrics.isInWindow(Long.parseLong(fields[2]))) {
+					window.add(Long.parseLong(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+							Integer.parseInt(fields[5]), Integer.parseInt(fields[6]), Long.parseLong(fields[7]));
+				}
+			}
+		} finally {
+			MGICFileUtils.close(reader);
+		}
+		return metrics;
+	}
+
+	public synchronized void save(File file) throws IOException {
+		MGICFileUtils.makeDirectory(file.getAbsoluteFile().getParent());
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8);
+		try {
+			for (Map.Entry<String, JobWindow> job : windows.entrySet()) {
+				JobWindow window = job.getValue();
+				writer.write("J" + SEPARATOR + job.getKey() + SEPARATOR + window.lastCounted);
+				writer.newLine();
+				for (int slot = 0; slot < WINDOW_DAYS; slot++) {
+					if (window.builds[slot] > 0) {
+						writer.write("D" + SEPARATOR + job.getKey() + SEPARATOR + window.days[slot] + SEPARATOR
+								+ window.builds[slot] + SEPARATOR + window.pass[slot] + SEPARATOR + window.fail[slot]
+								+ SEPARATOR + window.skip[slot] + SEPARATOR + window.duration[slot]);
+						writer.newLine();
+					}
+				}
+			}
+		} finally {
+			MGICFileUtils.close(writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Slides the window forward so it ends on <code>day</code>, evicting the
+	 * buckets that fall out of it.
+	 */
+	public synchronized void advanceTo(long day) {
+		if (day <= today) {
+			return;
+		}
+		today = day;
+		for (JobWindow window : windows.values()) {
+			window.evictBefore(today - WINDOW_DAYS + 1);
+		}
+	}
+
+	/**
+	 * Adds the builds of <code>jobName</code> that finished since the last
+	 * update. Builds above one that is still running are held back until it
+	 * finishes, so no build is ever counted twice.
+	 */
+	public synchronized void update(String jobName, BuildCache cache) {
+		JobWindow window = window(jobName);
+		int highWaterMark = cache.getHighWaterMark(jobName);
+		if (highWaterMark < window.lastCounted) {
+			// the job was recreated and the cache dropped its old numbers
+			window.lastCounted = JobSummary.NO_BUILD;
+		}
+		for (BuildRecord build : cache.getBuildsBetween(jobName, window.lastCounted, highWaterMark)) {
+			record(jobName, build);
+		}
+		window.lastCounted = Math.max(window.lastCounted, highWaterMark);
+	}
+
+	/**
+	 * Adds a single finished build to its day's bucket. Builds older than the
+	 * window are ignored.
+	 */
+	public synchronized void record(String jobName, BuildRecord build) {
+		long day = Math.min(epochDay(build.getTimestamp()), today);
+		if (!isInWindow(day)) {
+			return;
+		}
+		window(jobName).add(day, 1, build.getPassCount(), Math.max(build.getFailCount(), 0),
+				Math.max(build.getSkipCount(), 0), build.getDuration());
+	}
+
+	/**
+	 * Counts <code>build</code> unless a build with the same or a higher
+	 * number was already counted for the job, so a build that is reported
+	 * more than once is only counted once.
+	 *
+	 * @return whether the build was counted
+	 */
+	public synchronized boolean recordLatest(String jobName, BuildRecord build) {
+		JobWindow window = window(jobName);
+		if (build.getNumber() <= window.lastCounted) {
+			return false;
+		}
+		record(jobName, build);
+		window.lastCounted = build.getNumber();
+		return true;
+	}
+
+	public synchronized int getBuildCount(String jobName) {
+		JobWindow window = windows.get(jobName);
+		return window == null ? 0 : window.totalBuilds;
+	}
+
+	/**
+	 * @return the text shown in the "30 Day Metric" column for the job
+	 */
+	public synchronized String describe(String jobName) {
+		JobWindow window = windows.get(jobName);
+		if (window == null || window.totalBuilds == 0) {
+			return "No builds";
+		}
+		StringBuilder metric = new StringBuilder();
+		metric.append(window.totalBuilds).append(" builds, ");
+		long ran = window.totalPass + window.totalFail;
+		if (ran > 0) {
+			metric.append(window.totalPass * 100 / ran).append("% passing, ");
+		}
+		metric.append("avg ").append(window.totalDuration / window.totalBuilds).append("ms");
+		return metric.toString();
+	}
+
+	private boolean isInWindow(long day) {
+		return day > today - WINDOW_DAYS && day <= today;
+	}
+
+	private JobWindow window(String jobName) {
+		JobWindow window = windows.get(jobName);
+		if (window == null) {
+			window = new JobWindow();
+			windows.put(jobName, window);
+		}
+		return window;
+	}
+
+	/**
+	 * One bucket per day of the window, in a ring indexed by epoch day, plus
+	 * running totals so reading the metric never walks the buckets.
+	 */
+	private static class JobWindow {
+		private final long[] days = new long[WINDOW_DAYS];
+		private final int[] builds = new int[WINDOW_DAYS];
+		private final int[] pass = new int[WINDOW_DAYS];
+		private final int[] fail = new int[WINDOW_DAYS];
+		private final int[] skip = new int[WINDOW_DAYS];
+		private final long[] duration = new long[WINDOW_DAYS];
+		private int lastCounted = JobSummary.NO_BUILD;
+		private int totalBuilds;
+		private long totalPass, totalFail, totalSkip, totalDuration;
+
+		void add(long day, int buildCount, int passCount, int failCount, int skipCount, long buildDuration) {
+			int slot = (int) Math.floorMod(day, (long) WINDOW_DAYS);
+			if (builds[slot] > 0 && days[slot] != day) {
+				evict(slot);
+			}
+			days[slot] = day;
+			builds[slot] += buildCount;
+			pass[slot] += passCount;
+			fail[slot] += failCount;
+			skip[slot] += skipCount;
+			duration[slot] += buildDuration;
+			totalBuilds += buildCount;
+			totalPass += passCount;
+			totalFail += failCount;
+			totalSkip += skipCount;
+			totalDuration += buildDuration;
+		}
+
+		void evictBefore(long firstDay) {
+			for (int slot = 0; slot < WINDOW_DAYS; slot++) {
+				if (builds[slot] > 0 && days[slot] < firstDay) {
+					evict(slot);
+				}
+			}
+		}
+
+		private void evict(int slot) {
+			totalBuilds -= builds[slot];
+			totalPass -= pass[slot];
+			totalFail -= fail[slot];
+			totalSkip -= skip[slot];
+			totalDuration -= duration[slot];
+			builds[slot] = 0;
+			pass[slot] = 0;
+			fail[slot] = 0;
+			skip[slot] = 0;
+			duration[slot] = 0;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.mgic.qa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds any of a set of failure signatures in a byte stream in one pass,
+ * with an Aho-Corasick automaton compiled into a full transition table.
+ * Each byte costs one table lookup whatever the number of signatures, and a
+ * scan can be stopped after any chunk and resumed from its state, so logs are
+ * read a buffer at a time without holding any of them. ASCII letters match
+ * regardless of case.
+ * <p>
+ * Signatures are given as <code>cause&lt;TAB&gt;text</code> lines. When
+ * several match, the cause of the one listed first is reported.
+ */
+public class SignatureMatcher {
+	public static final int NO_MATCH = -1;
+	static final String[] DEFAULT_SIGNATURES = {
+			"Out of memory\tjava.lang.OutOfMemoryError",
+			"Disk full\tNo space left on device",
+			"Build timed out\tBuild timed out",
+			"Agent disconnected\thudson.remoting.ChannelClosedException",
+			"Agent disconnected\tAgent went offline during the build",
+			"Aborted\tAborted by",
+			"Compilation error\tCOMPILATION ERROR",
+			"Compilation error\tCompilation failed",
+			"Dependency resolution\tCould not resolve dependencies",
+			"Dependency resolution\tCould not resolve all dependencies",
+			"Connection refused\tConnection refused",
+			"Test failures\tThere are test failures",
+			"Test failures\tThere were failing tests",
+			"Gradle build failed\tFAILURE: Build failed with an exception",
+			"Maven build failed\t[ERROR] BUILD FAILURE",
+			"Script error\tscript returned exit code" };
+	private static final int ALPHABET = 256;
+	private final String[] causes;
+	private final String fingerprint;
+	private final int[] next;
+	private final int[] found;
+	private final int states;
+
+	/**
+	 * @param signatures
+	 *            <code>cause&lt;TAB&gt;text</code> lines, most specific first;
+	 *            blank lines and lines starting with <code>#</code> are
+	 *            skipped
+	 */
+	public SignatureMatcher(List<String> signatures) {
+		List<String> causeList = new ArrayList<String>();
+		List<byte[]> patterns = new ArrayList<byte[]>();
+		int maxStates = 1;
+		for (String line : signatures) {
+			int tab = line.indexOf('\t');
+			if (line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			if (tab <= 0 || tab == line.length() - 1) {
+				throw new IllegalArgumentException("Failure signature is not cause<TAB>text: " + line);
+			}
+			causeList.add(line.substring(0, tab));
+			byte[] pattern = line.substring(tab + 1).getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = fold(pattern[i]);
+			}
+			patterns.add(pattern);
+			maxStates += pattern.length;
+		}
+		causes = causeList.toArray(new String[causeList.size()]);
+		fingerprint = Integer.toHexString(signatures.hashCode());
+		next = new int[maxStates * ALPHABET];
+		found = new int[maxStates];
+		states = build(patterns);
+	}
+
+	/**
+	 * @return the signatures in <code>qa.jenkins.failureSignatures</code>, a
+	 *         file of <code>cause&lt;TAB&gt;text</code> lines, or the built-in
+	 *         ones if it is not set
+	 */
+	public static SignatureMatcher fromSystemProperties() throws IOException {
+		String file = System.getProperty("qa.jenkins.failureSignatures", "");
+		if (file.isEmpty()) {
+			return new SignatureMatcher(Arrays.asList(DEFAULT_SIGNATURES));
+		}
+		return new SignatureMatcher(Files.readAllLines(new File(file).toPath(), StandardCharsets.UTF_8));
+	}
+
+	private int build(List<byte[]> patterns) {
+		Arrays.fill(next, -1);
+		Arrays.fill(found, NO_MATCH);
+		int count = 1;
+		for (int index = 0; index < patterns.size(); index++) {
+			int state = 0;
+			for (byte b : patterns.get(index)) {
+				int slot = state * ALPHABET + (b & 0xFF);
+				if (next[slot] < 0) {
+					next[slot] = count++;
+				}
+				state = next[slot];
+			}
+			if (found[state] == NO_MATCH) {
+				found[state] = index;
+			}
+		}
+		// breadth first, so every failure state is complete before it is used
+		int[] failure = new int[count];
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		for (int b = 0; b < ALPHABET; b++) {
+			if (next[b] < 0) {
+				next[b] = 0;
+			} else {
+				queue.add(next[b]);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			found[state] = earlier(found[state], found[failure[state]]);
+			for (int b = 0; b < ALPHABET; b++) {
+				int slot = state * ALPHABET + b;
+				int fallback = next[failure[state] * ALPHABET + b];
+				if (next[slot] < 0) {
+					next[slot] = fallback;
+				} else {
+					failure[next[slot]] = fallback;
+					queue.add(next[slot]);
+				}
+			}
+		}
+		for (int state = 0; state < count; state++) {
+			for (int b = 'A'; b <= 'Z'; b++) {
+				next[state * ALPHABET + b] = next[state * ALPHABET + b - 'A' + 'a'];
+			}
+		}
+		return count;
+	}
+
+	private static int earlier(int a, int b) {
+		return a == NO_MATCH || b != NO_MATCH && b < a ? b : a;
+	}
+
+	private static byte fold(byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b - 'A' + 'a') : b;
+	}
+
+	public int getSignatureCount() {
+		return causes.length;
+	}
+
+	public int getStateCount() {
+		return states;
+	}
+
+	/**
+	 * Identifies the signature list, so saved scan states can be discarded
+	 * when it changes.
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getCause(int match) {
+		return causes[match];
+	}
+
+	public Scan newScan() {
+		return new Scan(0, NO_MATCH);
+	}
+
+	/**
+	 * Continues a scan saved with {@link Scan#getState()} and
+	 * {@link Scan#getMatch()}.
+	 */
+	public Scan resume(int state, int match) {
+		if (state < 0 || state >= states || match >= causes.length) {
+			return newScan();
+		}
+		return new Scan(state, match);
+	}
+
+	/**
+	 * The position of one scan in the automaton and the best match so far.
+	 */
+	public final class Scan {
+		private int state;
+		private int match;
+
+		private Scan(int state, int match) {
+			this.state = state;
+			this.match = match;
+		}
+
+		public void update(byte[] bytes, int offset, int length) {
+			int current = state;
+			int best = match;
+			for (int i = offset, end = offset + length; i < end; i++) {
+				current = next[current * ALPHABET + (bytes[i] & 0xFF)];
+				int hit = found[current];
+				if (hit != NO_MATCH && (best == NO_MATCH || hit < best)) {
+					best = hit;
+				}
+			}
+			state = current;
+			match = best;
+		}
+
+		public int getState() {
+			return state;
+		}
+
+		/**
+		 * @return the index of the first listed signature seen so far, or
+		 *         {@link SignatureMatcher#NO_MATCH}
+		 */
+		public int getMatch() {
+			return match;
+		}
+
+		/**
+		 * @return the cause of {@link #getMatch()}, or null
+		 */
+		public String getCause() {
+			return match == NO_MATCH ? null : causes[match];
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.mgic.qa;
+
+/**
+ * Map from strings to ints with open addressing and linear probing. Keys and
+ * values live in two parallel arrays, so an entry costs a reference and an
+ * int instead of a node and a boxed <code>Integer</code>. Entries are never
+ * removed.
+ */
+final class StringIntMap {
+	private static final int MIN_CAPACITY = 8;
+	private String[] keys;
+	private int[] values;
+	private int size;
+
+	StringIntMap() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * @param expected
+	 *            how many entries fit before the table first grows
+	 */
+	StringIntMap(int expected) {
+		allocate(Math.max(Integer.highestOneBit(Math.max(expected, 1) * 2 - 1) * 2, MIN_CAPACITY));
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the value of <code>key</code>, or <code>missing</code> if it
+	 *         has none
+	 */
+	int get(String key, int missing) {
+		int mask = keys.length - 1;
+		for (int slot = slot(key); keys[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot].equals(key)) {
+				return values[slot];
+			}
+		}
+		return missing;
+	}
+
+	void put(String key, int value) {
+		int mask = keys.length - 1;
+		int slot = slot(key);
+		for (; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot].equals(key)) {
+				values[slot] = value;
+				return;
+			}
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		// at most half full, so probe runs stay short
+		if (++size * 2 > keys.length) {
+			String[] oldKeys = keys;
+			int[] oldValues = values;
+			allocate(keys.length * 2);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					insert(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+	}
+
+	private void insert(String key, int value) {
+		int mask = keys.length - 1;
+		int slot = slot(key);
+		while (keys[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+	}
+
+	private int slot(String key) {
+		// spread the hash so keys sharing low bits do not cluster
+		int hash = key.hashCode() * 0x9E3779B9;
+		return (hash ^ hash >>> 16) & (keys.length - 1);
+	}
+
+	private void allocate(int capacity) {
+		keys = new String[capacity];
+		values = new int[capacity];
+	}
+}
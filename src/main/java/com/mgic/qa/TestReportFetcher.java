@@ -0,0 +1,74 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.util.EntityUtils;
+
+import com.mgic.qa.TestReportParser.TestReportSummary;
+import com.mgic.qa.utilities.APIUtilities;
+
+/**
+ * Streams a build's test report through a {@link TestReportParser}, one
+ * request per report.
+ */
+public class TestReportFetcher {
+	private final String username;
+	private final String password;
+	private final boolean recordCases;
+
+	public TestReportFetcher(String username, String password) {
+		this(username, password, false);
+	}
+
+	/**
+	 * @param recordCases
+	 *            keep every case's outcome in the summaries, see
+	 *            {@link TestReportParser#TestReportParser(boolean)}
+	 */
+	public TestReportFetcher(String username, String password, boolean recordCases) {
+		this.username = username;
+		this.password = password;
+		this.recordCases = recordCases;
+	}
+
+	/**
+	 * Whether the last build of <code>job</code> is worth a test report
+	 * request.
+	 */
+	static boolean hasReportToFetch(JobSummary job, boolean onlyWithResults) {
+		return job.hasBuilds() && (!onlyWithResults || job.hasTestResults());
+	}
+
+	/**
+	 * @return the last build's test report, or <code>null</code> if it has
+	 *         none or Jenkins answered with an error status
+	 * @throws IOException
+	 *             if the request failed or the report could not be parsed
+	 */
+	public TestReportSummary fetch(JobSummary job) throws IOException {
+		return fetch(job, job.getLastBuildNumber());
+	}
+
+	/**
+	 * Fetches the test report of any build of <code>job</code>, as
+	 * {@link #fetch(JobSummary)} does the last one's.
+	 */
+	public TestReportSummary fetch(final JobSummary job, final int buildNumber) throws IOException {
+		String url = MGICFileUtils.addTrailingSlash(job.getUrl()) + buildNumber
+				+ "/testReport/api/json?tree=" + URLEncoder.encode(TestReportParser.TREE, "UTF-8");
+		final TestReportParser parser = new TestReportParser(recordCases);
+		return new APIUtilities(url, username, password).returnResponseFromJenkins(response -> {
+			int status = response.getStatusLine().getStatusCode();
+			if (status != HttpStatus.SC_NOT_FOUND && (status < 200 || status >= 300)) {
+				// reported like a build without tests rather than failing the row
+				System.out.println("Could not fetch the test report of " + job.getName() + " #" + buildNumber
+						+ ": status " + status);
+				EntityUtils.consume(response.getEntity());
+				return null;
+			}
+			return parser.handleResponse(response);
+		});
+	}
+}
@@ -0,0 +1,275 @@
+package com.mgic.qa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads a Jenkins <code>testReport/api/json</code> document token by token
+ * and keeps only pass/fail/skip counters per child report and the names of
+ * the failing cases. Memory use does not depend on the size of the suite,
+ * unless every case's outcome is asked for with
+ * {@link #TestReportParser(boolean)}.
+ */
+public class TestReportParser implements ResponseHandler<TestReportParser.TestReportSummary> {
+	/** Only the fields the parser reads, for a testReport <code>tree=</code> query. */
+	public static final String TREE = "suites[cases[className,name,status]],"
+			+ "childReports[child[url],result[suites[cases[className,name,status]]]]";
+	public static final int MAX_FAILING_CASES = 200;
+	private static final JsonFactory JSON = new JsonFactory();
+	private final boolean recordCases;
+
+	public TestReportParser() {
+		this(false);
+	}
+
+	/**
+	 * @param recordCases
+	 *            also keep the name and outcome of every case that ran, for
+	 *            {@link FlakinessTracker}
+	 */
+	public TestReportParser(boolean recordCases) {
+		this.recordCases = recordCases;
+	}
+
+	/**
+	 * Parses the response body as it arrives. A 404 means the build published
+	 * no test results and yields <code>null</code>.
+	 */
+	@Override
+	public TestReportSummary handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (status == HttpStatus.SC_NOT_FOUND || entity == null) {
+			EntityUtils.consume(entity);
+			return null;
+		}
+		if (status < 200 || status >= 300) {
+			EntityUtils.consume(entity);
+			throw new ClientProtocolException("Unexpected response status: " + status);
+		}
+		InputStream content = entity.getContent();
+		try {
+			return parse(content);
+		} finally {
+			content.close();
+		}
+	}
+
+	public TestReportSummary parse(InputStream json) throws IOException {
+		JsonParser parser = JSON.createParser(json);
+		try {
+			TestReportSummary summary = new TestReportSummary(recordCases);
+			if (parser.nextToken() == JsonToken.START_OBJECT) {
+				parseReport(parser, summary, summary.getTotals());
+			}
+			return summary;
+		} finally {
+			parser.close();
+		}
+	}
+
+	private void parseReport(JsonParser parser, TestReportSummary summary, TestTotals totals) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (field.equals("suites") && value == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					parseSuite(parser, summary, totals);
+				}
+			} else if (field.equals("childReports") && value == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					parseChildReport(parser, summary);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private void parseChildReport(JsonParser parser, TestReportSummary summary) throws IOException {
+		TestTotals child = new TestTotals();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (field.equals("child") && value == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String childField = parser.getCurrentName();
+					parser.nextToken();
+					if (childField.equals("url")) {
+						child.name = parser.getValueAsString();
+					} else {
+						parser.skipChildren();
+					}
+				}
+			} else if (field.equals("result") && value == JsonToken.START_OBJECT) {
+				parseReport(parser, summary, child);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		summary.childReports.add(child);
+		summary.getTotals().add(child);
+	}
+
+	private void parseSuite(JsonParser parser, TestReportSummary summary, TestTotals totals) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (field.equals("cases") && value == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					parseCase(parser, summary, totals);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private void parseCase(JsonParser parser, TestReportSummary summary, TestTotals totals) throws IOException {
+		String className = null, name = null, status = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if (field.equals("className")) {
+				className = parser.getValueAsString();
+			} else if (field.equals("name")) {
+				name = parser.getValueAsString();
+			} else if (field.equals("status")) {
+				status = parser.getValueAsString();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		String caseName = className == null ? name : className + "." + name;
+		if ("FAILED".equals(status) || "REGRESSION".equals(status)) {
+			totals.failed++;
+			summary.addFailingCase(caseName);
+			summary.addCase(caseName, true);
+		} else if ("SKIPPED".equals(status)) {
+			totals.skipped++;
+		} else {
+			totals.passed++;
+			summary.addCase(caseName, false);
+		}
+	}
+
+	/**
+	 * Pass/fail/skip counters for a whole report or one of its child reports.
+	 */
+	public static class TestTotals {
+		private String name;
+		private int passed;
+		private int failed;
+		private int skipped;
+
+		public String getName() {
+			return name;
+		}
+
+		public int getPassed() {
+			return passed;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public int getSkipped() {
+			return skipped;
+		}
+
+		public int getTotal() {
+			return passed + failed + skipped;
+		}
+
+		void add(TestTotals other) {
+			passed += other.passed;
+			failed += other.failed;
+			skipped += other.skipped;
+		}
+	}
+
+	/**
+	 * The aggregated report: overall totals, totals per child report and up
+	 * to {@link TestReportParser#MAX_FAILING_CASES} failing case names.
+	 */
+	public static class TestReportSummary {
+		private final TestTotals totals = new TestTotals();
+		private final List<TestTotals> childReports = new ArrayList<TestTotals>();
+		private final List<String> failingCases = new ArrayList<String>();
+		private final List<String> cases;
+		private final BitSet failedCases;
+
+		TestReportSummary(boolean recordCases) {
+			cases = recordCases ? new ArrayList<String>() : null;
+			failedCases = recordCases ? new BitSet() : null;
+		}
+
+		public TestTotals getTotals() {
+			return totals;
+		}
+
+		public List<TestTotals> getChildReports() {
+			return Collections.unmodifiableList(childReports);
+		}
+
+		public List<String> getFailingCases() {
+			return Collections.unmodifiableList(failingCases);
+		}
+
+		/**
+		 * @return how many failing case names were dropped past the cap
+		 */
+		public int getOmittedFailingCases() {
+			return totals.failed - failingCases.size();
+		}
+
+		/**
+		 * @return whether the outcome of every case that ran was kept
+		 */
+		public boolean hasCaseResults() {
+			return cases != null;
+		}
+
+		/**
+		 * @return the names of the cases that ran, skipped cases excluded
+		 */
+		public List<String> getCaseNames() {
+			return Collections.unmodifiableList(cases);
+		}
+
+		public boolean isCaseFailed(int index) {
+			return failedCases.get(index);
+		}
+
+		void addCase(String name, boolean failed) {
+			if (cases != null) {
+				if (failed) {
+					failedCases.set(cases.size());
+				}
+				cases.add(name);
+			}
+		}
+
+		void addFailingCase(String name) {
+			if (failingCases.size() < MAX_FAILING_CASES) {
+				failingCases.add(name);
+			}
+		}
+	}
+}
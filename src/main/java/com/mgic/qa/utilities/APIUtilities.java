@@ -1,39 +1,38 @@
 package com.mgic.qa.utilities;
 
 
-import java.io.Closeable;
 import java.io.IOException;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 public class APIUtilities {
 
 private String url = "";
-private CloseableHttpClient httpclient;
 private String response;
 private HttpResponse httpResponse;
+private String username;
+private String password;
 
 public APIUtilities(String url) {
 	super();
 	this.url = url;
 }
 
+public APIUtilities(String url, String username, String password) {
+	this(url);
+	this.username = username;
+	this.password = password;
+}
+
 public String returnResponseFromGetAsString() throws IOException {
     HttpGet httpget = new HttpGet(url);
     this.setResponse(httpget);
@@ -46,63 +45,88 @@ public String returnResponseFromJenkinsAsString() throws IOException {
 	return response;
 }
 
+/**
+ * Hands the Jenkins response to <code>handler</code> without buffering it, so
+ * large bodies can be consumed as a stream.
+ */
+public <T> T returnResponseFromJenkins(ResponseHandler<T> handler) throws IOException {
+	HttpGet httpget = new HttpGet(url);
+	this.addJenkinsCredentials(httpget);
+	return SharedHttpClient.getClient().execute(httpget, handler);
+}
+
+/**
+ * Like {@link #returnResponseFromJenkins(ResponseHandler)}, but asks only for
+ * the bytes from <code>firstByte</code> on. A server that honours the range
+ * answers <code>206 Partial Content</code>; one that does not sends the whole
+ * body with <code>200</code>.
+ */
+public <T> T returnResponseFromJenkins(long firstByte, ResponseHandler<T> handler) throws IOException {
+	HttpGet httpget = new HttpGet(url);
+	this.addJenkinsCredentials(httpget);
+	if (firstByte > 0) {
+		httpget.setHeader(HttpHeaders.RANGE, "bytes=" + firstByte + "-");
+	}
+	return SharedHttpClient.getClient().execute(httpget, handler);
+}
+
+/**
+ * Reads a 2xx body as a string. When a cached copy of the URL was offered as
+ * validators, a 304 returns the cached body instead, and a new 2xx body
+ * replaces the cached one under <code>key</code>.
+ */
+private static ResponseHandler<String> stringResponseHandler(final String key, final ResponseCache.Entry cached) {
+	return new ResponseHandler<String>() {
+
+		@Override
+		public String handleResponse(final HttpResponse response) throws ClientProtocolException, IOException {
+			int status = response.getStatusLine().getStatusCode();
+			if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+				return cached.getBody();
+			}
+			if (status >= 200 && status < 300) {
+				HttpEntity entity = response.getEntity();
+				String body = entity != null ? EntityUtils.toString(entity) : null;
+				ResponseCache.getShared().put(key, response, body);
+				return body;
+			} else {
+				throw new ClientProtocolException("Unexpected response status: " + status);
+			}
+		}
+	};
+}
+
 private void setResponse(HttpRequestBase requestTypeObject) throws IOException{
 	int timeout = 5;
 	RequestConfig config = RequestConfig.custom()
 			  .setConnectTimeout(timeout * 1000)
 			  .setConnectionRequestTimeout(timeout * 1000)
 			  .setSocketTimeout(timeout * 1000).build();
-			httpclient = HttpClientBuilder.create().setDefaultRequestConfig(config).build();
-
-	try {
-		ResponseHandler<String> responseHandler = new ResponseHandler<String>() {
-
-            @Override
-            public String handleResponse(
-                    final HttpResponse response) throws ClientProtocolException, IOException {
-                int status = response.getStatusLine().getStatusCode();
-                if (status >= 200 && status < 300) {
-                    HttpEntity entity = response.getEntity();
-                    return entity != null ? EntityUtils.toString(entity) : null;
-                } else {
-                    throw new ClientProtocolException("Unexpected response status: " + status);
-                }
-            }
-
-        };
-        response = httpclient.execute(requestTypeObject, responseHandler);
-        } finally {
-        httpclient.close();
-        	}
+	requestTypeObject.setConfig(config);
+	response = this.executeConditionally(requestTypeObject);
 	}
 
 	private void setResponseFromJenkins(HttpRequestBase requestTypeObject) throws ClientProtocolException, IOException {
-		CredentialsProvider provider = new BasicCredentialsProvider();
-		UsernamePasswordCredentials credentials = new UsernamePasswordCredentials("benjmeadows", "W3HbzFNDpS3W");
-		provider.setCredentials(AuthScope.ANY, credentials);
-	
-		CloseableHttpClient client = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
-
-		try {
-			ResponseHandler<String> responseHandler = new ResponseHandler<String>() {
-
-	            @Override
-	            public String handleResponse(
-	                    final HttpResponse response) throws ClientProtocolException, IOException {
-	                int status = response.getStatusLine().getStatusCode();
-	                if (status >= 200 && status < 300) {
-	                    HttpEntity entity = response.getEntity();
-	                    return entity != null ? EntityUtils.toString(entity) : null;
-	                } else {
-	                    throw new ClientProtocolException("Unexpected response status: " + status);
-	                }
-	            }
-
-	        };
-	        response = client.execute(requestTypeObject, responseHandler);
-	        } finally {
-	        	client.close();
-	        }
+		this.addJenkinsCredentials(requestTypeObject);
+		response = this.executeConditionally(requestTypeObject);
+	}
+
+	private String executeConditionally(HttpRequestBase requestTypeObject) throws IOException {
+		// an unchanged resource then costs a header exchange instead of the whole body
+		String key = ResponseCache.key(url, username);
+		ResponseCache.Entry cached = ResponseCache.getShared().get(key);
+		if (cached != null) {
+			cached.addValidators(requestTypeObject);
+		}
+		return SharedHttpClient.getClient().execute(requestTypeObject, stringResponseHandler(key, cached));
+	}
+
+	private void addJenkinsCredentials(HttpRequestBase requestTypeObject) {
+		// without explicit credentials the shared client adds the registered ones;
+		// a blank username means anonymous, as in SharedHttpClient.registerCredentials
+		if (username != null && !username.isEmpty()) {
+			requestTypeObject.setHeader(HttpHeaders.AUTHORIZATION, SharedHttpClient.basicAuthHeader(username, password));
+		}
 	}
 }
 
@@ -0,0 +1,245 @@
+package com.mgic.qa.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Remembers the body and validators (<code>ETag</code>,
+ * <code>Last-Modified</code>) of GET responses by URL and user (see
+ * {@link #key(String, String)}), so a repeated request
+ * can be sent as a conditional GET and a <code>304 Not Modified</code> answered
+ * from the cache. Entries are kept in memory up to
+ * <code>qa.jenkins.responseCache.maxBytes</code>, least recently used first out,
+ * and also written to <code>qa.jenkins.responseCache.dir</code> if it is set,
+ * so the next run can revalidate instead of downloading.
+ * <p>
+ * Responses without a validator, or marked <code>no-store</code>, are not
+ * cached.
+ */
+public final class ResponseCache {
+
+public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+private static ResponseCache shared;
+private final long maxBytes;
+private final File dir;
+private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+private long bytes;
+
+/**
+ * @param maxBytes
+ *            the memory held by cached bodies before the least recently used
+ *            are dropped; 0 keeps nothing in memory
+ * @param dir
+ *            the directory of the on-disk tier, or null for none
+ */
+public ResponseCache(long maxBytes, File dir) {
+	this.maxBytes = maxBytes;
+	this.dir = dir;
+}
+
+/**
+ * @return the cache shared by every {@link APIUtilities}, configured from the
+ *         <code>qa.jenkins.responseCache.*</code> properties on first use
+ */
+public static synchronized ResponseCache getShared() {
+	if (shared == null) {
+		String dir = System.getProperty("qa.jenkins.responseCache.dir", "");
+		shared = new ResponseCache(Long.getLong("qa.jenkins.responseCache.maxBytes", DEFAULT_MAX_BYTES),
+				dir.isEmpty() ? null : new File(dir));
+	}
+	return shared;
+}
+
+/**
+ * Replaces the shared cache; null configures a new one from the properties
+ * on next use.
+ */
+public static synchronized void setShared(ResponseCache cache) {
+	shared = cache;
+}
+
+/**
+ * @return the key of <code>url</code> as fetched by <code>username</code>.
+ *         Users may see different bodies at one URL, so controllers reached
+ *         with different credentials never share an entry.
+ */
+public static String key(String url, String username) {
+	// a URL holds no spaces, so the key cannot be mistaken for another user's
+	return username == null || username.isEmpty() ? url : username + " " + url;
+}
+
+/**
+ * @return the cached response for <code>url</code>, from memory or else from
+ *         disk, or null
+ */
+public Entry get(String url) {
+	synchronized (this) {
+		Entry entry = entries.get(url);
+		if (entry != null || dir == null) {
+			return entry;
+		}
+	}
+	Entry entry = read(url);
+	if (entry != null) {
+		remember(url, entry);
+	}
+	return entry;
+}
+
+/**
+ * Caches a successful response's body if it carries a validator.
+ *
+ * @return whether the response was cached
+ */
+public boolean put(String url, HttpResponse response, String body) {
+	Header cacheControl = response.getFirstHeader(HttpHeaders.CACHE_CONTROL);
+	if (body == null || cacheControl != null && cacheControl.getValue().contains("no-store")) {
+		return false;
+	}
+	Entry entry = new Entry(value(response, HttpHeaders.ETAG), value(response, HttpHeaders.LAST_MODIFIED), body);
+	if (entry.etag == null && entry.lastModified == null) {
+		return false;
+	}
+	remember(url, entry);
+	if (dir != null) {
+		write(url, entry);
+	}
+	return true;
+}
+
+public synchronized int size() {
+	return entries.size();
+}
+
+public synchronized long getBytes() {
+	return bytes;
+}
+
+private synchronized void remember(String url, Entry entry) {
+	Entry previous = entries.remove(url);
+	if (previous != null) {
+		bytes -= previous.size();
+	}
+	if (entry.size() > maxBytes) {
+		return;
+	}
+	entries.put(url, entry);
+	bytes += entry.size();
+	Iterator<Entry> eldest = entries.values().iterator();
+	while (bytes > maxBytes) {
+		bytes -= eldest.next().size();
+		eldest.remove();
+	}
+}
+
+private File fileFor(String url) {
+	return new File(dir, DigestUtils.sha1Hex(url));
+}
+
+private Entry read(String url) {
+	File file = fileFor(url);
+	if (!file.isFile()) {
+		return null;
+	}
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+		// a hash collision or an old format is a miss, not an error
+		if (!in.readUTF().equals(url)) {
+			return null;
+		}
+		String etag = in.readUTF();
+		String lastModified = in.readUTF();
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new Entry(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified,
+				new String(body, StandardCharsets.UTF_8));
+	} catch (IOException e) {
+		return null;
+	}
+}
+
+private void write(String url, Entry entry) {
+	File file = fileFor(url);
+	File temp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+	try {
+		Files.createDirectories(dir.toPath());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeUTF(url);
+			out.writeUTF(entry.etag == null ? "" : entry.etag);
+			out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+			byte[] body = entry.body.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(body.length);
+			out.write(body);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	} catch (IOException e) {
+		// the disk tier is only an optimization; the memory copy still serves this run
+		temp.delete();
+		System.out.println("Could not write response cache entry " + file + ": " + e);
+	}
+}
+
+private static String value(HttpResponse response, String name) {
+	Header header = response.getFirstHeader(name);
+	return header != null ? header.getValue() : null;
+}
+
+/**
+ * One cached response.
+ */
+public static final class Entry {
+	private final String etag;
+	private final String lastModified;
+	private final String body;
+
+	Entry(String etag, String lastModified, String body) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.body = body;
+	}
+
+	/**
+	 * Makes <code>request</code> conditional on this entry's validators.
+	 */
+	public void addValidators(HttpRequestBase request) {
+		if (etag != null) {
+			request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+		}
+		if (lastModified != null) {
+			request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+		}
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	long size() {
+		return body.length() * 2L;
+	}
+}
+}
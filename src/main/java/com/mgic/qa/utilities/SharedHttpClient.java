@@ -0,0 +1,158 @@
+package com.mgic.qa.utilities;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+/**
+ * Holds the single, long-lived HTTP client used for every request made during
+ * a report run. Connections are pooled per host and kept alive between
+ * requests, responses are gzip-negotiated, and requests to the configured
+ * Jenkins controller carry preemptive Basic auth from the
+ * <code>qa.jenkins.*</code> properties. Further controllers add their credentials with
+ * {@link #registerCredentials(String, String, String)}.
+ */
+public final class SharedHttpClient {
+
+public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+public static final int DEFAULT_KEEP_ALIVE_SECONDS = 30;
+private static CloseableHttpClient client;
+private static final ConcurrentMap<String, String> AUTH_HEADERS = new ConcurrentHashMap<String, String>();
+
+private SharedHttpClient() {
+}
+
+public static synchronized CloseableHttpClient getClient() {
+	if (client == null) {
+		client = createClient();
+	}
+	return client;
+}
+
+/**
+ * Closes the pooled connections. The next call to {@link #getClient()} builds
+ * a fresh client.
+ */
+public static synchronized void shutdown() throws IOException {
+	if (client != null) {
+		client.close();
+		client = null;
+	}
+}
+
+/**
+ * Sends Basic auth preemptively on every request under <code>url</code>: to
+ * the same scheme, host and port, on a path below <code>url</code>'s. Where
+ * controllers share a host, the one with the longest path wins. Does nothing
+ * if <code>username</code> is empty.
+ */
+public static void registerCredentials(String url, String username, String password) {
+	if (url != null && !url.isEmpty() && username != null && !username.isEmpty()) {
+		URI uri = URI.create(url);
+		AUTH_HEADERS.put(authKey(uri.getScheme(), uri.getHost(), uri.getPort(), uri.getRawPath()),
+				basicAuthHeader(username, password));
+	}
+}
+
+/**
+ * @return the registered header whose controller URL is the longest prefix of
+ *         the request, or null if none is
+ */
+private static String authHeaderFor(String scheme, String host, int port, String path) {
+	String key = authKey(scheme, host, port, path);
+	String match = null;
+	for (String registered : AUTH_HEADERS.keySet()) {
+		if (key.startsWith(registered) && (match == null || registered.length() > match.length())) {
+			match = registered;
+		}
+	}
+	return match != null ? AUTH_HEADERS.get(match) : null;
+}
+
+/**
+ * @return <code>scheme://host:port/path/</code>, with the default port filled
+ *         in and a trailing slash, so a path only matches whole segments
+ */
+private static String authKey(String scheme, String host, int port, String path) {
+	scheme = scheme != null ? scheme.toLowerCase() : "http";
+	if (port < 0) {
+		port = scheme.equals("https") ? 443 : 80;
+	}
+	if (path == null || !path.endsWith("/")) {
+		path = (path != null ? path : "") + "/";
+	}
+	return scheme + "://" + host.toLowerCase() + ":" + port + path;
+}
+
+public static String basicAuthHeader(String username, String password) {
+	String token = username + ":" + password;
+	return "Basic " + Base64.encodeBase64String(token.getBytes(StandardCharsets.UTF_8));
+}
+
+private static CloseableHttpClient createClient() {
+	int maxPerHost = Integer.getInteger("qa.jenkins.maxConnectionsPerHost", DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	final long keepAliveMillis = TimeUnit.SECONDS
+			.toMillis(Integer.getInteger("qa.jenkins.keepAliveSeconds", DEFAULT_KEEP_ALIVE_SECONDS));
+
+	PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+	pool.setDefaultMaxPerRoute(maxPerHost);
+	pool.setMaxTotal(maxPerHost * 4);
+
+	ConnectionKeepAliveStrategy keepAlive = new ConnectionKeepAliveStrategy() {
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+		}
+	};
+
+	// content compression is on by default: Accept-Encoding: gzip,deflate is
+	// sent and compressed bodies are decoded transparently
+	HttpClientBuilder builder = HttpClientBuilder.create()
+			.setConnectionManager(pool)
+			.setKeepAliveStrategy(keepAlive)
+			.evictExpiredConnections()
+			.evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS);
+
+	registerCredentials(System.getProperty("qa.jenkins.dns", ""), System.getProperty("qa.jenkins.username", ""),
+			System.getProperty("qa.jenkins.password", ""));
+	builder.addInterceptorFirst(new PreemptiveAuthInterceptor());
+	return builder.build();
+}
+
+/**
+ * Sends the Basic auth header up front on requests to a registered Jenkins
+ * controller, so no request pays for a 401 challenge round trip.
+ */
+private static class PreemptiveAuthInterceptor implements HttpRequestInterceptor {
+
+	@Override
+	public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+		HttpHost target = HttpCoreContext.adapt(context).getTargetHost();
+		String header = target != null ? authHeaderFor(target.getSchemeName(), target.getHostName(),
+				target.getPort(), URI.create(request.getRequestLine().getUri()).getRawPath()) : null;
+		if (header != null && !request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+			request.addHeader(HttpHeaders.AUTHORIZATION, header);
+		}
+	}
+}
+}
@@ -0,0 +1,148 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mgic.qa.ArtifactFetcher.Artifact;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestArtifactFetcher {
+
+	private final List<String> requests = new ArrayList<String>();
+	private final byte[] payload = new byte[256 * 1024];
+	private HttpServer server;
+	private ExecutorService executor;
+	private boolean breakOff = true;
+
+	@Before
+	public void start() throws IOException {
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i * 31);
+		}
+		server = HttpServer.create(new InetSocketAddress(0), 0);
+		server.createContext("/", exchange -> {
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			requests.add(range == null ? "full" : range);
+			int from = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			if (from > 0) {
+				exchange.getResponseHeaders().set("Content-Range",
+						"bytes " + from + "-" + (payload.length - 1) + "/" + payload.length);
+			}
+			// chunked, so a transfer that stops early is seen as truncated
+			exchange.sendResponseHeaders(from > 0 ? 206 : 200, 0);
+			OutputStream out = exchange.getResponseBody();
+			if (breakOff) {
+				// the first transfer stops halfway, as if the connection dropped
+				breakOff = false;
+				out.write(payload, 0, payload.length / 2);
+				out.flush();
+				throw new IOException("connection dropped");
+			}
+			out.write(payload, from, payload.length - from);
+			out.close();
+			exchange.close();
+		});
+		server.start();
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void resumesAnInterruptedTransferWithARange() throws IOException {
+		File dir = Files.createTempDirectory("artifacts").toFile();
+		Artifact artifact = new Artifact(url("/job/a/7/"), "target/surefire-reports/TEST-a.xml",
+				DigestUtils.md5Hex(payload));
+		List<File> files = new ArtifactFetcher("", "", executor).fetchAll(Arrays.asList(artifact), dir);
+
+		assertArrayEquals(payload, Files.readAllBytes(files.get(0).toPath()));
+		assertEquals(new File(dir, "target/surefire-reports/TEST-a.xml"), files.get(0));
+		assertEquals(2, requests.size());
+		assertEquals("full", requests.get(0));
+		assertEquals("bytes=" + payload.length / 2 + "-", requests.get(1));
+		assertFalse(new File(files.get(0).getPath() + ArtifactFetcher.PART_SUFFIX).exists());
+
+		// already on disk: no further request
+		new ArtifactFetcher("", "", executor).fetchAll(Arrays.asList(artifact), dir);
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	public void discardsADownloadThatFailsItsChecksum() throws IOException {
+		breakOff = false;
+		File target = new File(Files.createTempDirectory("artifacts").toFile(), "coverage.xml");
+		try {
+			new ArtifactFetcher("", "", executor, 1).fetch(
+					new Artifact(url("/job/a/7"), "coverage.xml", DigestUtils.md5Hex("something else")), target);
+			fail("checksum mismatch not detected");
+		} catch (IOException e) {
+			assertFalse(target.exists());
+			assertFalse(new File(target.getPath() + ArtifactFetcher.PART_SUFFIX).exists());
+		}
+	}
+
+	@Test
+	public void listsMatchingArtifactsWithTheirFingerprints() throws IOException {
+		List<Artifact> artifacts = ArtifactFetcher.parseArtifacts("https://ci/job/a/7/", new ObjectMapper().readTree(
+				"{\"artifacts\":[{\"relativePath\":\"reports/TEST-a.xml\"},{\"relativePath\":\"app.jar\"},"
+						+ "{\"relativePath\":\"reports/my report.xml\"}],"
+						+ "\"fingerprint\":[{\"fileName\":\"TEST-a.xml\",\"hash\":\"abc\"}]}"),
+				JobFilter.compile("**.xml", ""));
+		assertEquals(2, artifacts.size());
+		assertEquals("abc", artifacts.get(0).getMd5());
+		assertNull(artifacts.get(1).getMd5());
+		assertEquals("https://ci/job/a/7/artifact/reports/my%20report.xml", artifacts.get(1).getUrl());
+	}
+
+	@Test
+	public void leavesArtifactsSharingAFileNameUnchecked() throws IOException {
+		List<Artifact> artifacts = ArtifactFetcher.parseArtifacts("https://ci/job/a/7/", new ObjectMapper().readTree(
+				"{\"artifacts\":[{\"relativePath\":\"module-a/target/jacoco.xml\"},"
+						+ "{\"relativePath\":\"module-b/target/jacoco.xml\"},{\"relativePath\":\"TEST-a.xml\"}],"
+						+ "\"fingerprint\":[{\"fileName\":\"jacoco.xml\",\"hash\":\"abc\"},"
+						+ "{\"fileName\":\"TEST-a.xml\",\"hash\":\"def\"}]}"),
+				JobFilter.compile("**.xml", ""));
+		assertEquals(3, artifacts.size());
+		assertNull(artifacts.get(0).getMd5());
+		assertNull(artifacts.get(1).getMd5());
+		assertEquals("def", artifacts.get(2).getMd5());
+	}
+
+	@Test
+	public void skipsArtifactsOutsideTheArchive() throws IOException {
+		List<Artifact> artifacts = ArtifactFetcher.parseArtifacts("https://ci/job/a/7/", new ObjectMapper().readTree(
+				"{\"artifacts\":[{\"relativePath\":\"../../etc/x.xml\"},{\"relativePath\":\"a/../../x.xml\"},"
+						+ "{\"relativePath\":\"/etc/x.xml\"},{\"relativePath\":\"a/..x.xml\"}]}"),
+				JobFilter.compile("**.xml", ""));
+		assertEquals(1, artifacts.size());
+		assertEquals("a/..x.xml", artifacts.get(0).getRelativePath());
+	}
+
+	private String url(String path) {
+		return "http://localhost:" + server.getAddress().getPort() + path;
+	}
+}
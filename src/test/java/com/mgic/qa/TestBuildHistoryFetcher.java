@@ -0,0 +1,117 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TestBuildHistoryFetcher {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	@Test
+	public void stopsPagingOnceBuildsLeaveTheMetricWindow() throws IOException {
+		// one build a day for a thousand days, newest first
+		FakeHistory history = new FakeHistory(1000, DAY);
+		List<BuildRecord> builds = history.fetchNewBuilds(job(1000), emptyCache());
+		assertEquals("[0-20, 20-40]", history.pages.toString());
+		assertEquals(40, builds.size());
+		assertEquals(1000, builds.get(0).getNumber());
+	}
+
+	@Test
+	public void alwaysFetchesTheNewestWindow() throws IOException {
+		FakeHistory history = new FakeHistory(100, 90 * DAY);
+		assertEquals(20, history.fetchNewBuilds(job(100), emptyCache()).size());
+		assertEquals("[0-20]", history.pages.toString());
+	}
+
+	@Test
+	public void stopsAtTheCachedHighWaterMark() throws IOException {
+		BuildCache cache = emptyCache();
+		List<BuildRecord> cached = new ArrayList<BuildRecord>();
+		cached.add(new BuildRecord(995, 0, 0, "SUCCESS", false, -1, -1, -1));
+		cache.merge("job", cached);
+		FakeHistory history = new FakeHistory(1000, 60000);
+		assertEquals(5, history.fetchNewBuilds(job(1000), cache).size());
+		assertEquals("[0-20]", history.pages.toString());
+	}
+
+	@Test
+	public void refetchesAJobWhoseNumbersStartedOver() throws IOException {
+		BuildCache cache = emptyCache();
+		List<BuildRecord> cached = new ArrayList<BuildRecord>();
+		cached.add(new BuildRecord(995, 0, 0, "SUCCESS", false, -1, -1, -1));
+		cache.merge("job", cached);
+		FakeHistory history = new FakeHistory(3, 60000);
+		assertEquals(3, history.fetchNewBuilds(job(3), cache).size());
+		assertEquals(JobSummary.NO_BUILD, cache.getHighWaterMark("job"));
+	}
+
+	@Test
+	public void dropsBuildsOutsideTheWindowAndHorizon() throws IOException {
+		BuildCache cache = BuildCache.load(new File("build/tmp/no-such-dir/builds.tsv"), 20,
+				RollingWindowMetrics.WINDOW_DAYS);
+		FakeHistory history = new FakeHistory(1000, DAY);
+		cache.merge("job", history.fetchNewBuilds(job(1000), cache));
+		List<BuildRecord> kept = cache.getBuilds("job");
+		// 40 fetched; the newest 20 and those of the last 30 days are kept
+		assertEquals(30, kept.size());
+		assertEquals(1000, kept.get(0).getNumber());
+		assertEquals(1000, cache.getHighWaterMark("job"));
+	}
+
+	private static JobSummary job(int lastBuild) {
+		JobSummary job = new JobSummary();
+		job.setName("job");
+		job.setUrl("https://ci.example.com/job/job/");
+		job.setLastBuildNumber(lastBuild);
+		return job;
+	}
+
+	private static BuildCache emptyCache() throws IOException {
+		return BuildCache.load(new File("build/tmp/no-such-dir/builds.tsv"));
+	}
+
+	/**
+	 * Serves <code>count</code> builds, <code>interval</code> apart and
+	 * ending now, and records the ranges asked for.
+	 */
+	private static class FakeHistory extends BuildHistoryFetcher {
+		private final List<String> pages = new ArrayList<String>();
+		private final int count;
+		private final long interval;
+		// a minute back, so no build sits exactly on the horizon
+		private final long now = System.currentTimeMillis() - 60000;
+
+		FakeHistory(int count, long interval) {
+			super("", "", 20, RollingWindowMetrics.WINDOW_DAYS);
+			this.count = count;
+			this.interval = interval;
+		}
+
+		@Override
+		JsonNode fetchPage(String jobUrl, int start, int end) {
+			pages.add(start + "-" + end);
+			ArrayNode builds = MAPPER.createArrayNode();
+			for (int i = start; i < Math.min(end, count); i++) {
+				ObjectNode build = builds.addObject();
+				build.put("number", count - i);
+				build.put("timestamp", now - i * interval);
+				build.put("result", "SUCCESS");
+			}
+			return builds;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import com.mgic.qa.ConsoleLogScanner.LogPosition;
+import com.mgic.qa.SignatureMatcher.Scan;
+
+public class TestConsoleLogScanner {
+
+	private static final SignatureMatcher MATCHER = new SignatureMatcher(Arrays.asList("# most specific first",
+			"Out of memory\tOutOfMemoryError", "Disk full\tNo space left", "", "Aborted\taborted by",
+			"Short\the", "Short\tshe", "Short\thers"));
+
+	@Test
+	public void matchesSignaturesAcrossChunks() {
+		Scan scan = MATCHER.newScan();
+		byte[] log = "[INFO] ok\njava.lang.OutOfMem".getBytes(StandardCharsets.UTF_8);
+		scan.update(log, 0, log.length);
+		assertNull(scan.getCause());
+		byte[] rest = "oryError: Java heap space\n".getBytes(StandardCharsets.UTF_8);
+		Scan resumed = MATCHER.resume(scan.getState(), scan.getMatch());
+		resumed.update(rest, 0, rest.length);
+		assertEquals("Out of memory", resumed.getCause());
+	}
+
+	@Test
+	public void reportsTheFirstListedSignatureIgnoringCase() {
+		assertEquals("Disk full", scan("ABORTED BY user\nwrite failed: no SPACE LEFT on device"));
+		assertEquals("Aborted", scan("Aborted by admin"));
+		assertEquals("Short", scan("ushers"));
+		assertNull(scan("all good"));
+		assertEquals(6, MATCHER.getSignatureCount());
+	}
+
+	@Test
+	public void readsOnlyNewBytesOfARunningBuild() throws IOException {
+		ConsoleLogScanner scanner = new ConsoleLogScanner(MATCHER, "", "");
+		LogPosition first = scanner.read(response("Started\nNo space", 17, true),
+				new LogPosition(7, 0, 0, SignatureMatcher.NO_MATCH, false));
+		assertEquals(17, first.getOffset());
+		assertFalse(first.isComplete());
+
+		LogPosition second = scanner.read(response(" left on device\nFinished: FAILURE\n", 50, false), first);
+		assertEquals(50, second.getOffset());
+		assertTrue(second.isComplete());
+
+		File file = new File(Files.createTempDirectory("console").toFile(), "console-logs.tsv");
+		scanner.save(file);
+		assertTrue(ConsoleLogScanner.load(file, MATCHER, "", "") != null);
+	}
+
+	@Test
+	public void keepsThePositionWhenTheServerErrs() throws IOException {
+		LogPosition from = new LogPosition(7, 17, 0, SignatureMatcher.NO_MATCH, false);
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+		response.setEntity(new ByteArrayEntity(new byte[0]));
+		assertSame(from, new ConsoleLogScanner(MATCHER, "", "").read(response, from));
+	}
+
+	@Test
+	public void scansOnlyUnsuccessfulBuilds() {
+		JobSummary job = new JobSummary();
+		assertFalse(ConsoleLogScanner.hasLogToScan(job));
+		job.setLastBuildNumber(3);
+		job.setLastBuildResult("SUCCESS");
+		assertFalse(ConsoleLogScanner.hasLogToScan(job));
+		job.setLastBuildResult("FAILURE");
+		assertTrue(ConsoleLogScanner.hasLogToScan(job));
+		job.setLastBuildResult(null);
+		assertTrue(ConsoleLogScanner.hasLogToScan(job));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSignaturesWithoutACause() {
+		new SignatureMatcher(Arrays.asList("OutOfMemoryError"));
+	}
+
+	private static String scan(String log) {
+		Scan scan = MATCHER.newScan();
+		byte[] bytes = log.getBytes(StandardCharsets.UTF_8);
+		scan.update(bytes, 0, bytes.length);
+		return scan.getCause();
+	}
+
+	private static HttpResponse response(String text, long textSize, boolean moreData) {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new ByteArrayEntity(text.getBytes(StandardCharsets.UTF_8)));
+		response.setHeader("X-Text-Size", String.valueOf(textSize));
+		if (moreData) {
+			response.setHeader("X-More-Data", "true");
+		}
+		return response;
+	}
+}
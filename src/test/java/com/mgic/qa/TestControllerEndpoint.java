@@ -0,0 +1,43 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestControllerEndpoint {
+
+	@After
+	public void clearProperties() {
+		for (String key : new String[] { "qa.jenkins.controllers", "qa.jenkins.controller.ci.dns",
+				"qa.jenkins.controller.ci.maxConcurrentRequests", "qa.jenkins.controller.release.dns",
+				"qa.jenkins.controller.release.username" }) {
+			System.clearProperty(key);
+		}
+	}
+
+	@Test
+	public void readsEachControllerWithFallbacks() {
+		System.setProperty("qa.jenkins.controllers", "ci, release");
+		System.setProperty("qa.jenkins.controller.ci.dns", "https://ci.example.com/");
+		System.setProperty("qa.jenkins.controller.ci.maxConcurrentRequests", "3");
+		System.setProperty("qa.jenkins.controller.release.dns", "https://release.example.com/");
+		System.setProperty("qa.jenkins.controller.release.username", "releaser");
+		List<ControllerEndpoint> controllers = ControllerEndpoint.listFromSystemProperties();
+		assertEquals(2, controllers.size());
+		assertEquals("ci", controllers.get(0).getName());
+		assertEquals(3, controllers.get(0).getMaxConcurrentRequests());
+		assertEquals("https://release.example.com/", controllers.get(1).getUrl());
+		assertEquals("releaser", controllers.get(1).getUsername());
+		assertEquals(Integer.getInteger("qa.jenkins.maxConcurrentRequests",
+				JenkinsReporting.DEFAULT_MAX_CONCURRENT_REQUESTS).intValue(), controllers.get(1).getMaxConcurrentRequests());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsControllerWithoutUrl() {
+		System.setProperty("qa.jenkins.controllers", "ci");
+		ControllerEndpoint.listFromSystemProperties();
+	}
+}
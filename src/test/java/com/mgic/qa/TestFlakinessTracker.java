@@ -0,0 +1,123 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.mgic.qa.FlakinessTracker.FlakyTest;
+import com.mgic.qa.TestReportParser.TestReportSummary;
+
+public class TestFlakinessTracker {
+
+	@Test
+	public void ranksTestsByFlipRate() throws IOException {
+		FlakinessTracker tracker = new FlakinessTracker(8);
+		String[] flaky = { "FAILED", "PASSED", "FAILED", "PASSED", "PASSED", "FAILED" };
+		for (int build = 0; build < flaky.length; build++) {
+			tracker.record("job", build + 1, report(flaky[build], build == 2 ? "FAILED" : "PASSED", "PASSED"));
+		}
+		assertEquals(3, tracker.size());
+
+		List<FlakyTest> ranked = tracker.rank(10, 2);
+		assertEquals(2, ranked.size());
+		FlakyTest first = ranked.get(0);
+		assertEquals("job", first.getJobName());
+		assertEquals("suite.flaky", first.getCaseName());
+		assertEquals(6, first.getRuns());
+		assertEquals(3, first.getFailures());
+		assertEquals(4, first.getFlips());
+		assertEquals(0.8, first.getFlipRate(), 1e-9);
+		assertTrue(first.isLastFailed());
+		assertEquals("suite.once", ranked.get(1).getCaseName());
+		assertEquals(2, ranked.get(1).getFlips());
+
+		assertEquals(1, tracker.rank(1, 2).size());
+		assertEquals(0, tracker.rank(10, 7).size());
+	}
+
+	@Test
+	public void recordsEachBuildOnce() throws IOException {
+		FlakinessTracker tracker = new FlakinessTracker(8);
+		assertTrue(tracker.record("job", 5, report("FAILED", "PASSED", "PASSED")));
+		assertFalse(tracker.record("job", 5, report("PASSED", "PASSED", "PASSED")));
+		assertFalse(tracker.record("job", 4, report("PASSED", "PASSED", "PASSED")));
+		assertFalse(tracker.record("other", 1, new TestReportParser().parse(json("PASSED", "PASSED", "PASSED"))));
+		assertEquals(0, tracker.rank(10, 1).size());
+	}
+
+	@Test
+	public void keepsOnlyTheWindowAcrossSaveAndLoad() throws IOException {
+		FlakinessTracker tracker = new FlakinessTracker(4);
+		for (int build = 1; build <= 6; build++) {
+			// flips only in the first two builds, which fall out of the window
+			tracker.record("job", build, report(build == 1 ? "FAILED" : "PASSED", "PASSED", "SKIPPED"));
+		}
+		assertEquals(0, tracker.rank(10, 1).size());
+		tracker.record("job", 7, report("FAILED", "PASSED", "SKIPPED"));
+
+		File file = new File(Files.createTempDirectory("flakiness").toFile(), "flakiness.tsv");
+		tracker.save(file);
+		FlakinessTracker loaded = FlakinessTracker.load(file, 4);
+		assertEquals(2, loaded.size());
+		FlakyTest test = loaded.rank(10, 1).get(0);
+		assertEquals(4, test.getRuns());
+		assertEquals(1, test.getFlips());
+		assertFalse(loaded.record("job", 7, report("PASSED", "PASSED", "PASSED")));
+	}
+
+	@Test
+	public void sharesCaseNamesWithTheJobStore() throws IOException {
+		JobStore store = new JobStore();
+		String stored = store.getInterner().intern(new String("suite.flaky"));
+		FlakinessTracker tracker = new FlakinessTracker(8, store.getInterner());
+		tracker.record("job", 1, report("FAILED", "PASSED", "PASSED"));
+		tracker.record("job", 2, report("PASSED", "PASSED", "PASSED"));
+		assertSame(stored, tracker.rank(10, 2).get(0).getCaseName());
+	}
+
+	@Test
+	public void keepsCasesApartAcrossJobsAsTablesGrow() throws IOException {
+		FlakinessTracker tracker = new FlakinessTracker(8);
+		for (int job = 0; job < 100; job++) {
+			tracker.record("job" + job, 1, report("FAILED", "PASSED", "PASSED"));
+			tracker.record("job" + job, 2, report(job % 2 == 0 ? "PASSED" : "FAILED", "PASSED", "PASSED"));
+		}
+		assertEquals(300, tracker.size());
+		List<FlakyTest> ranked = tracker.rank(1000, 2);
+		assertEquals(50, ranked.size());
+		for (FlakyTest test : ranked) {
+			assertEquals("suite.flaky", test.getCaseName());
+			assertEquals(0, Integer.parseInt(test.getJobName().substring(3)) % 2);
+		}
+	}
+
+	@Test
+	public void countsFlipsBetweenAdjacentRunsOnly() {
+		assertEquals(0, FlakinessTracker.flips(0b1, 1));
+		assertEquals(1, FlakinessTracker.flips(0b10, 2));
+		assertEquals(0, FlakinessTracker.flips(0b10, 1));
+		assertEquals(63, FlakinessTracker.flips(0x5555555555555555L, 64));
+	}
+
+	private static TestReportSummary report(String flaky, String once, String stable) throws IOException {
+		return new TestReportParser(true).parse(json(flaky, once, stable));
+	}
+
+	private static ByteArrayInputStream json(String flaky, String once, String stable) {
+		String json = "{\"suites\":[{\"cases\":["
+				+ "{\"className\":\"suite\",\"name\":\"flaky\",\"status\":\"" + flaky + "\"},"
+				+ "{\"className\":\"suite\",\"name\":\"once\",\"status\":\"" + once + "\"},"
+				+ "{\"className\":\"suite\",\"name\":\"stable\",\"status\":\"" + stable + "\"}]}]}";
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+}
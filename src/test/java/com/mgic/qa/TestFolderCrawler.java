@@ -0,0 +1,114 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class TestFolderCrawler {
+
+	private static final String FOLDER = "com.cloudbees.hudson.plugins.folder.Folder";
+	private static final String MULTIBRANCH = "org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject";
+	private static final String JOB = "hudson.model.FreeStyleProject";
+
+	@Test
+	public void descendsIntoFoldersAndMultibranchProjects() throws Exception {
+		FakeHarvester harvester = new FakeHarvester();
+		harvester.folder("root", entry("a", JOB), entry("team", FOLDER));
+		harvester.folder("team", entry("team/b", JOB), entry("team/app", MULTIBRANCH));
+		harvester.folder("team/app", entry("team/app/master", JOB), entry("team/app/feature", JOB));
+		List<String> names = crawl(harvester, FolderCrawler.DEFAULT_MAX_DEPTH);
+		assertEquals(Arrays.asList("a", "team/b", "team/app/master", "team/app/feature"), names);
+	}
+
+	@Test
+	public void stopsAtTheDepthLimit() throws Exception {
+		FakeHarvester harvester = new FakeHarvester();
+		harvester.folder("root", entry("a", JOB), entry("one", FOLDER));
+		harvester.folder("one", entry("one/b", JOB), entry("one/two", FOLDER));
+		harvester.folder("one/two", entry("one/two/c", JOB));
+		assertEquals(Arrays.asList("a", "one/b"), crawl(harvester, 1));
+	}
+
+	@Test
+	public void deduplicatesByFullName() throws Exception {
+		FakeHarvester harvester = new FakeHarvester();
+		harvester.folder("root", entry("x", FOLDER), entry("y", FOLDER));
+		harvester.folder("x", entry("shared", JOB));
+		harvester.folder("y", entry("shared", JOB));
+		assertEquals(Arrays.asList("shared"), crawl(harvester, FolderCrawler.DEFAULT_MAX_DEPTH));
+	}
+
+	@Test
+	public void neverListsExcludedFolders() throws Exception {
+		FakeHarvester harvester = new FakeHarvester();
+		harvester.folder("root", entry("a", JOB), entry("JenkinsReporting", JOB), entry("legacy", FOLDER));
+		harvester.folder("legacy", entry("legacy/old", JOB));
+		JobFilter filter = JobFilter.compile("", "JenkinsReporting,folder:legacy");
+		assertEquals(Arrays.asList("a"), crawl(harvester, filter, FolderCrawler.DEFAULT_MAX_DEPTH));
+		assertFalse(harvester.listed.contains("legacy"));
+	}
+
+	@Test
+	public void includedFolderKeepsItsChildren() throws Exception {
+		FakeHarvester harvester = new FakeHarvester();
+		harvester.folder("root", entry("a", JOB), entry("team", FOLDER), entry("other", FOLDER));
+		harvester.folder("team", entry("team/b", JOB), entry("team/c-nightly", JOB));
+		harvester.folder("other", entry("other/d", JOB));
+		JobFilter filter = JobFilter.compile("folder:team", "*/*-nightly");
+		assertEquals(Arrays.asList("team/b"), crawl(harvester, filter, FolderCrawler.DEFAULT_MAX_DEPTH));
+	}
+
+	private static List<String> crawl(FakeHarvester harvester, int depth) throws IOException {
+		return crawl(harvester, JobFilter.compile("", ""), depth);
+	}
+
+	private static List<String> crawl(FakeHarvester harvester, JobFilter filter, int depth) throws IOException {
+		FolderCrawler crawler = new FolderCrawler(harvester, filter, depth, 4);
+		try {
+			List<String> names = new ArrayList<String>();
+			for (JobSummary summary : crawler.crawl("root")) {
+				names.add(summary.getName());
+			}
+			return names;
+		} finally {
+			crawler.shutdown();
+		}
+	}
+
+	private static JobSummary entry(String fullName, String jobClass) {
+		JobSummary summary = new JobSummary();
+		summary.setName(fullName);
+		summary.setUrl(fullName);
+		summary.setJobClass(jobClass);
+		return summary;
+	}
+
+	private static class FakeHarvester extends BulkJobHarvester {
+		private final Map<String, List<JobSummary>> folders = new HashMap<String, List<JobSummary>>();
+		private final Set<String> listed = ConcurrentHashMap.newKeySet();
+
+		FakeHarvester() {
+			super("", "", DEFAULT_PAGE_SIZE);
+		}
+
+		void folder(String url, JobSummary... children) {
+			folders.put(url, Arrays.asList(children));
+		}
+
+		@Override
+		public List<JobSummary> harvest(String baseUrl) {
+			listed.add(baseUrl);
+			return folders.get(baseUrl);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.mgic.qa;
 
+import static org.junit.Assume.assumeFalse;
+
 import org.junit.Test;
 
 public class TestJenkinsReporting {
@@ -8,6 +10,15 @@ public class TestJenkinsReporting {
 	public void test() throws Exception {
 		JenkinsReporting jr = new JenkinsReporting();
 		jr.printBuildDetails();
+		jr.awaitMailDelivery();
+	}
+
+	@Test
+	public void federated() throws Exception {
+		assumeFalse(System.getProperty("qa.jenkins.controllers", "").isEmpty());
+		FederatedReporting fr = new FederatedReporting();
+		fr.printBuildDetails();
+		fr.awaitMailDelivery();
 	}
 
 }
@@ -0,0 +1,49 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestJobFilter {
+
+	@Test
+	public void globsStayWithinOneFolderLevel() {
+		JobFilter filter = JobFilter.compile("", "team/*-nightly");
+		assertTrue(filter.isExcluded("team/app-nightly"));
+		assertFalse(filter.isExcluded("team/sub/app-nightly"));
+		assertFalse(filter.isExcluded("team/app-nightly.old"));
+	}
+
+	@Test
+	public void doubleStarCrossesFolderLevels() {
+		JobFilter filter = JobFilter.compile("", "team/**");
+		assertTrue(filter.isExcluded("team/sub/app"));
+		assertFalse(filter.isExcluded("teams/app"));
+	}
+
+	@Test
+	public void regexAndFolderRules() {
+		JobFilter filter = JobFilter.compile("regex:(qa|uat)-.*, folder:shared.libs", "");
+		assertTrue(filter.isIncluded("qa-smoke"));
+		assertTrue(filter.isIncluded("shared.libs"));
+		assertFalse(filter.isIncluded("sharedXlibs"));
+		assertFalse(filter.isIncluded("prod-smoke"));
+	}
+
+	@Test
+	public void excludesWinOverIncludes() {
+		JobFilter filter = JobFilter.compile("qa-*", "qa-broken");
+		assertTrue(filter.accepts("qa-smoke", false));
+		assertFalse(filter.accepts("qa-broken", false));
+		assertFalse(filter.accepts("prod", false));
+		assertTrue(filter.accepts("prod", true));
+	}
+
+	@Test
+	public void emptyRulesAcceptEverything() {
+		JobFilter filter = JobFilter.compile("", null);
+		assertFalse(filter.hasIncludes());
+		assertTrue(filter.accepts("anything/at/all", false));
+	}
+}
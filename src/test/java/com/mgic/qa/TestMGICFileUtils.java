@@ -0,0 +1,80 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class TestMGICFileUtils {
+
+	@Test
+	public void iteratesRecordsAcrossMappedChunks() throws IOException {
+		File file = File.createTempFile("records", ".log");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "first\r\nsecond line\n\nt\u00e9st\nlast".getBytes(StandardCharsets.UTF_8));
+
+		// 11 byte chunks split "second line" and the two bytes of the accented character
+		MappedByteBuffer[] chunks = MGICFileUtils.mapReadOnly(file, 11);
+		assertEquals(3, chunks.length);
+		List<String> records = new ArrayList<String>();
+		for (ByteBuffer record : MGICFileUtils.iterateRecords(chunks, (byte) '\n')) {
+			records.add(StandardCharsets.UTF_8.decode(record).toString());
+		}
+		assertEquals("[first\r, second line, , t\u00e9st, last]", records.toString());
+
+		List<String> lines = new ArrayList<String>();
+		for (String line : MGICFileUtils.iterateLines(file)) {
+			lines.add(line);
+		}
+		assertEquals("[first, second line, , t\u00e9st, last]", lines.toString());
+	}
+
+	@Test
+	public void mapsEmptyFiles() throws IOException {
+		File file = File.createTempFile("empty", ".log");
+		file.deleteOnExit();
+		assertEquals(0, MGICFileUtils.mapReadOnly(file).length);
+		assertEquals(false, MGICFileUtils.iterateLines(file).iterator().hasNext());
+	}
+
+	@Test
+	public void streamsBase64BothWays() throws IOException {
+		byte[] data = new byte[100 * 1000 + 1];
+		new Random(7).nextBytes(data);
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		MGICFileUtils.encodeBase64(new ByteArrayInputStream(data), encoded);
+		assertEquals(Base64.encodeBase64String(data), encoded.toString("US-ASCII"));
+
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		assertEquals(data.length, MGICFileUtils.decodeBase64(new ByteArrayInputStream(encoded.toByteArray()), decoded));
+		assertArrayEquals(data, decoded.toByteArray());
+
+		File file = File.createTempFile("decoded", ".bin");
+		file.deleteOnExit();
+		MGICFileUtils.writeBase64StringToFile(file, encoded.toString("US-ASCII"));
+		assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+		assertEquals(encoded.toString("US-ASCII"),
+				MGICFileUtils.readFileInputStreamToBase64String(new FileInputStream(file)));
+	}
+
+	@Test
+	public void convertsStringsWithoutTrailingBytes() throws IOException {
+		ByteArrayInputStream stream = MGICFileUtils.convertStringToInputStream("caf\u00e9 report");
+		assertArrayEquals("caf\u00e9 report".getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(stream));
+	}
+}
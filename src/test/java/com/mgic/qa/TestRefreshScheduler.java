@@ -0,0 +1,99 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.mgic.qa.RefreshScheduler.ScheduledJob;
+
+public class TestRefreshScheduler {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+	private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+	private static final ControllerEndpoint CONTROLLER = new ControllerEndpoint("", "https://ci.example.com/", "", "", 1);
+
+	@Test
+	public void checksRecentlyBuiltJobsFirst() {
+		RefreshScheduler scheduler = new RefreshScheduler(MINUTE, 360 * MINUTE);
+		scheduler.schedule(snapshot(summary("weekly", 3, NOW - TimeUnit.DAYS.toMillis(6)),
+				summary("hot", 900, NOW - 10 * MINUTE)), NOW);
+
+		assertNull(scheduler.poll(NOW));
+		ScheduledJob first = scheduler.poll(NOW + 5 * MINUTE);
+		assertEquals("hot", first.getName());
+		assertEquals("https://ci.example.com/job/hot/", first.getUrl());
+		assertNull(scheduler.poll(NOW + 5 * MINUTE));
+		assertEquals("weekly", scheduler.poll(NOW + 360 * MINUTE).getName());
+	}
+
+	@Test
+	public void backsOffIdleJobsUpToTheMaximum() {
+		RefreshScheduler scheduler = new RefreshScheduler(MINUTE, 8 * MINUTE);
+		scheduler.schedule(snapshot(summary("idle", 1, NOW - 2 * MINUTE)), NOW);
+
+		long now = NOW;
+		long[] expected = { 2, 4, 8, 8 };
+		for (long delay : expected) {
+			ScheduledJob job = scheduler.poll(now + MINUTE);
+			now += MINUTE;
+			scheduler.observed(job, summary("idle", 1, NOW - 2 * MINUTE), now);
+			assertEquals(delay * MINUTE, job.getDelay());
+			now = job.getDeadline() - MINUTE;
+		}
+	}
+
+	@Test
+	public void learnsTheBuildIntervalFromNewBuilds() {
+		RefreshScheduler scheduler = new RefreshScheduler(MINUTE, 360 * MINUTE);
+		scheduler.schedule(snapshot(summary("job", 10, NOW - 40 * MINUTE)), NOW);
+		ScheduledJob job = scheduler.poll(NOW + 20 * MINUTE);
+		assertEquals(40 * MINUTE, job.getMeanInterval());
+
+		// two builds four minutes apart since the last one seen
+		scheduler.observed(job, summary("job", 12, NOW - 32 * MINUTE), NOW + 20 * MINUTE);
+		assertEquals((3 * 40 + 4) * MINUTE / 4, job.getMeanInterval());
+		assertEquals(job.getMeanInterval() / 2, job.getDelay());
+
+		JobSummary running = summary("job", 12, NOW - 32 * MINUTE);
+		running.setBuilding(true);
+		ScheduledJob next = scheduler.poll(job.getDeadline());
+		scheduler.observed(next, running, job.getDeadline());
+		assertEquals(job.getMeanInterval() / 2, next.getDelay());
+	}
+
+	@Test
+	public void dropsJobsTheNextSnapshotNoLongerLists() {
+		RefreshScheduler scheduler = new RefreshScheduler(MINUTE, 360 * MINUTE);
+		scheduler.schedule(snapshot(summary("kept", 1, NOW - 10 * MINUTE), summary("removed", 1, NOW)), NOW);
+		ScheduledJob inFlight = scheduler.poll(NOW + MINUTE);
+		assertEquals("removed", inFlight.getName());
+		scheduler.schedule(snapshot(summary("kept", 1, NOW - 10 * MINUTE)), NOW + MINUTE);
+		assertEquals(1, scheduler.size());
+
+		// a refresh that was running when the job disappeared does not bring it back
+		scheduler.observed(inFlight, null, NOW + MINUTE);
+		assertEquals("kept", scheduler.poll(NOW + 10 * MINUTE).getName());
+		assertNull(scheduler.poll(NOW + 100 * MINUTE));
+	}
+
+	private static JobSummary summary(String name, int lastBuild, long timestamp) {
+		JobSummary summary = new JobSummary();
+		summary.setName(name);
+		summary.setUrl("https://ci.example.com/job/" + name + "/");
+		summary.setLastBuildNumber(lastBuild);
+		summary.setLastBuildTimestamp(timestamp);
+		return summary;
+	}
+
+	private static ReportSnapshot snapshot(JobSummary... summaries) {
+		JobStore store = new JobStore();
+		for (JobSummary summary : summaries) {
+			store.add(summary);
+		}
+		return new ReportSnapshot(Collections.singletonList(CONTROLLER), Collections.singletonList(store), NOW);
+	}
+}
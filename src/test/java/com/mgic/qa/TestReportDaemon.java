@@ -0,0 +1,188 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReportDaemon {
+
+	private static final ControllerEndpoint CONTROLLER = new ControllerEndpoint("", "https://ci.example.com/", "", "", 1);
+	private ReportDaemon daemon;
+
+	@Before
+	public void start() throws IOException {
+		daemon = new ReportDaemon(Collections.singletonList(CONTROLLER));
+		daemon.start(0);
+	}
+
+	@After
+	public void stop() {
+		daemon.stop();
+	}
+
+	@Test
+	public void answersUnavailableUntilTheFirstRefresh() throws Exception {
+		assertEquals(503, connect("/report.csv").getResponseCode());
+	}
+
+	@Test
+	public void servesThePublishedSnapshot() throws Exception {
+		daemon.publish(snapshot("first"));
+		HttpURLConnection csv = connect("/report.csv");
+		assertEquals(200, csv.getResponseCode());
+		assertTrue(csv.getContentType().startsWith("text/csv"));
+		assertTrue(read(csv).contains("https://ci.example.com/,first,"));
+
+		daemon.publish(snapshot("second"));
+		String jsonl = read(connect("/report.jsonl"));
+		assertTrue(jsonl, jsonl.contains("\"job\":\"second\""));
+		assertTrue(read(connect("/status")).contains("\"jobs\":1"));
+		assertEquals(404, connect("/favicon.ico").getResponseCode());
+	}
+
+	@Test
+	public void listensOnLoopbackByDefault() {
+		assertTrue(daemon.getAddress().getAddress().isLoopbackAddress());
+	}
+
+	@Test
+	public void rendersEachFormatOncePerSnapshot() throws Exception {
+		ReportSnapshot snapshot = snapshot("job");
+		assertTrue(snapshot.render("csv") == snapshot.render("csv"));
+	}
+
+	@Test
+	public void notificationsUpdateOnlyTheirJobsRow() throws Exception {
+		long today = RollingWindowMetrics.epochDay(System.currentTimeMillis());
+		RollingWindowMetrics metrics = new RollingWindowMetrics(today);
+		List<RollingWindowMetrics> windows = Collections.singletonList(metrics);
+		daemon.publish(snapshot("folder/first", "second"), windows);
+		long started = System.currentTimeMillis() - 60000;
+
+		assertEquals(202, notify(event("STARTED", 6, null, started, 0)));
+		JobStore store = daemon.getSnapshot().getStore(0);
+		assertEquals(6, store.getLastBuildNumber(0));
+		assertEquals(null, store.getResult(0));
+		assertEquals(JobSummary.NO_BUILD, store.getLastBuildNumber(1));
+
+		// the plugin sends both phases for every finished build
+		assertEquals(202, notify(event("COMPLETED", 6, "SUCCESS", started, 45000)));
+		assertEquals(202, notify(event("FINALIZED", 6, "SUCCESS", started, 45000)));
+		store = daemon.getSnapshot().getStore(0);
+		assertEquals("SUCCESS", store.getResult(0));
+		assertEquals(45000, store.getDuration(0));
+		assertEquals(6, store.getLastSuccessfulBuildNumber(0));
+		assertEquals(9, store.getPassedTests(0));
+		assertEquals(1, store.getFailedTests(0));
+		assertEquals(1, metrics.getBuildCount("folder/first"));
+		assertEquals(metrics.describe("folder/first"), store.getMetric(0));
+		assertTrue(read(connect("/status")).contains("\"lastEventAt\":1"));
+
+		assertEquals(202, notify(event("STARTED", 5, null, started, 0)));
+		assertEquals(6, daemon.getSnapshot().getStore(0).getLastBuildNumber(0));
+	}
+
+	@Test
+	public void rejectsNotificationsItCannotRead() throws Exception {
+		daemon.publish(snapshot("first"));
+		assertEquals(400, notify("{\"name\":\"first\"}"));
+		assertEquals(405, connect("/notify").getResponseCode());
+		ReportSnapshot before = daemon.getSnapshot();
+		assertEquals(202, notify(event("COMPLETED", 3, "FAILURE", 1, 1).replace("folder/job/first", "unknown")));
+		assertTrue(before == daemon.getSnapshot());
+	}
+
+	@Test
+	public void requiresTheNotifyTokenOnceOneIsSet() throws Exception {
+		daemon.stop();
+		System.setProperty("qa.jenkins.daemon.notifyToken", "s3cret");
+		try {
+			daemon = new ReportDaemon(Collections.singletonList(CONTROLLER));
+			daemon.start(0);
+		} finally {
+			System.clearProperty("qa.jenkins.daemon.notifyToken");
+		}
+		daemon.publish(snapshot("folder/first"));
+		assertEquals(403, notify("/notify", event("STARTED", 6, null, 1, 0)));
+		assertEquals(403, notify("/notify?token=wrong", event("STARTED", 6, null, 1, 0)));
+		assertEquals(202, notify("/notify?token=s3cret", event("STARTED", 6, null, 1, 0)));
+		assertEquals(6, daemon.getSnapshot().getStore(0).getLastBuildNumber(0));
+	}
+
+	@Test
+	public void namesFolderJobsByTheirFullName() {
+		assertEquals("folder/first", BuildEvent.jobNameFromUrl("job/folder/job/first/"));
+		assertEquals("first", BuildEvent.jobNameFromUrl("job/first"));
+	}
+
+	@Test
+	public void decodesEncodedJobNames() {
+		assertEquals("my job", BuildEvent.jobNameFromUrl("job/my%20job/"));
+		assertEquals("repo/feature%2Ffoo", BuildEvent.jobNameFromUrl("job/repo/job/feature%252Ffoo/"));
+		assertEquals("c++", BuildEvent.jobNameFromUrl("job/c++/"));
+	}
+
+	private static String event(String phase, int number, String status, long timestamp, long duration) {
+		return "{\"name\":\"first\",\"url\":\"job/folder/job/first/\",\"build\":{"
+				+ "\"full_url\":\"https://ci.example.com/job/folder/job/first/" + number + "/\","
+				+ "\"number\":" + number + ",\"phase\":\"" + phase + "\","
+				+ (status == null ? "" : "\"status\":\"" + status + "\",")
+				+ "\"timestamp\":" + timestamp + ",\"duration\":" + duration + ","
+				+ "\"testSummary\":{\"total\":10,\"passed\":9,\"failed\":1,\"skipped\":0}}}";
+	}
+
+	private int notify(String body) throws IOException {
+		return notify("/notify", body);
+	}
+
+	private int notify(String path, String body) throws IOException {
+		HttpURLConnection connection = connect(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return connection.getResponseCode();
+	}
+
+	private static ReportSnapshot snapshot(String... jobNames) {
+		JobStore store = new JobStore();
+		for (String jobName : jobNames) {
+			JobSummary summary = new JobSummary();
+			summary.setName(jobName);
+			summary.setUrl("https://ci.example.com/job/" + jobName + "/");
+			store.add(summary);
+		}
+		return new ReportSnapshot(Collections.singletonList(CONTROLLER), Collections.singletonList(store),
+				System.currentTimeMillis());
+	}
+
+	private HttpURLConnection connect(String path) throws IOException {
+		return (HttpURLConnection) new URL("http://localhost:" + daemon.getPort() + path).openConnection();
+	}
+
+	private static String read(HttpURLConnection connection) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				body.write(buffer, 0, n);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
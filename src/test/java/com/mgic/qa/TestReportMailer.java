@@ -0,0 +1,140 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.internet.InternetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReportMailer {
+
+	private final List<String> recipients = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+	private final List<Socket> connections = Collections.synchronizedList(new ArrayList<Socket>());
+	private ServerSocket server;
+
+	/**
+	 * Starts a stand-in SMTP server that accepts every message and remembers
+	 * what it was sent.
+	 */
+	@Before
+	public void start() throws IOException {
+		server = new ServerSocket(0);
+		Thread acceptor = new Thread(() -> {
+			while (!server.isClosed()) {
+				try {
+					final Socket socket = server.accept();
+					connections.add(socket);
+					new Thread(() -> converse(socket)).start();
+				} catch (IOException e) {
+					return;
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	@After
+	public void stop() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void sendsEachBatchOverOneConnection() throws Exception {
+		File report = File.createTempFile("JenkinsReporting", ".csv");
+		report.deleteOnExit();
+		Files.write(report.toPath(), "Controller,Job\r\nci,deploy\r\n".getBytes(StandardCharsets.UTF_8));
+		Map<String, List<InternetAddress>> teams = new LinkedHashMap<String, List<InternetAddress>>();
+		teams.put("qa", ReportMailer.parseAddresses("a@example.com, b@example.com"));
+		teams.put("dev", ReportMailer.parseAddresses("c@example.com,d@example.com,e@example.com"));
+		teams.put("ops", ReportMailer.parseAddresses("f@example.com"));
+
+		// qa, dev split in two and ops make four messages; three go per connection
+		ReportMailer mailer = new ReportMailer("localhost", server.getLocalPort(), "", "",
+				new InternetAddress("reports@example.com"), "Nightly", teams, 2, 3, 2);
+		ReportMailer.await(mailer.send(Arrays.asList(report)));
+		mailer.shutdown();
+
+		assertEquals(2, connections.size());
+		assertEquals(4, messages.size());
+		Collections.sort(recipients);
+		assertEquals("[<a@example.com>, <b@example.com>, <c@example.com>, <d@example.com>, <e@example.com>, "
+				+ "<f@example.com>]", recipients.toString());
+		for (String message : messages) {
+			assertTrue(message, message.contains("Subject: Nightly"));
+			assertTrue(message, message.contains("filename=" + report.getName()));
+			assertTrue(message, message.contains("ci,deploy"));
+		}
+	}
+
+	@Test
+	public void mailsNobodyUnlessTeamsAreNamed() {
+		assertNull(System.getProperty("qa.jenkins.mail.teams"));
+		assertNull(ReportMailer.fromSystemProperties());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTeamsWithoutRecipients() {
+		System.setProperty("qa.jenkins.mail.teams", "qa");
+		try {
+			ReportMailer.fromSystemProperties();
+		} finally {
+			System.clearProperty("qa.jenkins.mail.teams");
+		}
+	}
+
+	private void converse(Socket socket) {
+		try (Socket connection = socket) {
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(connection.getInputStream(), StandardCharsets.ISO_8859_1));
+			Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.ISO_8859_1);
+			reply(out, "220 localhost stand-in");
+			for (String line; (line = in.readLine()) != null;) {
+				String command = line.toUpperCase();
+				if (command.startsWith("RCPT TO:")) {
+					recipients.add(line.substring("RCPT TO:".length()).trim());
+				} else if (command.equals("DATA")) {
+					reply(out, "354 go ahead");
+					StringBuilder message = new StringBuilder();
+					for (String data; !(data = in.readLine()).equals(".");) {
+						message.append(data).append('\n');
+					}
+					messages.add(message.toString());
+				} else if (command.equals("QUIT")) {
+					reply(out, "221 bye");
+					return;
+				}
+				reply(out, "250 OK");
+			}
+		} catch (IOException e) {
+			// the client hung up
+		}
+	}
+
+	private static void reply(Writer out, String line) throws IOException {
+		out.write(line + "\r\n");
+		out.flush();
+	}
+}
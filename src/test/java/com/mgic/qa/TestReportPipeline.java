@@ -0,0 +1,252 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mgic.qa.ReportPipeline.BuildReport;
+import com.mgic.qa.TestReportParser.TestReportSummary;
+
+public class TestReportPipeline {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void rendersInReportOrderWhateverOrderFetchesFinish() throws Exception {
+		final List<Integer> rendered = new ArrayList<Integer>();
+		ReportPipeline pipeline = pipeline(new FakeHistory(0) {
+
+			@Override
+			List<BuildRecord> fetch(JobSummary job) throws InterruptedException {
+				// earlier jobs finish last
+				Thread.sleep(5 * (10 - job.getLastBuildNumber()));
+				return super.fetch(job);
+			}
+		}, 4);
+		pipeline.start(jobs(10), emptyCache());
+		pipeline.drain((row, fetched) -> {
+			assertEquals(row, fetched.getNewBuilds().get(0).getNumber());
+			rendered.add(row);
+		});
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), rendered);
+	}
+
+	@Test
+	public void stopsFetchingWhenTheRendererFallsBehind() throws Exception {
+		final FakeHistory history = new FakeHistory(0);
+		ReportPipeline pipeline = pipeline(history, 2);
+		pipeline.start(jobs(20), emptyCache());
+		pipeline.drain((row, fetched) -> {
+			if (row == 0) {
+				sleep(200);
+				// two queued, one taken and one waiting to be queued
+				assertTrue(history.started.get() <= 4);
+			}
+		});
+		assertEquals(20, history.started.get());
+	}
+
+	@Test
+	public void failedFetchOnlyDropsThatJobsHistory() throws Exception {
+		final List<Integer> builds = new ArrayList<Integer>();
+		ReportPipeline pipeline = pipeline(new FakeHistory(3), 4);
+		pipeline.start(jobs(6), emptyCache());
+		pipeline.drain((row, fetched) -> builds.add(fetched.getNewBuilds().size()));
+		assertEquals(Arrays.asList(1, 1, 1, 0, 1, 1), builds);
+	}
+
+	@Test
+	public void rendererFailureFailsTheDrain() throws Exception {
+		ReportPipeline pipeline = pipeline(new FakeHistory(0), 4);
+		pipeline.start(jobs(6), emptyCache());
+		try {
+			pipeline.drain((row, fetched) -> {
+				if (row == 2) {
+					throw new IOException("row 2");
+				}
+			});
+			fail("expected the renderer's failure to surface");
+		} catch (IOException e) {
+			assertEquals("row 2", e.getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void feederFailureFailsTheDrainAtThatJob() throws Exception {
+		final List<Integer> rendered = new ArrayList<Integer>();
+		ReportPipeline pipeline = new ReportPipeline(new FakeHistory(0), new TestReportFetcher("", "") {
+
+			@Override
+			public TestReportSummary fetch(JobSummary job) {
+				return null;
+			}
+		}, executor, false, 4);
+		pipeline.setReported(job -> {
+			if (job.getLastBuildNumber() == 3) {
+				throw new IllegalStateException("job 3");
+			}
+			return false;
+		});
+		pipeline.start(jobs(6), emptyCache());
+		try {
+			pipeline.drain((row, fetched) -> rendered.add(row));
+			fail("expected the feeder's failure to surface");
+		} catch (IOException e) {
+			assertEquals("job 3", e.getCause().getMessage());
+		}
+		assertEquals(Arrays.asList(0, 1, 2), rendered);
+	}
+
+	@Test(timeout = 10000)
+	public void shutDownPoolFailsTheDrain() throws Exception {
+		ReportPipeline pipeline = pipeline(new FakeHistory(0), 4);
+		executor.shutdown();
+		pipeline.start(jobs(6), emptyCache());
+		try {
+			pipeline.drain((row, fetched) -> fail("nothing can be fetched"));
+			fail("expected the rejected requests to surface");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	@Test
+	public void fetchesEarlierReportsOldestFirstWithinTheWindow() throws Exception {
+		final List<Integer> fetchedBuilds = new ArrayList<Integer>();
+		ReportPipeline pipeline = new ReportPipeline(new FakeHistory(0) {
+
+			@Override
+			List<BuildRecord> fetch(JobSummary job) {
+				List<BuildRecord> builds = new ArrayList<BuildRecord>();
+				for (int number = 9; number >= 1; number--) {
+					builds.add(new BuildRecord(number, 0, 0, "SUCCESS", number == 9, 1, 0, 0));
+				}
+				return builds;
+			}
+		}, new TestReportFetcher("", "") {
+
+			@Override
+			public TestReportSummary fetch(JobSummary job, int buildNumber) throws IOException {
+				return new TestReportParser().parse(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+			}
+		}, executor, false, 4);
+		pipeline.setBuildReportWindow(4);
+		JobSummary job = new JobSummary();
+		job.setName("job");
+		job.setUrl("job");
+		job.setLastBuildNumber(8);
+		pipeline.start(Collections.singletonList(job), emptyCache());
+		pipeline.drain((row, fetched) -> {
+			for (BuildReport report : fetched.getEarlierReports()) {
+				fetchedBuilds.add(report.getNumber());
+			}
+		});
+		// 9 is still building and 8 is the last build, whose report is fetched anyway
+		assertEquals(Arrays.asList(5, 6, 7), fetchedBuilds);
+	}
+
+	@Test
+	public void skipsTheReportsOfJobsAlreadyReported() throws Exception {
+		final AtomicInteger requested = new AtomicInteger();
+		ReportPipeline pipeline = new ReportPipeline(new FakeHistory(0), new TestReportFetcher("", "") {
+
+			@Override
+			public TestReportSummary fetch(JobSummary job) throws IOException {
+				requested.incrementAndGet();
+				return new TestReportParser().parse(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+			}
+		}, executor, false, 4);
+		pipeline.setReported(job -> job.getLastBuildNumber() % 2 == 0);
+		final List<Boolean> fetched = new ArrayList<Boolean>();
+		pipeline.start(jobs(6), emptyCache());
+		pipeline.drain((row, job) -> fetched.add(job.getTestReport() != null));
+		assertEquals(Arrays.asList(false, true, false, true, false, true), fetched);
+		assertEquals(3, requested.get());
+	}
+
+	private ReportPipeline pipeline(FakeHistory history, int capacity) {
+		return new ReportPipeline(history, new TestReportFetcher("", "") {
+
+			@Override
+			public TestReportSummary fetch(JobSummary job) {
+				return null;
+			}
+		}, executor, true, capacity);
+	}
+
+	private static List<JobSummary> jobs(int count) {
+		List<JobSummary> jobs = new ArrayList<JobSummary>();
+		for (int i = 0; i < count; i++) {
+			JobSummary job = new JobSummary();
+			job.setName("job" + i);
+			job.setUrl("job" + i);
+			job.setLastBuildNumber(i);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	private static BuildCache emptyCache() throws IOException {
+		File file = File.createTempFile("builds", ".tsv");
+		file.delete();
+		file.deleteOnExit();
+		return BuildCache.load(file);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class FakeHistory extends BuildHistoryFetcher {
+		final AtomicInteger started = new AtomicInteger();
+		private final int failing;
+
+		FakeHistory(int failing) {
+			super("", "");
+			this.failing = failing;
+		}
+
+		@Override
+		public List<BuildRecord> fetchNewBuilds(JobSummary job, BuildCache cache) throws IOException {
+			started.incrementAndGet();
+			if (failing > 0 && job.getLastBuildNumber() == failing) {
+				throw new IOException("job " + failing);
+			}
+			try {
+				return fetch(job);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+
+		List<BuildRecord> fetch(JobSummary job) throws InterruptedException {
+			return Collections.singletonList(
+					new BuildRecord(job.getLastBuildNumber(), 0, 0, "SUCCESS", false, -1, -1, -1));
+		}
+	}
+}
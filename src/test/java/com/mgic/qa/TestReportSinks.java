@@ -0,0 +1,136 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class TestReportSinks {
+
+	private static final ControllerEndpoint CONTROLLER = new ControllerEndpoint("", "https://ci.example.com/", "", "", 1);
+
+	@Test
+	public void csvQuotesFieldsThatNeedIt() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (CsvSink sink = new CsvSink(Channels.newChannel(out))) {
+			sink.beginController(CONTROLLER);
+			sink.writeRow(store("deploy, \"prod\"", JobSummary.NO_BUILD), 0);
+		}
+		String[] lines = out.toString("UTF-8").split("\r\n");
+		assertEquals("Controller,Job,Total,Passing,Failing,Skipped,Duration,Time Since Last Run,"
+				+ "Number Of Builds,Last Successful Build,Started,Ended,30 Day Metric,Failure Cause", lines[0]);
+		assertEquals("https://ci.example.com/,\"deploy, \"\"prod\"\"\",0,,,,,,-1,-1,,,,", lines[1]);
+	}
+
+	@Test
+	public void jsonLinesKeepsNumbersAndEscapesStrings() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonLinesSink sink = new JsonLinesSink(Channels.newChannel(out))) {
+			sink.beginController(new ControllerEndpoint("ci", "https://ci.example.com/", "", "", 1));
+			sink.writeRow(store("a\\b\"c", 7), 0);
+		}
+		String line = out.toString("UTF-8");
+		assertTrue(line, line.startsWith("{\"controller\":\"ci\",\"job\":\"a\\\\b\\\"c\""));
+		assertTrue(line, line.contains("\"lastBuild\":7,"));
+		assertTrue(line, line.contains("\"durationMs\":1500,"));
+		assertTrue(line, line.contains("\"total\":null,"));
+		assertTrue(line, line.endsWith("}\n"));
+	}
+
+	@Test
+	public void htmlGetsOneTablePerController() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HtmlSink sink = new HtmlSink(Channels.newChannel(out))) {
+			sink.beginController(CONTROLLER);
+			sink.writeRow(store("<script>", 1), 0);
+			sink.beginController(new ControllerEndpoint("b", "https://b.example.com/", "", "", 1));
+		}
+		String html = out.toString("UTF-8");
+		assertEquals(2, html.split("<table>", -1).length - 1);
+		assertEquals(2, html.split("</table>", -1).length - 1);
+		assertTrue(html.contains("&lt;script&gt;"));
+		assertTrue(html.endsWith("</html>\n"));
+	}
+
+	@Test
+	public void severalSinksShareOnePass() throws Exception {
+		File directory = Files.createTempDirectory("sinks").toFile();
+		JobStore store = new JobStore();
+		for (int i = 0; i < 2000; i++) {
+			store.add(summary("job-" + i + "-\u00e9", i));
+		}
+		try (ReportSink sink = ReportSinks.open("csv, jsonl", directory, "report")) {
+			sink.beginController(CONTROLLER);
+			for (int row = 0; row < store.size(); row++) {
+				sink.writeRow(store, row);
+			}
+		}
+		// large enough to flush the channel buffer several times
+		assertEquals(2001, lines(new File(directory, "report.csv")));
+		assertEquals(2000, lines(new File(directory, "report.jsonl")));
+		assertTrue(new String(Files.readAllBytes(new File(directory, "report.csv").toPath()), StandardCharsets.UTF_8)
+				.contains("job-1999-\u00e9"));
+	}
+
+	@Test
+	public void streamingWorkbookKeepsJobDetailsOnOneSheet() throws Exception {
+		JobStore store = new JobStore();
+		for (int i = 0; i < 5000; i++) {
+			store.add(summary("job-" + i, i));
+		}
+		store.setTestReport(4999, new TestReportParser().parse(new ByteArrayInputStream(("{\"suites\":[{\"cases\":["
+				+ "{\"className\":\"a.B\",\"name\":\"one\",\"status\":\"FAILED\"}]}]}")
+						.getBytes(StandardCharsets.UTF_8))));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ExcelSink sink = ExcelSink.streaming(out, ExcelSink.DEFAULT_ROW_WINDOW)) {
+			sink.beginController(CONTROLLER);
+			for (int row = 0; row < store.size(); row++) {
+				sink.writeRow(store, row);
+			}
+		}
+		// one temp file per sheet stays open until the save, so thousands of jobs must not mean thousands of sheets
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+			assertEquals(2, workbook.getNumberOfSheets());
+			assertEquals(5000, workbook.getSheet("Dashboard").getLastRowNum());
+			Sheet details = workbook.getSheet("Job Details");
+			int last = details.getLastRowNum();
+			assertEquals("job-4999", details.getRow(last - 1).getCell(0).getStringCellValue());
+			assertEquals("a.B.one", details.getRow(last).getCell(0).getStringCellValue());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownFormats() throws IOException {
+		ReportSinks.open("pdf", new File("."), "report");
+	}
+
+	private static long lines(File file) throws IOException {
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size();
+	}
+
+	private static JobStore store(String name, int lastBuild) {
+		JobStore store = new JobStore();
+		store.add(summary(name, lastBuild));
+		return store;
+	}
+
+	private static JobSummary summary(String name, int lastBuild) {
+		JobSummary summary = new JobSummary();
+		summary.setName(name);
+		summary.setUrl("https://ci.example.com/job/" + name + "/");
+		summary.setLastBuildNumber(lastBuild);
+		summary.setLastBuildDuration(1500);
+		summary.setLastBuildTimestamp(System.currentTimeMillis());
+		return summary;
+	}
+}
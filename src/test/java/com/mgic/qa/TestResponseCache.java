@@ -0,0 +1,106 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mgic.qa.utilities.APIUtilities;
+import com.mgic.qa.utilities.ResponseCache;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestResponseCache {
+
+	private final List<String> requests = new ArrayList<String>();
+	private HttpServer server;
+	private String body = "{\"jobs\":[]}";
+
+	@Before
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(0), 0);
+		server.createContext("/", exchange -> {
+			String etag = "\"" + body.hashCode() + "\"";
+			String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			requests.add(ifNoneMatch == null ? "full" : ifNoneMatch.equals(etag) ? "304" : "changed");
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(ifNoneMatch)) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, bytes.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		ResponseCache.setShared(new ResponseCache(ResponseCache.DEFAULT_MAX_BYTES, null));
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+		ResponseCache.setShared(null);
+	}
+
+	@Test
+	public void answersNotModifiedFromTheCache() throws IOException {
+		String url = "http://localhost:" + server.getAddress().getPort() + "/job/a/api/json";
+		assertEquals(body, new APIUtilities(url).returnResponseFromGetAsString());
+		assertEquals(body, new APIUtilities(url).returnResponseFromGetAsString());
+		body = "{\"jobs\":[{}]}";
+		assertEquals(body, new APIUtilities(url).returnResponseFromGetAsString());
+		assertEquals("[full, 304, changed]", requests.toString());
+	}
+
+	@Test
+	public void keepsEachUsersResponsesApart() throws IOException {
+		String url = "http://localhost:" + server.getAddress().getPort() + "/job/a/api/json";
+		assertEquals(body, new APIUtilities(url, "alice", "a").returnResponseFromJenkinsAsString());
+		assertEquals(body, new APIUtilities(url, "bob", "b").returnResponseFromJenkinsAsString());
+		assertEquals(body, new APIUtilities(url, "alice", "a").returnResponseFromJenkinsAsString());
+		assertEquals("[full, full, 304]", requests.toString());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedEntries() {
+		ResponseCache cache = new ResponseCache(150, null);
+		cache.put("a", response("\"a\""), "0123456789012345678901234567890123456789");
+		cache.put("b", response("\"b\""), "0123456789");
+		cache.get("a");
+		cache.put("c", response("\"c\""), "012345678901234567890123456789");
+		assertNull(cache.get("b"));
+		assertEquals("\"a\"", cache.get("a").getETag());
+		assertEquals(140, cache.getBytes());
+	}
+
+	@Test
+	public void keepsEntriesOnDiskBetweenRuns() throws IOException {
+		File dir = Files.createTempDirectory("response-cache").toFile();
+		new ResponseCache(0, dir).put("http://ci/job/a/api/json", response("\"v1\""), "{\"name\":\"a\"}");
+		ResponseCache.Entry entry = new ResponseCache(1024, dir).get("http://ci/job/a/api/json");
+		assertEquals("\"v1\"", entry.getETag());
+		assertEquals("{\"name\":\"a\"}", entry.getBody());
+		assertNull(new ResponseCache(1024, dir).get("http://ci/job/b/api/json"));
+	}
+
+	private static BasicHttpResponse response(String etag) {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setHeader("ETag", etag);
+		return response;
+	}
+}
@@ -0,0 +1,75 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestRollingWindowMetrics {
+
+	private static final long TODAY = LocalDate.of(2019, 3, 31).toEpochDay();
+
+	@Test
+	public void recordsBuildsInsideTheWindow() {
+		RollingWindowMetrics metrics = new RollingWindowMetrics(TODAY);
+		metrics.record("job", build(1, TODAY, 100, 10, 2));
+		metrics.record("job", build(2, TODAY - 29, 300, 10, 0));
+		metrics.record("job", build(3, TODAY - 30, 500, 10, 0));
+		assertEquals(2, metrics.getBuildCount("job"));
+		assertEquals("2 builds, 90% passing, avg 200ms", metrics.describe("job"));
+	}
+
+	@Test
+	public void advancingEvictsExpiredDays() {
+		RollingWindowMetrics metrics = new RollingWindowMetrics(TODAY);
+		metrics.record("job", build(1, TODAY - 29, 100, 1, 0));
+		metrics.record("job", build(2, TODAY - 1, 100, 1, 0));
+		metrics.advanceTo(TODAY + 1);
+		assertEquals(1, metrics.getBuildCount("job"));
+		metrics.advanceTo(TODAY + 30);
+		assertEquals("No builds", metrics.describe("job"));
+	}
+
+	@Test
+	public void updateCountsOnlyFinishedBuildsOnce() throws Exception {
+		File dir = new File("./build/tmp/rolling-window");
+		MGICFileUtils.makeDirectory(dir.getPath());
+		BuildCache cache = BuildCache.load(new File(dir, "missing.tsv"));
+		cache.merge("job", Arrays.asList(build(1, TODAY, 100, 1, 0), running(2, TODAY), build(3, TODAY, 100, 1, 0)));
+		RollingWindowMetrics metrics = new RollingWindowMetrics(TODAY);
+		metrics.update("job", cache);
+		assertEquals(1, metrics.getBuildCount("job"));
+
+		cache.merge("job", Arrays.asList(build(2, TODAY, 100, 1, 0)));
+		metrics.update("job", cache);
+		metrics.update("job", cache);
+		assertEquals(3, metrics.getBuildCount("job"));
+	}
+
+	@Test
+	public void bucketsSurviveSaveAndLoad() throws Exception {
+		File file = new File("./build/tmp/rolling-window/metrics.tsv");
+		RollingWindowMetrics metrics = new RollingWindowMetrics(TODAY);
+		metrics.record("job", build(1, TODAY - 10, 100, 1, 0));
+		metrics.record("job", build(2, TODAY, 100, 1, 0));
+		metrics.save(file);
+		RollingWindowMetrics reloaded = RollingWindowMetrics.load(file, TODAY + 25);
+		assertEquals(1, reloaded.getBuildCount("job"));
+	}
+
+	private static BuildRecord build(int number, long day, long duration, int total, int failed) {
+		return new BuildRecord(number, timestamp(day), duration, "SUCCESS", false, total, failed, 0);
+	}
+
+	private static BuildRecord running(int number, long day) {
+		return new BuildRecord(number, timestamp(day), 0, null, true, -1, -1, -1);
+	}
+
+	private static long timestamp(long day) {
+		return LocalDate.ofEpochDay(day).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() + 3600000L;
+	}
+}
@@ -0,0 +1,71 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mgic.qa.utilities.APIUtilities;
+import com.mgic.qa.utilities.SharedHttpClient;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestSharedHttpClient {
+
+	private final List<String> headers = new ArrayList<String>();
+	private HttpServer server;
+	private HttpServer other;
+
+	@Before
+	public void start() throws IOException {
+		server = start(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+		other = start(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+	}
+
+	private HttpServer start(HttpServer server) {
+		server.createContext("/", exchange -> {
+			headers.add(exchange.getRequestURI().getPath() + " " + exchange.getRequestHeaders().getFirst("Authorization"));
+			byte[] bytes = "{}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+			exchange.close();
+		});
+		server.start();
+		return server;
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+		other.stop(0);
+	}
+
+	@Test
+	public void keepsTheCredentialsOfControllersOnOneHostApart() throws IOException {
+		String base = "http://127.0.0.1:" + server.getAddress().getPort();
+		SharedHttpClient.registerCredentials(base + "/a", "alice", "x");
+		SharedHttpClient.registerCredentials(base + "/a/b/", "bob", "y");
+		get(base + "/a/job/one/api/json");
+		get(base + "/a/b/job/two/api/json");
+		get(base + "/ab/api/json");
+		get("http://127.0.0.1:" + other.getAddress().getPort() + "/a/api/json");
+		assertEquals("/a/job/one/api/json " + SharedHttpClient.basicAuthHeader("alice", "x"), headers.get(0));
+		assertEquals("/a/b/job/two/api/json " + SharedHttpClient.basicAuthHeader("bob", "y"), headers.get(1));
+		assertEquals("/ab/api/json null", headers.get(2));
+		assertEquals("/a/api/json null", headers.get(3));
+	}
+
+	private static void get(String url) throws IOException {
+		new APIUtilities(url).returnResponseFromJenkinsAsString();
+	}
+}
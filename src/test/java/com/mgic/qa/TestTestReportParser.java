@@ -0,0 +1,61 @@
+package com.mgic.qa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.mgic.qa.TestReportParser.TestReportSummary;
+import com.mgic.qa.TestReportParser.TestTotals;
+
+public class TestTestReportParser {
+
+	@Test
+	public void countsCasesOfASingleReport() throws Exception {
+		TestReportSummary summary = parse("{\"_class\":\"hudson.tasks.junit.TestResult\",\"duration\":1.5,"
+				+ "\"suites\":[{\"name\":\"s\",\"cases\":["
+				+ "{\"className\":\"a.B\",\"name\":\"one\",\"status\":\"PASSED\",\"stdout\":\"x\"},"
+				+ "{\"className\":\"a.B\",\"name\":\"two\",\"status\":\"REGRESSION\",\"errorDetails\":{\"nested\":[1,2]}},"
+				+ "{\"className\":\"a.B\",\"name\":\"three\",\"status\":\"SKIPPED\"},"
+				+ "{\"className\":\"a.B\",\"name\":\"four\",\"status\":\"FIXED\"}]}]}");
+		TestTotals totals = summary.getTotals();
+		assertEquals(2, totals.getPassed());
+		assertEquals(1, totals.getFailed());
+		assertEquals(1, totals.getSkipped());
+		assertEquals(1, summary.getFailingCases().size());
+		assertEquals("a.B.two", summary.getFailingCases().get(0));
+	}
+
+	@Test
+	public void aggregatesChildReports() throws Exception {
+		TestReportSummary summary = parse("{\"childReports\":["
+				+ "{\"child\":{\"number\":3,\"url\":\"http://ci/job/m/a/3/\"},\"result\":{\"suites\":[{\"cases\":["
+				+ "{\"className\":\"A\",\"name\":\"x\",\"status\":\"FAILED\"},{\"className\":\"A\",\"name\":\"y\",\"status\":\"PASSED\"}]}]}},"
+				+ "{\"child\":{\"url\":\"http://ci/job/m/b/3/\"},\"result\":{\"suites\":[{\"cases\":["
+				+ "{\"className\":\"B\",\"name\":\"z\",\"status\":\"SKIPPED\"}]}]}}]}");
+		assertEquals(2, summary.getChildReports().size());
+		assertEquals("http://ci/job/m/a/3/", summary.getChildReports().get(0).getName());
+		assertEquals(1, summary.getChildReports().get(0).getFailed());
+		assertEquals(1, summary.getChildReports().get(1).getSkipped());
+		assertEquals(3, summary.getTotals().getTotal());
+	}
+
+	@Test
+	public void capsFailingCaseNames() throws Exception {
+		StringBuilder json = new StringBuilder("{\"suites\":[{\"cases\":[");
+		int failures = TestReportParser.MAX_FAILING_CASES + 5;
+		for (int i = 0; i < failures; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"name\":\"t").append(i).append("\",\"status\":\"FAILED\"}");
+		}
+		TestReportSummary summary = parse(json.append("]}]}").toString());
+		assertEquals(failures, summary.getTotals().getFailed());
+		assertEquals(TestReportParser.MAX_FAILING_CASES, summary.getFailingCases().size());
+		assertEquals(5, summary.getOmittedFailingCases());
+	}
+
+	private static TestReportSummary parse(String json) throws Exception {
+		return new TestReportParser().parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+}